@@ -0,0 +1,147 @@
+package com.aware.plugin.yamnet;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.aware.Aware;
+
+/**
+ * Adapts the sampling interval to how much the acoustic scene changes
+ * After each scheduled sample the top classes and the level are compared with the previous
+ * sample's. A change drops the interval to the minimum; a stable result doubles it, up to the
+ * maximum. Every decision is logged with its reason and running totals, so the samples saved
+ * can be weighed against the changes caught.
+ */
+public class AdaptiveScheduler {
+    private static final String TAG = "AWARE::YAMNet::Adaptive";
+
+    // Level change that counts as a new scene, in dB
+    private static final float LEVEL_CHANGE_DB = 6f;
+    // Top K overlap (intersection over union) below which the classes count as changed
+    private static final float MIN_CLASS_OVERLAP = 0.5f;
+
+    private static final long DEFAULT_MIN_MINUTES = 1;
+    private static final long DEFAULT_MAX_MINUTES = 30;
+
+    private final Context context;
+
+    // Previous sample, only touched by the pipeline's notify thread
+    private boolean hasPrevious;
+    private int[] previousClasses = new int[0];
+    private int previousCount;
+    private float previousDbfs;
+
+    private long samples;
+    private long changes;
+    private long coveredMinutes;
+
+    public AdaptiveScheduler(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Whether the periodic sampler's interval is adapted
+     */
+    public static boolean isEnabled(Context context) {
+        return Aware.getSetting(context, Settings.ADAPTIVE_SAMPLING_PLUGIN_YAMNET).equals("true")
+                && !Aware.getSetting(context, Settings.CONTINUOUS_PLUGIN_YAMNET).equals("true");
+    }
+
+    /**
+     * Minimum and maximum interval in minutes, min <= max
+     */
+    public static long[] bounds(Context context) {
+        long min = Math.max(1, setting(context, Settings.FREQUENCY_MIN_PLUGIN_YAMNET, DEFAULT_MIN_MINUTES));
+        long max = Math.max(min, setting(context, Settings.FREQUENCY_MAX_PLUGIN_YAMNET, DEFAULT_MAX_MINUTES));
+        return new long[]{min, max};
+    }
+
+    /**
+     * Decide the next interval from an analysed sample and reschedule if it differs
+     */
+    public void onSample(AudioSample sample) {
+        if (!isEnabled(context)) return;
+
+        long[] bounds = bounds(context);
+        long current = Plugin.getSamplerInterval(context);
+        if (current <= 0) return;
+        current = Math.min(bounds[1], Math.max(bounds[0], current));
+
+        String reason;
+        long next;
+        if (!hasPrevious) {
+            reason = "first sample";
+            next = current;
+        } else {
+            reason = change(sample);
+            if (reason != null) {
+                changes++;
+                next = bounds[0];
+            } else {
+                reason = "stable";
+                next = Math.min(bounds[1], current * 2);
+            }
+        }
+        remember(sample);
+
+        samples++;
+        coveredMinutes += next;
+        long base = Math.max(1, setting(context, Settings.FREQUENCY_PLUGIN_YAMNET, 5));
+        Log.d(TAG, "Interval " + current + " -> " + next + " min (" + reason + ", " + sample.rmsDbfs + " dBFS); "
+                + samples + " samples, " + changes + " changes, a fixed " + base + " min interval would have taken "
+                + (coveredMinutes / base) + " samples");
+
+        if (next != Plugin.getSamplerInterval(context)) {
+            Plugin.saveSamplerSchedule(context, next);
+        }
+    }
+
+    /**
+     * Why this sample differs from the previous one, or null when the scene is stable
+     */
+    private String change(AudioSample sample) {
+        float levelChange = Math.abs(sample.rmsDbfs - previousDbfs);
+        if (levelChange >= LEVEL_CHANGE_DB) {
+            return "level changed " + Math.round(levelChange) + " dB";
+        }
+
+        int count = sample.predictionCount;
+        if (count == 0 && previousCount == 0) return null;
+        if (count == 0 || previousCount == 0) return "predictions appeared or disappeared";
+        if (sample.predictionIndices[0] != previousClasses[0]) {
+            return "top class changed to " + sample.predictionLabels[0];
+        }
+
+        int shared = 0;
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < previousCount; j++) {
+                if (sample.predictionIndices[i] == previousClasses[j]) {
+                    shared++;
+                    break;
+                }
+            }
+        }
+        float overlap = (float) shared / (count + previousCount - shared);
+        return overlap < MIN_CLASS_OVERLAP ? "top " + count + " classes changed" : null;
+    }
+
+    private void remember(AudioSample sample) {
+        if (previousClasses.length < sample.predictionCount) {
+            previousClasses = new int[sample.predictionCount];
+        }
+        System.arraycopy(sample.predictionIndices, 0, previousClasses, 0, sample.predictionCount);
+        previousCount = sample.predictionCount;
+        previousDbfs = sample.rmsDbfs;
+        hasPrevious = true;
+    }
+
+    private static long setting(Context context, String key, long defaultValue) {
+        try {
+            String value = Aware.getSetting(context, key);
+            if (!value.isEmpty()) return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Invalid " + key + " setting, using default: " + e.getMessage());
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,571 @@
+package com.aware.plugin.yamnet;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.os.Process;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.aware.Aware;
+import com.aware.Aware_Preferences;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide analysis pipeline: capture -> preprocess -> infer -> persist -> notify
+ * Capture happens in AudioAnalyser / ContinuousAnalyser, which hand AudioSamples to submit().
+ * Every other stage runs on its own thread behind a bounded queue with an explicit drop policy,
+ * so a slow flash write or provider insert never delays the next capture or inference.
+ * Clips the SilenceGate finds near-silent skip the model and are stored as "silence" results.
+ * Each sample carries the BudgetController budget it was captured under, which sets the
+ * interpreter threads, can force the gate and can defer writes; its tier is stored with the row.
+ * Each sample's rows are written with one Provider.applyBatch transaction; in continuous mode the
+ * persist stage can also hold analysis rows back and group-commit them every N samples or T ms.
+ */
+public class AnalysisPipeline {
+    private static final String TAG = "AWARE::YAMNet::Pipeline";
+
+    /**
+     * What a stage does when its queue is full
+     */
+    public enum DropPolicy {
+        /** Evict the oldest queued sample to make room for the new one */
+        DROP_OLDEST,
+        /** Reject the new sample */
+        DROP_NEWEST
+    }
+
+    private static final int SAMPLE_POOL_SIZE = 8;
+    // How long release() waits for each stage thread to finish its sample and exit
+    private static final long STOP_TIMEOUT_MS = 2000;
+
+    private static AnalysisPipeline instance;
+
+    private final Context context;
+    private final BlockingQueue<AudioSample> samplePool = new ArrayBlockingQueue<>(SAMPLE_POOL_SIZE);
+    private final YamnetAnalysis analysis = new YamnetAnalysis();
+    private final SilenceGate silenceGate = new SilenceGate();
+    private final AdaptiveScheduler adaptiveScheduler;
+    private String deviceId;
+
+    // Storage added by the plugin_yamnet.scores_blob column
+    private volatile long scoreBytes = 0;
+    private volatile long scoreRows = 0;
+
+    // Write-behind buffer, only touched by the persist thread
+    private final ArrayList<ContentProviderOperation> pendingOps = new ArrayList<>();
+    // Clips appended to the segment store for the buffered rows, taken back if their batch fails
+    private final ArrayList<AudioSegmentStore.Location> pendingAudio = new ArrayList<>();
+    private int pendingSamples = 0;
+    private long pendingSince = 0;
+    private int batchSize = 1;
+    private long batchMs = 0;
+    private volatile long batchesWritten = 0;
+
+    // Inferences run and skipped by the silence gate; skipped time is estimated at the average run
+    private volatile long inferences = 0;
+    private volatile long inferenceMs = 0;
+    private volatile long silentSamples = 0;
+
+    private final Stage preprocess;
+    private final Stage infer;
+    private final Stage persist;
+    private final Stage notify;
+
+    private AnalysisPipeline(Context context) {
+        this.context = context.getApplicationContext();
+        this.adaptiveScheduler = new AdaptiveScheduler(this.context);
+
+        // Fresh audio matters more than stale audio before inference; results are kept as long as possible
+        preprocess = new Stage("Preprocess", 4, DropPolicy.DROP_OLDEST, Process.THREAD_PRIORITY_BACKGROUND) {
+            @Override
+            Stage process(AudioSample sample) {
+                return preprocessSample(sample);
+            }
+        };
+        infer = new Stage("Infer", 4, DropPolicy.DROP_OLDEST, Process.THREAD_PRIORITY_BACKGROUND) {
+            @Override
+            Stage process(AudioSample sample) {
+                return inferSample(sample);
+            }
+        };
+        persist = new Stage("Persist", 32, DropPolicy.DROP_NEWEST, Process.THREAD_PRIORITY_BACKGROUND) {
+            @Override
+            Stage process(AudioSample sample) {
+                return persistSample(sample);
+            }
+
+            @Override
+            long idleTimeout() {
+                if (pendingSamples == 0 || batchMs == 0) return 0;
+                return Math.max(1, pendingSince + batchMs - SystemClock.elapsedRealtime());
+            }
+
+            @Override
+            void idle() {
+                flushPending();
+            }
+
+            @Override
+            void finish() {
+                flushPending();
+            }
+        };
+        notify = new Stage("Notify", 16, DropPolicy.DROP_OLDEST, Process.THREAD_PRIORITY_BACKGROUND) {
+            @Override
+            Stage process(AudioSample sample) {
+                return notifySample(sample);
+            }
+        };
+
+        preprocess.start();
+        infer.start();
+        persist.start();
+        notify.start();
+    }
+
+    /**
+     * Returns the shared pipeline, starting its stage threads if needed
+     */
+    public static synchronized AnalysisPipeline getInstance(Context context) {
+        if (instance == null) {
+            instance = new AnalysisPipeline(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Stops the shared pipeline, if any, and waits for its stage threads to exit, upstream first,
+     * so no stage is still writing rows or segment audio or running the model when this returns.
+     * Queued samples are discarded; rows the persist stage holds back are written first.
+     */
+    public static synchronized void release() {
+        if (instance != null) {
+            instance.preprocess.stop();
+            instance.infer.stop();
+            instance.persist.stop();
+            instance.notify.stop();
+            Log.d(TAG, "Pipeline stopped: " + instance.getStats());
+            instance = null;
+        }
+    }
+
+    /**
+     * Get a pooled sample whose PCM buffer holds at least the given number of samples
+     */
+    public AudioSample obtainSample(int capacity) {
+        AudioSample sample = samplePool.poll();
+        if (sample == null) {
+            sample = new AudioSample();
+        }
+        sample.ensureCapacity(capacity);
+        return sample;
+    }
+
+    /**
+     * Hand a captured sample to the pipeline. Never blocks the capture path.
+     *
+     * @return false if the sample was dropped
+     */
+    public boolean submit(AudioSample sample) {
+        return preprocess.offer(sample);
+    }
+
+    /**
+     * Queue depths of the preprocess, infer, persist and notify stages
+     */
+    public int[] getQueueDepths() {
+        return new int[]{preprocess.depth(), infer.depth(), persist.depth(), notify.depth()};
+    }
+
+    public String getStats() {
+        return preprocess + ", " + infer + ", " + persist + ", " + notify
+                + ", " + batchesWritten + " batches written"
+                + ", scores " + scoreBytes + " bytes in " + scoreRows + " rows"
+                + (scoreRows > 0 ? " (" + (scoreBytes / scoreRows) + " bytes per sample)" : "")
+                + ", silence gate skipped " + silentSamples + " of " + (inferences + silentSamples)
+                + " inferences (about " + getSilenceSavedMs() + " ms)";
+    }
+
+    /**
+     * Inference time the silence gate saved, estimated at the average time of the inferences run
+     */
+    public long getSilenceSavedMs() {
+        long runs = inferences;
+        return runs > 0 ? silentSamples * inferenceMs / runs : 0;
+    }
+
+    /**
+     * Return a sample obtained with obtainSample() that will not be submitted
+     */
+    public void recycleSample(AudioSample sample) {
+        sample.reset();
+        samplePool.offer(sample);
+    }
+
+    /**
+     * Preprocess: convert PCM to little-endian bytes (exactly sized) when the clip will be stored,
+     * and measure its level and zero crossings for the silence gate in the same pass
+     */
+    private Stage preprocessSample(AudioSample sample) {
+        boolean store = sample.storeAudio || sample.saveAudioFile;
+        if (store) {
+            // Pooled samples usually keep the same clip length, so the array is reused
+            int size = sample.length * 2;
+            if (sample.pcmBytes.length != size) {
+                sample.pcmBytes = new byte[size];
+            }
+        }
+
+        long sumSquares = 0;
+        int crossings = 0;
+        boolean negative = sample.length > 0 && sample.pcm[0] < 0;
+        for (int i = 0, j = 0; i < sample.length; i++) {
+            short value = sample.pcm[i];
+            if (store) {
+                sample.pcmBytes[j++] = (byte) value;
+                sample.pcmBytes[j++] = (byte) (value >> 8);
+            }
+            sumSquares += value * value;
+            if ((value < 0) != negative) {
+                crossings++;
+                negative = !negative;
+            }
+        }
+
+        silenceGate.loadSettings(context);
+        silenceGate.measure(sample, sumSquares, crossings);
+        return infer;
+    }
+
+    /**
+     * Infer: run the clip through the warm shared session, unless the silence gate closed
+     */
+    private Stage inferSample(AudioSample sample) {
+        if (sample.silent) {
+            sample.predictionCount = 0;
+            sample.storeScores = false;
+            sample.analysisResults = silenceGate.describe(sample);
+            silentSamples++;
+            Log.d(TAG, "Silent sample at " + sample.rmsDbfs + " dBFS, inference skipped");
+            return persist;
+        }
+
+        YamnetSession session = YamnetSession.getInstance(context);
+        session.loadSettings(sample.budget.threads);
+        analysis.loadSettings(context);
+        analysis.analyse(session, sample);
+        inferences++;
+        inferenceMs += session.getLastInferenceMs();
+        return persist;
+    }
+
+    /**
+     * Persist: store the analysis row, its predictions, the local-only audio row and the optional audio file
+     */
+    private Stage persistSample(AudioSample sample) {
+        if (deviceId == null) {
+            deviceId = Aware.getSetting(context, Aware_Preferences.DEVICE_ID);
+        }
+        loadBatchSettings(sample.budget);
+
+        // 1. 분석 결과를 메인 테이블에 저장 (동기화됨)
+        ContentValues mainData = new ContentValues();
+        mainData.put(Provider.YAMNet_Data.TIMESTAMP, sample.timestamp);
+        mainData.put(Provider.YAMNet_Data.DEVICE_ID, deviceId);
+        mainData.put(Provider.YAMNet_Data.DURATION, sample.durationMs);
+        mainData.put(Provider.YAMNet_Data.ANALYSIS_RESULTS, sample.analysisResults);
+        mainData.put(Provider.YAMNet_Data.BUDGET_TIER, sample.budget.tier);
+        mainData.put(Provider.YAMNet_Data.MODEL_VERSION, sample.modelVersion);
+        if (sample.storeScores) {
+            mainData.put(Provider.YAMNet_Data.SCORES_BLOB, sample.scoresBlob);
+            scoreBytes += sample.scoresBlob.length;
+            scoreRows++;
+        }
+        sample.mainData = mainData;
+
+        pendingOps.add(ContentProviderOperation.newInsert(Provider.YAMNet_Data.CONTENT_URI)
+                .withValues(mainData)
+                .build());
+
+        // Structured top K rows, queryable without parsing the JSON above. They carry the analysis
+        // row's (device_id, timestamp), which identifies it on the server too; a local _id would not
+        for (int rank = 0; rank < sample.predictionCount; rank++) {
+            ContentValues prediction = new ContentValues();
+            prediction.put(Provider.YAMNet_Predictions.TIMESTAMP, sample.timestamp);
+            prediction.put(Provider.YAMNet_Predictions.DEVICE_ID, deviceId);
+            prediction.put(Provider.YAMNet_Predictions.CLASS_INDEX, sample.predictionIndices[rank]);
+            prediction.put(Provider.YAMNet_Predictions.LABEL, sample.predictionLabels[rank]);
+            prediction.put(Provider.YAMNet_Predictions.SCORE, sample.predictionScores[rank]);
+            prediction.put(Provider.YAMNet_Predictions.RANK, rank);
+            pendingOps.add(ContentProviderOperation.newInsert(Provider.YAMNet_Predictions.CONTENT_URI)
+                    .withValues(prediction)
+                    .build());
+        }
+
+        // 2. 원본 오디오를 세그먼트 파일에 저장하고 위치만 별도 테이블에 저장 (로컬 전용)
+        byte[] audioData = sample.pcmBytes;
+        if (sample.storeAudio) {
+            try {
+                AudioSegmentStore.Location location = AudioSegmentStore.getInstance(context).append(audioData, 0, audioData.length);
+                ContentValues audioValues = new ContentValues();
+                audioValues.put(Provider.YAMNet_Audio.TIMESTAMP, sample.timestamp);
+                audioValues.put(Provider.YAMNet_Audio.DEVICE_ID, deviceId);
+                audioValues.put(Provider.YAMNet_Audio.DURATION, sample.durationMs);
+                audioValues.put(Provider.YAMNet_Audio.SEGMENT, location.segment);
+                audioValues.put(Provider.YAMNet_Audio.SEGMENT_OFFSET, location.offset);
+                audioValues.put(Provider.YAMNet_Audio.SEGMENT_LENGTH, location.length);
+                pendingOps.add(ContentProviderOperation.newInsert(Provider.YAMNet_Audio.CONTENT_URI)
+                        .withValues(audioValues)
+                        .build());
+                pendingAudio.add(location);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to store audio from " + sample.timestamp + ": " + e.getMessage());
+            }
+        }
+
+        if (pendingSamples++ == 0) {
+            pendingSince = SystemClock.elapsedRealtime();
+        }
+
+        // batchMs 0 = no time limit, only the sample count
+        if (pendingSamples >= batchSize
+                || (batchMs > 0 && SystemClock.elapsedRealtime() - pendingSince >= batchMs)) {
+            flushPending();
+        }
+
+        // Save audio file if enabled
+        if (sample.saveAudioFile) {
+            AudioAnalyser.saveAudioFile(context, audioData, sample.timestamp);
+        }
+        return notify;
+    }
+
+    /**
+     * Group commit settings; rows are held back in continuous mode and when the budget defers writes.
+     * A sample whose budget no longer defers flushes everything held back before it.
+     */
+    private void loadBatchSettings(BudgetController.Budget budget) {
+        batchSize = 1;
+        batchMs = 0;
+        if (budget.deferSamples > 1) {
+            batchSize = budget.deferSamples;
+            batchMs = budget.deferMs;
+            return;
+        }
+        if (!Aware.getSetting(context, Settings.CONTINUOUS_PLUGIN_YAMNET).equals("true")) return;
+
+        try {
+            String value = Aware.getSetting(context, Settings.WRITE_BATCH_SIZE_PLUGIN_YAMNET);
+            if (!value.isEmpty()) batchSize = Math.max(1, Integer.parseInt(value));
+
+            value = Aware.getSetting(context, Settings.WRITE_BATCH_MS_PLUGIN_YAMNET);
+            if (!value.isEmpty()) batchMs = Math.max(0, Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Invalid write batch setting, using defaults: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write all buffered rows in one transaction. If it fails, the clips appended for those rows
+     * are taken back out of the segment store, so no audio is left without a row.
+     */
+    private void flushPending() {
+        if (pendingOps.isEmpty()) return;
+
+        try {
+            context.getContentResolver().applyBatch(Provider.YAMNet_Data.CONTENT_URI.getAuthority(), pendingOps);
+            batchesWritten++;
+            Log.d(TAG, "Wrote " + pendingSamples + " samples (" + pendingOps.size() + " rows) in one transaction");
+            AudioSegmentStore store = AudioSegmentStore.getInstance(context);
+            for (AudioSegmentStore.Location location : pendingAudio) {
+                store.commit(location);
+            }
+        } catch (RemoteException | OperationApplicationException | RuntimeException e) {
+            Log.e(TAG, "Failed to write " + pendingSamples + " samples: " + e.getMessage());
+            discardPendingAudio();
+        }
+        pendingOps.clear();
+        pendingAudio.clear();
+        pendingSamples = 0;
+    }
+
+    /**
+     * Take back the clips of a failed batch, newest first
+     */
+    private void discardPendingAudio() {
+        AudioSegmentStore store = AudioSegmentStore.getInstance(context);
+        int kept = 0;
+        for (int i = pendingAudio.size() - 1; i >= 0; i--) {
+            try {
+                if (!store.discard(pendingAudio.get(i))) kept++;
+            } catch (IOException e) {
+                Log.e(TAG, "Could not discard audio of a failed batch: " + e.getMessage());
+                kept++;
+            }
+        }
+        if (kept > 0) {
+            Log.w(TAG, kept + " clips of a failed batch stay in their segments until retention deletes them");
+        }
+    }
+
+    /**
+     * Notify: hand the analysis row to the registered observer and let the adaptive scheduler
+     * pick the next sampling interval
+     */
+    private Stage notifySample(AudioSample sample) {
+        if (Plugin.getSensorObserver() != null) {
+            Plugin.getSensorObserver().onAudioAnalyzed(sample.mainData);
+        }
+        adaptiveScheduler.onSample(sample);
+        Log.d(TAG, "YAMNet analysis completed, queues " + preprocess.depth() + "/" + infer.depth() + "/" + persist.depth() + "/" + notify.depth());
+        return null;
+    }
+
+    /**
+     * A pipeline stage: one worker thread draining a bounded queue
+     */
+    private abstract class Stage implements Runnable {
+        private final String name;
+        private final BlockingQueue<AudioSample> queue;
+        private final DropPolicy policy;
+        private final int priority;
+        private Thread thread;
+        private volatile boolean running;
+
+        private volatile long processed = 0;
+        private volatile long dropped = 0;
+
+        Stage(String name, int capacity, DropPolicy policy, int priority) {
+            this.name = name;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.policy = policy;
+            this.priority = priority;
+        }
+
+        /**
+         * Handle one sample and return the stage it goes to next, or null when it is done
+         */
+        abstract Stage process(AudioSample sample);
+
+        /**
+         * How long to wait for a sample before calling idle(), 0 = wait indefinitely
+         */
+        long idleTimeout() {
+            return 0;
+        }
+
+        /**
+         * Called when idleTimeout() passes without a new sample
+         */
+        void idle() {}
+
+        /**
+         * Called on the stage thread when the stage stops
+         */
+        void finish() {}
+
+        void start() {
+            running = true;
+            thread = new Thread(this, "YAMNet-" + name);
+            thread.start();
+        }
+
+        /**
+         * Stop the thread and wait up to STOP_TIMEOUT_MS for it to finish()
+         */
+        void stop() {
+            running = false;
+            thread.interrupt();
+            try {
+                thread.join(STOP_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (thread.isAlive()) {
+                Log.w(TAG, name + " stage did not stop within " + STOP_TIMEOUT_MS + " ms");
+            }
+        }
+
+        int depth() {
+            return queue.size();
+        }
+
+        boolean offer(AudioSample sample) {
+            switch (policy) {
+                case DROP_NEWEST:
+                    if (queue.offer(sample)) return true;
+                    drop(sample);
+                    return false;
+                case DROP_OLDEST:
+                default:
+                    while (!queue.offer(sample)) {
+                        AudioSample oldest = queue.poll();
+                        if (oldest != null) drop(oldest);
+                    }
+                    return true;
+            }
+        }
+
+        private void drop(AudioSample sample) {
+            dropped++;
+            Log.w(TAG, name + " queue full, dropped sample from " + sample.timestamp + " (" + dropped + " dropped)");
+            recycleSample(sample);
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(priority);
+            while (running) {
+                AudioSample sample;
+                try {
+                    long timeout = idleTimeout();
+                    sample = timeout > 0 ? queue.poll(timeout, TimeUnit.MILLISECONDS) : queue.take();
+                } catch (InterruptedException e) {
+                    break;
+                }
+
+                if (sample == null) {
+                    try {
+                        idle();
+                    } catch (Exception e) {
+                        Log.e(TAG, name + " stage failed: " + e.getMessage());
+                    }
+                    continue;
+                }
+
+                Stage next = null;
+                try {
+                    next = process(sample);
+                    processed++;
+                } catch (Exception e) {
+                    Log.e(TAG, name + " stage failed: " + e.getMessage());
+                }
+
+                if (next != null) {
+                    next.offer(sample);
+                } else {
+                    recycleSample(sample);
+                }
+            }
+
+            try {
+                finish();
+            } catch (Exception e) {
+                Log.e(TAG, name + " stage failed: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name + " depth " + depth() + " processed " + processed + " dropped " + dropped;
+        }
+    }
+}
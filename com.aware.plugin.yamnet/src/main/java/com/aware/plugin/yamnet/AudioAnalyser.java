@@ -1,10 +1,8 @@
 package com.aware.plugin.yamnet;
 
 import android.app.IntentService;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
-import android.content.res.AssetFileDescriptor;
 import android.media.AudioFormat;
 import android.media.AudioManager;
 import android.media.AudioRecord;
@@ -14,31 +12,13 @@ import android.util.Base64;
 import android.util.Log;
 
 import com.aware.Aware;
-import com.aware.Aware_Preferences;
 import com.aware.plugin.yamnet.Settings;
 
-import org.tensorflow.lite.Interpreter;
-import org.json.JSONArray;
-import org.json.JSONObject;
-
-import java.io.ByteArrayOutputStream;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
 
 /**
  * Audio collection service for YAMNet analysis
@@ -48,6 +28,14 @@ public class AudioAnalyser extends IntentService {
     private static final String TAG = "AWARE::YAMNet";
     private static final int SAMPLE_RATE = 16000; // YAMNet requires 16kHz
 
+    private static final int READ_CHUNK_SAMPLES = SAMPLE_RATE / 10; // 100ms per read
+
+    /**
+     * Values of audio_format_plugin_yamnet
+     */
+    public static final String FORMAT_FLAC = "flac";
+    public static final String FORMAT_WAV = "wav";
+
     public AudioAnalyser() {
         super(Aware.TAG);
     }
@@ -71,20 +59,19 @@ public class AudioAnalyser extends IntentService {
             Log.w(TAG, "Error reading duration setting, using default: " + e.getMessage());
         }
 
-        Log.d(TAG, "Recording duration: " + recordingDurationMs + " ms");
+        // Battery and thermal state may shorten the clip and change how it is analysed and stored
+        BudgetController.Budget budget = BudgetController.getInstance(getApplicationContext()).current();
+        recordingDurationMs = budget.capDuration(recordingDurationMs);
+
+        Log.d(TAG, "Recording duration: " + recordingDurationMs + " ms, budget " + budget);
 
-        // Calculate buffer size based on duration
+        // Recorder buffer only needs to cover a few reads; samples go straight into pcmBuffer
         int bufferSize = AudioRecord.getMinBufferSize(
                 SAMPLE_RATE,
                 AudioFormat.CHANNEL_IN_MONO,
                 AudioFormat.ENCODING_PCM_16BIT
         );
-
-        // Ensure buffer is large enough for the specified duration
-        int minBufferSize = (SAMPLE_RATE * 2 * recordingDurationMs) / 1000; // samples * bytes * seconds
-        if (bufferSize < minBufferSize) {
-            bufferSize = minBufferSize;
-        }
+        bufferSize = Math.max(bufferSize, READ_CHUNK_SAMPLES * 2 * 2);
 
         // Initialize audio recorder
         AudioRecord recorder = new AudioRecord(
@@ -111,21 +98,36 @@ public class AudioAnalyser extends IntentService {
 
         Log.d(TAG, "Starting " + recordingDurationMs + "ms audio collection for YAMNet analysis...");
 
-        // Collect audio data for the specified duration
-        ByteArrayOutputStream audioStream = new ByteArrayOutputStream();
-        byte[] buffer = new byte[bufferSize];
-        int totalBytesRead = 0;
-        int targetBytes = (SAMPLE_RATE * 2 * recordingDurationMs) / 1000; // Calculate target bytes based on duration
+        // Collect audio samples for the specified duration straight into a pooled pipeline sample
+        AnalysisPipeline pipeline = AnalysisPipeline.getInstance(getApplicationContext());
+        int targetSamples = (int) ((long) SAMPLE_RATE * recordingDurationMs / 1000);
+        AudioSample sample = pipeline.obtainSample(targetSamples);
+        short[] pcm = sample.pcm;
+        int totalSamplesRead = 0;
 
+        // One timestamp for the clip: it names the saved recording and is the analysis row's
+        // timestamp, so the two can be matched
         long startTime = System.currentTimeMillis();
 
-        while (totalBytesRead < targetBytes) {
-            int bytesToRead = Math.min(buffer.length, targetBytes - totalBytesRead);
-            int bytesRead = recorder.read(buffer, 0, bytesToRead);
-
-            if (bytesRead > 0) {
-                audioStream.write(buffer, 0, bytesRead);
-                totalBytesRead += bytesRead;
+        // Saved recordings are written as the chunks arrive (FLAC is encoded on a background thread)
+        boolean saveAudio = Aware.getSetting(getApplicationContext(), Settings.SAVE_AUDIO_FILES).equals("true");
+        AudioFileWriter audioWriter = saveAudio ? openAudioWriter(getApplicationContext(), startTime) : null;
+
+        while (totalSamplesRead < targetSamples) {
+            int samplesToRead = Math.min(READ_CHUNK_SAMPLES, targetSamples - totalSamplesRead);
+            int samplesRead = recorder.read(pcm, totalSamplesRead, samplesToRead);
+
+            if (samplesRead > 0) {
+                if (audioWriter != null) {
+                    try {
+                        audioWriter.write(pcm, totalSamplesRead, samplesRead);
+                    } catch (IOException e) {
+                        Log.e(TAG, "Error writing audio file: " + e.getMessage());
+                        discard(audioWriter);
+                        audioWriter = null;
+                    }
+                }
+                totalSamplesRead += samplesRead;
             }
 
             // Timeout protection (max duration + 1 second)
@@ -139,201 +141,32 @@ public class AudioAnalyser extends IntentService {
         recorder.stop();
         recorder.release();
 
-        byte[] audioData = audioStream.toByteArray();
-        Log.d(TAG, "Collected " + audioData.length + " bytes of audio data in " + recordingDurationMs + "ms");
-
-        // Perform YAMNet analysis
-        String yamnetResults = performYAMNetAnalysis(audioData);
-        Log.d(TAG, "YAMNet analysis result: " + yamnetResults);
-
-        // Store results in database
-        long timestamp = System.currentTimeMillis();
-        String deviceId = Aware.getSetting(getApplicationContext(), Aware_Preferences.DEVICE_ID);
-
-        // 1. 분석 결과를 메인 테이블에 저장 (동기화됨)
-        ContentValues mainData = new ContentValues();
-        mainData.put(Provider.YAMNet_Data.TIMESTAMP, timestamp);
-        mainData.put(Provider.YAMNet_Data.DEVICE_ID, deviceId);
-        mainData.put(Provider.YAMNet_Data.DURATION, recordingDurationMs);  // 수집 시간 추가
-        mainData.put(Provider.YAMNet_Data.ANALYSIS_RESULTS, yamnetResults);
-
-        getContentResolver().insert(Provider.YAMNet_Data.CONTENT_URI, mainData);
+        Log.d(TAG, "Collected " + totalSamplesRead + " samples of audio data in " + recordingDurationMs + "ms");
 
-        // 2. 원본 오디오를 별도 테이블에 저장 (로컬 전용)
-        ContentValues audioValues = new ContentValues();
-        audioValues.put(Provider.YAMNet_Audio.TIMESTAMP, timestamp);
-        audioValues.put(Provider.YAMNet_Audio.DEVICE_ID, deviceId);
-        audioValues.put(Provider.YAMNet_Audio.DURATION, recordingDurationMs);  // 수집 시간 추가
-        audioValues.put(Provider.YAMNet_Audio.RAW_AUDIO, audioData);  // 실제 오디오 바이트 배열
-
-        getContentResolver().insert(Provider.YAMNet_Audio.CONTENT_URI, audioValues);
-
-        // Save audio file if enabled
-        if (Aware.getSetting(getApplicationContext(), Settings.SAVE_AUDIO_FILES).equals("true")) {
-            saveAudioFile(audioData, timestamp);
-        }
-
-        // Notify observers
-        if (Plugin.getSensorObserver() != null) {
-            Plugin.getSensorObserver().onAudioAnalyzed(mainData);
-        }
-
-        Log.d(TAG, "YAMNet analysis completed");
-    }
-
-    /**
-     * Perform YAMNet analysis on audio data
-     */
-    private String performYAMNetAnalysis(byte[] audioData) {
-        Log.d(TAG, "Starting YAMNet analysis...");
-        try {
-            // Load TensorFlow Lite model
-            Context context = getApplicationContext();
-            Log.d(TAG, "Loading model file...");
-
-            // 모델 파일 존재 확인
+        if (audioWriter != null) {
             try {
-                String[] assets = context.getAssets().list("");
-                Log.d(TAG, "Assets folder contains:");
-                for (String asset : assets) {
-                    Log.d(TAG, " - " + asset);
-                }
+                audioWriter.close();
+                Log.d(TAG, "Audio file saved: " + audioWriter.getFile().getAbsolutePath());
+                AudioStorageQuota.getInstance(getApplicationContext()).add(audioWriter.getFile());
             } catch (IOException e) {
-                Log.e(TAG, "Error listing assets: " + e.getMessage());
-            }
-
-            Interpreter tflite = new Interpreter(loadModelFile(context, "yamnet.tflite"));
-            // 다른 파일명인 경우:
-            // Interpreter tflite = new Interpreter(loadModelFile(context, "lite-model_yamnet_classification_tflite_1.tflite"));
-            Log.d(TAG, "Model loaded successfully");
-
-            // Load labels
-            List<String> labels = loadLabels(context);
-
-            // Convert byte array to float array normalized to [-1, 1]
-            float[] floatAudio = convertBytesToFloat(audioData);
-
-            // Prepare input/output buffers
-            float[][] output = new float[1][521]; // YAMNet has 521 classes
-
-            // Run inference
-            tflite.run(floatAudio, output);
-
-            // Find top 5 predictions
-            List<Prediction> predictions = getTopPredictions(output[0], labels, 5);
-
-            // Create JSON result
-            JSONObject result = new JSONObject();
-            result.put("status", "success");
-            result.put("timestamp", System.currentTimeMillis());
-
-            JSONArray predictionsArray = new JSONArray();
-            for (Prediction pred : predictions) {
-                JSONObject predObj = new JSONObject();
-                predObj.put("label", pred.label);
-                predObj.put("score", pred.score);
-                predObj.put("index", pred.index);
-                predictionsArray.put(predObj);
-            }
-            result.put("predictions", predictionsArray);
-
-            tflite.close();
-            return result.toString();
-
-        } catch (Exception e) {
-            Log.e(TAG, "Error performing YAMNet analysis: " + e.getMessage());
-            e.printStackTrace();
-            return "{\"status\":\"error\",\"message\":\"" + e.getMessage() + "\"}";
-        }
-    }
-
-    /**
-     * Load TFLite model from assets
-     */
-    private MappedByteBuffer loadModelFile(Context context, String modelPath) throws IOException {
-        AssetFileDescriptor fileDescriptor = context.getAssets().openFd(modelPath);
-        FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
-        FileChannel fileChannel = inputStream.getChannel();
-        long startOffset = fileDescriptor.getStartOffset();
-        long declaredLength = fileDescriptor.getDeclaredLength();
-        return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
-    }
-
-    /**
-     * Convert 16-bit PCM byte array to normalized float array
-     */
-    private float[] convertBytesToFloat(byte[] audioData) {
-        short[] shortData = new short[audioData.length / 2];
-        ByteBuffer.wrap(audioData).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(shortData);
-
-        float[] floatData = new float[shortData.length];
-        for (int i = 0; i < shortData.length; i++) {
-            // Normalize to [-1, 1]
-            floatData[i] = shortData[i] / 32768.0f;
-        }
-
-        return floatData;
-    }
-
-    /**
-     * Load labels from assets
-     */
-    private List<String> loadLabels(Context context) {
-        List<String> labels = new ArrayList<>();
-        try {
-            BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(context.getAssets().open("yamnet_labels.txt"))
-            );
-            String line;
-            while ((line = reader.readLine()) != null) {
-                labels.add(line.trim());
-            }
-            reader.close();
-        } catch (IOException e) {
-            Log.e(TAG, "Error loading labels: " + e.getMessage());
-            // Return default labels if file not found
-            for (int i = 0; i < 521; i++) {
-                labels.add("Class " + i);
+                Log.e(TAG, "Error saving audio file: " + e.getMessage());
+                audioWriter.getFile().delete();
+                audioWriter = null;
             }
         }
-        return labels;
-    }
-
-    /**
-     * Get top N predictions from model output
-     */
-    private List<Prediction> getTopPredictions(float[] scores, List<String> labels, int topN) {
-        List<Prediction> predictions = new ArrayList<>();
 
-        // Create list of all predictions
-        for (int i = 0; i < scores.length && i < labels.size(); i++) {
-            predictions.add(new Prediction(i, labels.get(i), scores[i]));
-        }
-
-        // Sort by score descending
-        Collections.sort(predictions, new Comparator<Prediction>() {
-            @Override
-            public int compare(Prediction a, Prediction b) {
-                return Float.compare(b.score, a.score);
-            }
-        });
-
-        // Return top N
-        return predictions.subList(0, Math.min(topN, predictions.size()));
-    }
-
-    /**
-     * Simple class to hold prediction results
-     */
-    private static class Prediction {
-        int index;
-        String label;
-        float score;
-
-        Prediction(int index, String label, float score) {
-            this.index = index;
-            this.label = label;
-            this.score = score;
+        // Hand the clip to the pipeline: preprocess, inference, storage and notification
+        // run on their own threads, so this worker is free for the next capture right away
+        sample.length = totalSamplesRead;
+        sample.timestamp = startTime;
+        sample.durationMs = recordingDurationMs;
+        sample.budget = budget;
+        sample.storeAudio = true;
+        // The pipeline only writes the file when it could not be streamed above
+        sample.saveAudioFile = saveAudio && audioWriter == null;
+
+        if (!pipeline.submit(sample)) {
+            Log.w(TAG, "Sample dropped by the analysis pipeline");
         }
     }
 
@@ -365,83 +198,70 @@ public class AudioAnalyser extends IntentService {
     }
 
     /**
-     * Save audio data as WAV file to permanent storage
+     * Saved recording path: /audio/YYYY-MM-DD/yamnet_YYYY-MM-DD_HH-MM-SS.extension
      */
-    private void saveAudioFile(byte[] audioData, long timestamp) {
-        try {
-            // Create directory structure: /audio/YYYY-MM-DD/
-            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
-            String dateStr = dateFormat.format(new Date(timestamp));
-            
-            File audioDir = new File(getExternalFilesDir(null), "audio");
-            File dayDir = new File(audioDir, dateStr);
-            
-            if (!dayDir.exists()) {
-                dayDir.mkdirs();
-            }
-            
-            // Create filename: yamnet_YYYY-MM-DD_HH-MM-SS.wav
-            SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss", Locale.US);
-            String timeStr = timeFormat.format(new Date(timestamp));
-            String filename = "yamnet_" + timeStr + ".wav";
-            
-            File audioFile = new File(dayDir, filename);
-            
-            // Write WAV file
-            writeWavFile(audioFile, audioData);
-            
-            Log.d(TAG, "Audio file saved: " + audioFile.getAbsolutePath());
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error saving audio file: " + e.getMessage());
-            e.printStackTrace();
+    static File audioFile(Context context, long timestamp, String extension) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        String dateStr = dateFormat.format(new Date(timestamp));
+
+        File audioDir = new File(context.getExternalFilesDir(null), "audio");
+        File dayDir = new File(audioDir, dateStr);
+
+        if (!dayDir.exists()) {
+            dayDir.mkdirs();
         }
+
+        SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss", Locale.US);
+        String timeStr = timeFormat.format(new Date(timestamp));
+        return new File(dayDir, "yamnet_" + timeStr + extension);
     }
 
     /**
-     * Write raw PCM data to WAV file
+     * Start the saved file, in the configured format, for a recording that begins at timestamp
+     *
+     * @return the writer, or null if the file could not be created (the pipeline then saves the clip as WAV)
      */
-    private void writeWavFile(File outputFile, byte[] audioData) throws IOException {
-        FileOutputStream fos = new FileOutputStream(outputFile);
-
-        // WAV file header
-        int dataSize = audioData.length;
-        int fileSize = dataSize + 36; // 36 = header size - 8
-
-        // RIFF header
-        fos.write("RIFF".getBytes());
-        fos.write(intToByteArray(fileSize));
-        fos.write("WAVE".getBytes());
-
-        // fmt subchunk
-        fos.write("fmt ".getBytes());
-        fos.write(intToByteArray(16)); // Subchunk1Size (16 for PCM)
-        fos.write(shortToByteArray((short) 1)); // AudioFormat (1 for PCM)
-        fos.write(shortToByteArray((short) 1)); // NumChannels (mono)
-        fos.write(intToByteArray(SAMPLE_RATE)); // SampleRate
-        fos.write(intToByteArray(SAMPLE_RATE * 1 * 16 / 8)); // ByteRate
-        fos.write(shortToByteArray((short) (1 * 16 / 8))); // BlockAlign
-        fos.write(shortToByteArray((short) 16)); // BitsPerSample
-
-        // data subchunk
-        fos.write("data".getBytes());
-        fos.write(intToByteArray(dataSize));
-        fos.write(audioData);
-
-        fos.close();
+    static AudioFileWriter openAudioWriter(Context context, long timestamp) {
+        try {
+            if (FORMAT_WAV.equals(Aware.getSetting(context, Settings.AUDIO_FORMAT_PLUGIN_YAMNET))) {
+                return new WavWriter(audioFile(context, timestamp, ".wav"), SAMPLE_RATE);
+            }
+
+            int level = FlacEncoder.DEFAULT_LEVEL;
+            try {
+                level = Integer.parseInt(Aware.getSetting(context, Settings.FLAC_LEVEL_PLUGIN_YAMNET));
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Invalid FLAC level, using " + level);
+            }
+            return new FlacStreamWriter(audioFile(context, timestamp, ".flac"), SAMPLE_RATE, level);
+        } catch (IOException e) {
+            Log.e(TAG, "Error creating audio file: " + e.getMessage());
+            return null;
+        }
     }
 
-    /**
-     * Convert int to byte array (little-endian)
-     */
-    private byte[] intToByteArray(int value) {
-        return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array();
+    private static void discard(AudioFileWriter writer) {
+        try {
+            writer.close();
+        } catch (IOException ignored) {}
+        writer.getFile().delete();
     }
 
     /**
-     * Convert short to byte array (little-endian)
+     * Save audio data as WAV file to permanent storage
      */
-    private byte[] shortToByteArray(short value) {
-        return ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN).putShort(value).array();
+    static void saveAudioFile(Context context, byte[] audioData, long timestamp) {
+        try {
+            File audioFile = audioFile(context, timestamp, ".wav");
+
+            WavWriter.write(audioFile, SAMPLE_RATE, audioData);
+
+            Log.d(TAG, "Audio file saved: " + audioFile.getAbsolutePath());
+            AudioStorageQuota.getInstance(context).add(audioFile);
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Error saving audio file: " + e.getMessage());
+            e.printStackTrace();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,366 @@
+package com.aware.plugin.yamnet;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.aware.Aware;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Bulk export of every stored recording into one ZIP archive
+ * plugin_yamnet_audio is walked once in time order with a single cursor, merge-joined with
+ * plugin_yamnet on (timestamp, device_id) by a second time-ordered cursor. Clips are read from
+ * their segments through read-only mappings and encoded (FLAC or WAV, as audio_format_plugin_yamnet)
+ * on one worker per core, then written in order as stored ZIP entries. At most IN_FLIGHT_PER_CORE
+ * clips per core are in memory at once, so the clip count is only bounded by storage.
+ * manifest.jsonl lists one JSON object per clip: its file, the audio row and the analysis row.
+ */
+public class AudioArchiveExporter {
+    private static final String TAG = "AWARE::YAMNet::Export";
+
+    public static final String MANIFEST = "manifest.jsonl";
+
+    private static final int SAMPLE_RATE = YamnetSession.SAMPLE_RATE;
+    private static final int IN_FLIGHT_PER_CORE = 2;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private static final String[] AUDIO_PROJECTION = {
+            Provider.YAMNet_Audio._ID, Provider.YAMNet_Audio.TIMESTAMP, Provider.YAMNet_Audio.DEVICE_ID,
+            Provider.YAMNet_Audio.DURATION, Provider.YAMNet_Audio.RAW_AUDIO, Provider.YAMNet_Audio.SEGMENT,
+            Provider.YAMNet_Audio.SEGMENT_OFFSET, Provider.YAMNet_Audio.SEGMENT_LENGTH
+    };
+    private static final String[] DATA_PROJECTION = {
+            Provider.YAMNet_Data._ID, Provider.YAMNet_Data.TIMESTAMP, Provider.YAMNet_Data.DEVICE_ID,
+            Provider.YAMNet_Data.ANALYSIS_RESULTS
+    };
+    private static final String TIME_ORDER = "timestamp ASC, device_id ASC";
+
+    private final Context context;
+    private final boolean flac;
+    private final int flacLevel;
+    private final int threads;
+
+    // One encoder per worker thread, reset for every clip
+    private final ThreadLocal<FlacEncoder> encoders = new ThreadLocal<FlacEncoder>();
+    private final ThreadLocal<ByteBuffer> wavHeaders = new ThreadLocal<ByteBuffer>();
+    private final ThreadLocal<byte[]> scratch = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[COPY_BUFFER_SIZE];
+        }
+    };
+
+    /**
+     * An encoded clip waiting to be written to the archive
+     */
+    private static final class Entry {
+        String name;
+        byte[] header;
+        ByteBuffer body;
+        long crc;
+        String manifestLine;
+    }
+
+    public AudioArchiveExporter(Context context) {
+        this.context = context.getApplicationContext();
+        this.flac = !AudioAnalyser.FORMAT_WAV.equals(Aware.getSetting(this.context, Settings.AUDIO_FORMAT_PLUGIN_YAMNET));
+        int level = FlacEncoder.DEFAULT_LEVEL;
+        try {
+            level = Integer.parseInt(Aware.getSetting(this.context, Settings.FLAC_LEVEL_PLUGIN_YAMNET));
+        } catch (NumberFormatException ignored) {}
+        this.flacLevel = level;
+        this.threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Export every recording into archive, replacing it
+     *
+     * @return number of clips exported
+     */
+    public int export(File archive) throws IOException {
+        long start = System.currentTimeMillis();
+        File partial = new File(archive.getPath() + ".part");
+        File manifest = new File(context.getCacheDir(), "yamnet_export_" + start + ".jsonl");
+
+        Cursor audio = context.getContentResolver().query(Provider.YAMNet_Audio.CONTENT_URI,
+                AUDIO_PROJECTION, null, null, TIME_ORDER);
+        if (audio == null) throw new IOException("Audio table unavailable");
+        Cursor data = context.getContentResolver().query(Provider.YAMNet_Data.CONTENT_URI,
+                DATA_PROJECTION, null, null, TIME_ORDER);
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<Entry>> inFlight = new ArrayDeque<Future<Entry>>();
+        ZipOutputStream zip = null;
+        BufferedWriter manifestWriter = null;
+        int exported = 0;
+        long bytes = 0;
+
+        try {
+            zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(partial), 64 * 1024));
+            manifestWriter = new BufferedWriter(new FileWriter(manifest));
+            AudioSegmentStore store = AudioSegmentStore.getInstance(context);
+            boolean dataLeft = data != null && data.moveToFirst();
+
+            while (audio.moveToNext()) {
+                final long timestamp = audio.getLong(1);
+                String deviceId = audio.getString(2);
+
+                // Advance the analysis cursor to this clip; both are in (timestamp, device_id) order
+                JSONObject analysis = null;
+                while (dataLeft && compare(data.getLong(1), data.getString(2), timestamp, deviceId) < 0) {
+                    dataLeft = data.moveToNext();
+                }
+                if (dataLeft && compare(data.getLong(1), data.getString(2), timestamp, deviceId) == 0) {
+                    analysis = analysisRow(data);
+                }
+
+                final ByteBuffer pcm = clip(store, audio);
+                if (pcm == null) continue;
+
+                final String name = "audio/yamnet_" + timestamp + "_" + audio.getLong(0) + (flac ? ".flac" : ".wav");
+                final String manifestLine = manifestLine(name, audio, analysis);
+
+                if (inFlight.size() >= threads * IN_FLIGHT_PER_CORE) {
+                    bytes += writeEntry(zip, manifestWriter, await(inFlight.poll()));
+                    exported++;
+                }
+                inFlight.add(workers.submit(new Callable<Entry>() {
+                    @Override
+                    public Entry call() throws Exception {
+                        return encode(name, pcm, manifestLine);
+                    }
+                }));
+            }
+
+            while (!inFlight.isEmpty()) {
+                bytes += writeEntry(zip, manifestWriter, await(inFlight.poll()));
+                exported++;
+            }
+
+            manifestWriter.close();
+            manifestWriter = null;
+            copyManifest(zip, manifest);
+            zip.close();
+            zip = null;
+
+            if (archive.exists() && !archive.delete() || !partial.renameTo(archive)) {
+                throw new IOException("Could not move the archive to " + archive.getAbsolutePath());
+            }
+        } finally {
+            for (Future<Entry> pending : inFlight) {
+                pending.cancel(true);
+            }
+            workers.shutdownNow();
+            audio.close();
+            if (data != null) data.close();
+            if (manifestWriter != null) {
+                try {
+                    manifestWriter.close();
+                } catch (IOException ignored) {}
+            }
+            if (zip != null) {
+                try {
+                    zip.close();
+                } catch (IOException ignored) {}
+            }
+            manifest.delete();
+            partial.delete();
+        }
+
+        Log.d(TAG, "Exported " + exported + " clips (" + bytes + " bytes of audio) to " + archive.getAbsolutePath()
+                + " in " + (System.currentTimeMillis() - start) + " ms on " + threads + " threads");
+        return exported;
+    }
+
+    private static int compare(long timestamp, String deviceId, long otherTimestamp, String otherDeviceId) {
+        if (timestamp != otherTimestamp) return timestamp < otherTimestamp ? -1 : 1;
+        if (deviceId == null || otherDeviceId == null) return deviceId == null ? (otherDeviceId == null ? 0 : -1) : 1;
+        return deviceId.compareTo(otherDeviceId);
+    }
+
+    /**
+     * The clip of the current audio row: a mapping of its segment region, or the blob of an older row
+     */
+    private static ByteBuffer clip(AudioSegmentStore store, Cursor audio) {
+        try {
+            if (!audio.isNull(5)) {
+                long segment = audio.getLong(5);
+                if (!store.segmentFile(segment).exists()) return null;
+                return store.map(segment, audio.getLong(6), audio.getInt(7));
+            }
+            byte[] blob = audio.isNull(4) ? null : audio.getBlob(4);
+            return blob != null ? ByteBuffer.wrap(blob).order(ByteOrder.LITTLE_ENDIAN) : null;
+        } catch (IOException e) {
+            Log.w(TAG, "Skipping clip " + audio.getLong(0) + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static JSONObject analysisRow(Cursor data) {
+        JSONObject row = new JSONObject();
+        try {
+            row.put("id", data.getLong(0));
+            String results = data.getString(3);
+            if (results != null) {
+                try {
+                    row.put("results", new JSONObject(results));
+                } catch (JSONException e) {
+                    row.put("results", results);
+                }
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Error reading analysis row: " + e.getMessage());
+        }
+        return row;
+    }
+
+    private static String manifestLine(String name, Cursor audio, JSONObject analysis) {
+        JSONObject line = new JSONObject();
+        try {
+            line.put("file", name);
+            line.put("audio_id", audio.getLong(0));
+            line.put("timestamp", audio.getLong(1));
+            line.put("device_id", audio.getString(2));
+            line.put("duration", audio.getInt(3));
+            line.put("analysis", analysis != null ? analysis : JSONObject.NULL);
+        } catch (JSONException e) {
+            Log.w(TAG, "Error building manifest line for " + name + ": " + e.getMessage());
+        }
+        return line.toString();
+    }
+
+    /**
+     * Worker: encode one clip and checksum it for a stored entry
+     */
+    private Entry encode(String name, ByteBuffer pcm, String manifestLine) throws IOException {
+        Entry entry = new Entry();
+        entry.name = name;
+        entry.manifestLine = manifestLine;
+        if (flac) {
+            FlacEncoder encoder = encoders.get();
+            if (encoder == null) {
+                encoder = new FlacEncoder(SAMPLE_RATE, flacLevel);
+                encoders.set(encoder);
+            } else {
+                encoder.reset();
+            }
+            byte[] chunk = scratch.get();
+            while (pcm.hasRemaining()) {
+                int length = Math.min(chunk.length, pcm.remaining());
+                pcm.get(chunk, 0, length);
+                encoder.write(chunk, 0, length);
+            }
+            encoder.close();
+            entry.body = ByteBuffer.wrap(encoder.toByteArray());
+            entry.crc = encoder.crc32();
+        } else {
+            ByteBuffer header = wavHeaders.get();
+            if (header == null) {
+                header = ByteBuffer.allocate(WavWriter.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                wavHeaders.set(header);
+            }
+            CRC32 crc = new CRC32();
+            WavWriter.fillHeader(header, SAMPLE_RATE, pcm.remaining());
+            entry.header = new byte[WavWriter.HEADER_SIZE];
+            header.get(entry.header);
+            crc.update(entry.header, 0, entry.header.length);
+            ByteBuffer body = pcm.duplicate();
+            byte[] chunk = scratch.get();
+            while (body.hasRemaining()) {
+                int length = Math.min(chunk.length, body.remaining());
+                body.get(chunk, 0, length);
+                crc.update(chunk, 0, length);
+            }
+            entry.body = pcm;
+            entry.crc = crc.getValue();
+        }
+        return entry;
+    }
+
+    private static Entry await(Future<Entry> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException("Encoding failed: " + cause);
+        }
+    }
+
+    /**
+     * Write an entry uncompressed (audio does not deflate well) and its manifest line
+     *
+     * @return bytes of audio written
+     */
+    private long writeEntry(ZipOutputStream zip, BufferedWriter manifest, Entry entry) throws IOException {
+        int headerLength = entry.header != null ? entry.header.length : 0;
+        long size = headerLength + entry.body.remaining();
+
+        ZipEntry zipEntry = new ZipEntry(entry.name);
+        zipEntry.setMethod(ZipEntry.STORED);
+        zipEntry.setSize(size);
+        zipEntry.setCompressedSize(size);
+        zipEntry.setCrc(entry.crc);
+        zip.putNextEntry(zipEntry);
+
+        if (entry.header != null) {
+            zip.write(entry.header);
+        }
+        if (entry.body.hasArray()) {
+            zip.write(entry.body.array(), entry.body.arrayOffset() + entry.body.position(), entry.body.remaining());
+        } else {
+            byte[] chunk = scratch.get();
+            while (entry.body.hasRemaining()) {
+                int length = Math.min(chunk.length, entry.body.remaining());
+                entry.body.get(chunk, 0, length);
+                zip.write(chunk, 0, length);
+            }
+        }
+        zip.closeEntry();
+
+        manifest.write(entry.manifestLine);
+        manifest.newLine();
+        return size;
+    }
+
+    private void copyManifest(ZipOutputStream zip, File manifest) throws IOException {
+        zip.putNextEntry(new ZipEntry(MANIFEST));
+        InputStream input = new FileInputStream(manifest);
+        try {
+            byte[] buffer = scratch.get();
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                zip.write(buffer, 0, read);
+            }
+        } finally {
+            input.close();
+        }
+        zip.closeEntry();
+    }
+}
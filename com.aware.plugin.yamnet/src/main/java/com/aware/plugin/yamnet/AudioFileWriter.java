@@ -0,0 +1,22 @@
+package com.aware.plugin.yamnet;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A saved recording that is written while it is being captured (WavWriter, FlacStreamWriter)
+ */
+public interface AudioFileWriter {
+
+    /**
+     * Add samples to the file; the caller may reuse pcm as soon as this returns
+     */
+    void write(short[] pcm, int offset, int length) throws IOException;
+
+    /**
+     * Finish the file, including anything that can only be written once its length is known
+     */
+    void close() throws IOException;
+
+    File getFile();
+}
@@ -1,19 +1,33 @@
 package com.aware.plugin.yamnet;
 
 import android.app.IntentService;
+import android.content.ContentValues;
 import android.content.Intent;
 import android.database.Cursor;
+import android.os.Bundle;
 import android.util.Log;
 
 import com.aware.Aware;
 
+import java.io.IOException;
+
 /**
- * Service to clean up old audio data from SQLite database
- * Runs every 24 hours to remove audio records older than 24 hours
+ * Service that enforces raw audio retention
+ * Runs every hour, whether or not new audio is being saved: removes audio older than
+ * AUDIO_RETENTION_HOURS_PLUGIN_YAMNET, moves audio stored as SQLite blobs by earlier versions
+ * into the AudioSegmentStore and their rows into the day shards, trims the oldest audio beyond
+ * AUDIO_MAX_MB_PLUGIN_YAMNET and gives the freed database pages back to the file system.
+ * Saved recordings are held to their own limits by AudioStorageQuota.
+ * Whole expired days are dropped as shard files; the remaining rows are deleted in batches of
+ * DELETE_BATCH, one short transaction each, so the capture path is never held up for long.
  */
 public class AudioMigrationService extends IntentService {
     private static final String TAG = "AWARE::YAMNet::Migration";
-    private static final long RETENTION_PERIOD_MS = 24 * 60 * 60 * 1000; // 24 hours
+
+    private static final int DELETE_BATCH = 500;
+    private static final int SEGMENTS_PER_BATCH = 64;
+    private static final long DEFAULT_RETENTION_HOURS = 24;
+    private static final long DEFAULT_MAX_MB = 500;
 
     public AudioMigrationService() {
         super("AudioMigrationService");
@@ -21,60 +35,195 @@ public class AudioMigrationService extends IntentService {
 
     @Override
     protected void onHandleIntent(Intent intent) {
-        Log.d(TAG, "Starting audio migration service...");
+        Log.d(TAG, "Starting audio retention...");
+        long start = System.currentTimeMillis();
 
         try {
-            // Only proceed if audio file saving is enabled
-            if (!Aware.getSetting(getApplicationContext(), Settings.SAVE_AUDIO_FILES).equals("true")) {
-                Log.d(TAG, "Audio file saving is disabled, skipping migration");
-                return;
+            long retentionHours = Math.max(1, setting(Settings.AUDIO_RETENTION_HOURS_PLUGIN_YAMNET, DEFAULT_RETENTION_HOURS));
+            long maxMb = Math.max(0, setting(Settings.AUDIO_MAX_MB_PLUGIN_YAMNET, DEFAULT_MAX_MB));
+            AudioSegmentStore store = AudioSegmentStore.getInstance(getApplicationContext());
+
+            // By age: whole segment files and day shards, then the rows left of the cutoff's day
+            long cutoffTime = System.currentTimeMillis() - retentionHours * 60 * 60 * 1000;
+            AudioSegmentStore.Deletion expired = store.deleteSegmentsBefore(cutoffTime);
+            long droppedBytes = dropDaysBefore(cutoffTime);
+            int deletedRows = deleteSegmentRows(expired.segments) + deleteBlobRowsBefore(cutoffTime);
+
+            // Blobs left over from earlier versions count towards the size limit once they are in segments
+            moveBlobsToSegments();
+            moveRowsToShards();
+
+            // By size: oldest segments first
+            long trimmedBytes = 0;
+            int trimmedSegments = 0;
+            if (maxMb > 0) {
+                AudioSegmentStore.Deletion trimmed = store.deleteOldestSegments(maxMb * 1024 * 1024);
+                deletedRows += deleteSegmentRows(trimmed.segments);
+                trimmedBytes = trimmed.bytes;
+                trimmedSegments = trimmed.segments.length;
             }
 
-            cleanupOldAudioData();
-            
+            long reclaimed = reclaimDatabaseSpace();
+
+            // Saved recordings also age out while none are being written
+            AudioStorageQuota.getInstance(getApplicationContext()).enforce();
+
+            Log.d(TAG, "Retention deleted " + (expired.segments.length + trimmedSegments) + " segments ("
+                    + (expired.bytes + trimmedBytes) + " bytes), " + droppedBytes + " bytes of day shards and "
+                    + deletedRows + " audio rows, reclaimed "
+                    + reclaimed + " database bytes in " + (System.currentTimeMillis() - start) + " ms");
         } catch (Exception e) {
-            Log.e(TAG, "Error during audio migration: " + e.getMessage());
+            Log.e(TAG, "Error during audio retention: " + e.getMessage());
             e.printStackTrace();
         }
-        
-        Log.d(TAG, "Audio migration service completed");
+    }
+
+    private long setting(String key, long defaultValue) {
+        try {
+            String value = Aware.getSetting(getApplicationContext(), key);
+            if (!value.isEmpty()) return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Invalid " + key + " setting, using default: " + e.getMessage());
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Delete the rows of deleted segments, SEGMENTS_PER_BATCH segments and DELETE_BATCH rows at a time
+     */
+    private int deleteSegmentRows(long[] segments) {
+        int deleted = 0;
+        for (int from = 0; from < segments.length; from += SEGMENTS_PER_BATCH) {
+            int to = Math.min(segments.length, from + SEGMENTS_PER_BATCH);
+            StringBuilder in = new StringBuilder();
+            for (int i = from; i < to; i++) {
+                if (i > from) in.append(',');
+                in.append(segments[i]);
+            }
+            deleted += deleteInBatches(Provider.YAMNet_Audio.SEGMENT + " IN (" + in + ")", null);
+        }
+        return deleted;
+    }
+
+    /**
+     * Delete rows written before the segment store that are older than the cutoff
+     */
+    private int deleteBlobRowsBefore(long cutoffTime) {
+        return deleteInBatches(Provider.YAMNet_Audio.SEGMENT + " IS NULL AND " + Provider.YAMNet_Audio.TIMESTAMP + " < ?",
+                new String[]{String.valueOf(cutoffTime)});
     }
 
     /**
-     * Remove audio records older than 24 hours from SQLite database
+     * Delete matching audio rows, at most DELETE_BATCH per day shard in each provider call (and
+     * transaction). The provider runs the batch in every shard, so a call can delete more or fewer
+     * than DELETE_BATCH rows; only a call that deletes nothing means no rows are left.
      */
-    private void cleanupOldAudioData() {
-        long cutoffTime = System.currentTimeMillis() - RETENTION_PERIOD_MS;
-        
-        // Query old records first to log how many will be deleted
-        String selection = Provider.YAMNet_Audio.TIMESTAMP + " < ?";
-        String[] selectionArgs = {String.valueOf(cutoffTime)};
-        
-        Cursor cursor = getContentResolver().query(
+    private int deleteInBatches(String selection, String[] selectionArgs) {
+        String batch = Provider.YAMNet_Audio._ID + " IN (SELECT " + Provider.YAMNet_Audio._ID
+                + " FROM " + Provider.DATABASE_TABLES[1] + " WHERE " + selection + " LIMIT " + DELETE_BATCH + ")";
+
+        int total = 0;
+        int deleted;
+        do {
+            deleted = getContentResolver().delete(Provider.YAMNet_Audio.CONTENT_URI, batch, selectionArgs);
+            total += deleted;
+        } while (deleted > 0);
+        return total;
+    }
+
+    /**
+     * Delete the day shards of days before the cutoff's day
+     *
+     * @return bytes deleted
+     */
+    private long dropDaysBefore(long cutoffTime) {
+        Bundle result = getContentResolver().call(Provider.YAMNet_Audio.CONTENT_URI, Provider.METHOD_DROP_AUDIO_DAYS, String.valueOf(cutoffTime), null);
+        return result == null ? 0 : result.getLong(Provider.DROPPED_BYTES);
+    }
+
+    /**
+     * Move rows written before sharding from plugin_yamnet.db into the day shards, a batch per call
+     */
+    private void moveRowsToShards() {
+        int total = 0;
+        int moved;
+        do {
+            Bundle result = getContentResolver().call(Provider.YAMNet_Audio.CONTENT_URI, Provider.METHOD_SHARD_LEGACY_AUDIO, null, null);
+            moved = result == null ? 0 : result.getInt(Provider.MOVED_ROWS);
+            total += moved;
+        } while (moved > 0);
+
+        if (total > 0) {
+            Log.d(TAG, "Moved " + total + " audio records into day shards");
+        }
+    }
+
+    /**
+     * Run incremental vacuum in the provider
+     *
+     * @return bytes the database file shrank by
+     */
+    private long reclaimDatabaseSpace() {
+        Bundle result = getContentResolver().call(Provider.YAMNet_Audio.CONTENT_URI, Provider.METHOD_RECLAIM_SPACE, null, null);
+        return result == null ? 0 : result.getLong(Provider.RECLAIMED_BYTES);
+    }
+
+    /**
+     * Append blob audio rows to the segment store one at a time (a whole blob cursor could
+     * overflow the CursorWindow) and replace their blob by its segment location
+     */
+    private void moveBlobsToSegments() {
+        AudioSegmentStore store = AudioSegmentStore.getInstance(getApplicationContext());
+        String legacy = Provider.YAMNet_Audio.SEGMENT + " IS NULL AND " + Provider.YAMNet_Audio.RAW_AUDIO + " IS NOT NULL";
+
+        Cursor ids = getContentResolver().query(
             Provider.YAMNet_Audio.CONTENT_URI,
             new String[]{Provider.YAMNet_Audio._ID},
-            selection,
-            selectionArgs,
-            null
+            legacy,
+            null,
+            Provider.YAMNet_Audio.TIMESTAMP + " ASC"
         );
-        
-        int recordCount = 0;
-        if (cursor != null) {
-            recordCount = cursor.getCount();
-            cursor.close();
+        if (ids == null) return;
+
+        int moved = 0;
+        try {
+            while (ids.moveToNext()) {
+                String id = String.valueOf(ids.getLong(0));
+                Cursor row = getContentResolver().query(
+                    Provider.YAMNet_Audio.CONTENT_URI,
+                    new String[]{Provider.YAMNet_Audio.RAW_AUDIO},
+                    Provider.YAMNet_Audio._ID + " = ?",
+                    new String[]{id},
+                    null
+                );
+                if (row == null) continue;
+
+                byte[] audio = row.moveToFirst() ? row.getBlob(0) : null;
+                row.close();
+                if (audio == null) continue;
+
+                AudioSegmentStore.Location location = store.append(audio, 0, audio.length);
+                try {
+                    ContentValues values = new ContentValues();
+                    values.putNull(Provider.YAMNet_Audio.RAW_AUDIO);
+                    values.put(Provider.YAMNet_Audio.SEGMENT, location.segment);
+                    values.put(Provider.YAMNet_Audio.SEGMENT_OFFSET, location.offset);
+                    values.put(Provider.YAMNet_Audio.SEGMENT_LENGTH, location.length);
+                    getContentResolver().update(Provider.YAMNet_Audio.CONTENT_URI, values,
+                            Provider.YAMNet_Audio._ID + " = ?", new String[]{id});
+                } finally {
+                    store.commit(location);
+                }
+                moved++;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error moving audio to segments: " + e.getMessage());
+        } finally {
+            ids.close();
         }
-        
-        if (recordCount > 0) {
-            // Delete old audio records from database
-            int deletedCount = getContentResolver().delete(
-                Provider.YAMNet_Audio.CONTENT_URI,
-                selection,
-                selectionArgs
-            );
-            
-            Log.d(TAG, "Cleaned up " + deletedCount + " old audio records from database");
-        } else {
-            Log.d(TAG, "No old audio records to clean up");
+
+        if (moved > 0) {
+            Log.d(TAG, "Moved " + moved + " audio records from the database to segment files");
         }
     }
-}
\ No newline at end of file
+}
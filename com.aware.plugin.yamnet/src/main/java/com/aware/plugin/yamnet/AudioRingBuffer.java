@@ -0,0 +1,84 @@
+package com.aware.plugin.yamnet;
+
+/**
+ * Lock-free single-producer ring buffer of 16-bit PCM samples
+ * The capture thread appends and never blocks; when it laps the reader the oldest samples are
+ * overwritten. Readers address samples by absolute position (samples written since start), so
+ * overlapping windows can be read without consuming anything, and an overrun is detected by
+ * checking the write position again after copying. Samples within one write chunk of being
+ * overwritten are treated as lost, since the writer copies before it publishes its position.
+ */
+public class AudioRingBuffer {
+    private final short[] buffer;
+    private final int mask;
+    private final int maxWriteLength;
+
+    // Absolute number of samples written; published after the samples are copied in
+    private volatile long writePosition = 0;
+
+    /**
+     * @param minCapacity    minimum number of readable samples
+     * @param maxWriteLength largest chunk passed to write()
+     */
+    public AudioRingBuffer(int minCapacity, int maxWriteLength) {
+        int required = Math.max(minCapacity + maxWriteLength, 2);
+        int capacity = Integer.highestOneBit(required - 1) << 1;
+        buffer = new short[capacity];
+        mask = capacity - 1;
+        this.maxWriteLength = maxWriteLength;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Total number of samples written so far
+     */
+    public long getWritePosition() {
+        return writePosition;
+    }
+
+    /**
+     * Oldest absolute position that is still safely readable
+     */
+    public long getOldestPosition() {
+        return Math.max(0, writePosition + maxWriteLength - buffer.length);
+    }
+
+    /**
+     * Append samples. Only the capture thread may call this.
+     */
+    public void write(short[] src, int offset, int length) {
+        if (length > maxWriteLength) {
+            throw new IllegalArgumentException("Write of " + length + " samples exceeds " + maxWriteLength);
+        }
+        long position = writePosition;
+        int start = (int) (position & mask);
+        int first = Math.min(length, buffer.length - start);
+        System.arraycopy(src, offset, buffer, start, first);
+        if (first < length) {
+            System.arraycopy(src, offset + first, buffer, 0, length - first);
+        }
+        writePosition = position + length;
+    }
+
+    /**
+     * Copy length samples starting at absolute position into dst.
+     *
+     * @return false if the samples are not written yet or were overwritten while copying
+     */
+    public boolean read(long position, short[] dst, int offset, int length) {
+        if (position + length > writePosition || position < getOldestPosition()) return false;
+
+        int start = (int) (position & mask);
+        int first = Math.min(length, buffer.length - start);
+        System.arraycopy(buffer, start, dst, offset, first);
+        if (first < length) {
+            System.arraycopy(buffer, 0, dst, offset + first, length - first);
+        }
+
+        // The writer may have lapped us during the copy
+        return position >= getOldestPosition();
+    }
+}
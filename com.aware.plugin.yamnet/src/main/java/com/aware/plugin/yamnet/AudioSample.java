@@ -0,0 +1,78 @@
+package com.aware.plugin.yamnet;
+
+import android.content.ContentValues;
+
+/**
+ * One captured clip travelling through the AnalysisPipeline
+ * Instances are pooled by the pipeline and reused, together with their PCM buffers
+ */
+public class AudioSample {
+
+    // Filled in by the capture path
+    public short[] pcm = new short[0];
+    public int length;
+    public long timestamp;
+    public int durationMs;
+    public boolean storeAudio;
+    public boolean saveAudioFile;
+    // Battery and thermal budget the clip was captured under
+    public BudgetController.Budget budget = BudgetController.FULL;
+
+    // Filled in by the preprocess stage: little-endian 16-bit PCM for storage, exactly length * 2 bytes
+    public byte[] pcmBytes = new byte[0];
+
+    // Filled in by the preprocess stage: level, zero crossings per sample, and whether the
+    // SilenceGate skips inference
+    public float rmsDbfs;
+    public float zeroCrossingRate;
+    public boolean silent;
+
+    // Filled in by the infer and persist stages
+    public String analysisResults;
+    // Version of the model that analysed the clip, empty when inference was skipped
+    public String modelVersion = "";
+    public int predictionCount;
+    public int[] predictionIndices = new int[0];
+    public float[] predictionScores = new float[0];
+    public String[] predictionLabels = new String[0];
+    public ContentValues mainData;
+
+    // Full pooled score vector encoded by ScoreCodec; only valid when storeScores
+    public boolean storeScores;
+    public byte[] scoresBlob = new byte[0];
+
+    /**
+     * Make sure the PCM buffer holds at least the given number of samples
+     */
+    void ensureCapacity(int samples) {
+        if (pcm.length < samples) {
+            pcm = new short[samples];
+        }
+    }
+
+    /**
+     * Make sure the prediction arrays hold at least k entries
+     */
+    void ensurePredictionCapacity(int k) {
+        if (predictionIndices.length < k) {
+            predictionIndices = new int[k];
+            predictionScores = new float[k];
+            predictionLabels = new String[k];
+        }
+    }
+
+    void reset() {
+        length = 0;
+        timestamp = 0;
+        durationMs = 0;
+        storeAudio = false;
+        saveAudioFile = false;
+        budget = BudgetController.FULL;
+        silent = false;
+        analysisResults = null;
+        modelVersion = "";
+        predictionCount = 0;
+        mainData = null;
+        storeScores = false;
+    }
+}
@@ -0,0 +1,328 @@
+package com.aware.plugin.yamnet;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Append-only store for raw audio (local only)
+ * Clips are appended to segment files of 16-bit little-endian PCM in the app's private files
+ * directory, and plugin_yamnet_audio rows only hold (segment, offset, length). A segment is
+ * sealed when it reaches SEGMENT_MAX_BYTES or SEGMENT_MAX_AGE_MS, and retention deletes
+ * sealed segments as whole files. Reads map the clip's region of the segment read-only.
+ * A clip is uncommitted from append() until commit() or discard(), i.e. while its row may still
+ * be written; retention never deletes the current segment or one holding uncommitted clips.
+ */
+public class AudioSegmentStore {
+    private static final String TAG = "AWARE::YAMNet::Segments";
+
+    private static final String DIRECTORY = "audio_segments";
+    private static final String EXTENSION = ".pcm";
+    private static final long SEGMENT_MAX_BYTES = 16 * 1024 * 1024; // about 8.7 minutes of audio
+    private static final long SEGMENT_MAX_AGE_MS = 60 * 60 * 1000; // bounds retention granularity
+
+    private static AudioSegmentStore instance;
+
+    private final File directory;
+
+    // Segment currently being appended to; its id is its creation time in milliseconds
+    private long segmentId = -1;
+    private FileChannel segmentChannel;
+    private long segmentSize;
+    // Uncommitted clips per segment id
+    private final HashMap<Long, Integer> uncommitted = new HashMap<>();
+
+    /**
+     * Where a clip was stored
+     */
+    public static final class Location {
+        public final long segment;
+        public final long offset;
+        public final int length;
+
+        Location(long segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Segments removed by a retention pass
+     */
+    public static final class Deletion {
+        public final long[] segments;
+        public final long bytes;
+
+        Deletion(long[] segments, long bytes) {
+            this.segments = segments;
+            this.bytes = bytes;
+        }
+    }
+
+    private AudioSegmentStore(Context context) {
+        directory = new File(context.getApplicationContext().getFilesDir(), DIRECTORY);
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(TAG, "Could not create " + directory.getAbsolutePath());
+        }
+    }
+
+    public static synchronized AudioSegmentStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new AudioSegmentStore(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Append a clip to the current segment, starting a new one when it is full or too old
+     */
+    public synchronized Location append(byte[] pcm, int offset, int length) throws IOException {
+        long now = System.currentTimeMillis();
+        if (segmentChannel == null || segmentSize + length > SEGMENT_MAX_BYTES || now - segmentId >= SEGMENT_MAX_AGE_MS) {
+            openSegment(now);
+        }
+
+        long position = segmentSize;
+        ByteBuffer buffer = ByteBuffer.wrap(pcm, offset, length);
+        while (buffer.hasRemaining()) {
+            segmentChannel.write(buffer);
+        }
+        segmentSize += length;
+        Integer count = uncommitted.get(segmentId);
+        uncommitted.put(segmentId, count == null ? 1 : count + 1);
+        return new Location(segmentId, position, length);
+    }
+
+    /**
+     * Mark a clip from append() as referenced by a written row, so retention may delete its segment
+     */
+    public synchronized void commit(Location location) {
+        Integer count = uncommitted.get(location.segment);
+        if (count == null) return;
+        if (count <= 1) {
+            uncommitted.remove(location.segment);
+        } else {
+            uncommitted.put(location.segment, count - 1);
+        }
+    }
+
+    /**
+     * Take back a clip whose row was never written. Only the last clip of the current segment can
+     * be taken back, so discard clips newest first.
+     *
+     * @return false if other clips were appended after it or its segment was sealed; its bytes then stay unreferenced
+     */
+    public synchronized boolean discard(Location location) throws IOException {
+        commit(location);
+        if (segmentChannel == null || location.segment != segmentId || location.offset + location.length != segmentSize) {
+            return false;
+        }
+        segmentChannel.truncate(location.offset);
+        segmentSize = location.offset;
+        return true;
+    }
+
+    /**
+     * Map a stored clip read-only; the returned buffer is little-endian and independent of the segment file handle
+     */
+    public ByteBuffer map(long segment, long offset, int length) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(segmentFile(segment), "r");
+        try {
+            return file.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Copy a stored clip into a new array
+     */
+    public byte[] read(long segment, long offset, int length) throws IOException {
+        byte[] pcm = new byte[length];
+        map(segment, offset, length).get(pcm);
+        return pcm;
+    }
+
+    /**
+     * Read the clip of a plugin_yamnet_audio row, from its segment or, for rows written before
+     * the segment store, from raw_audio. The cursor must include those columns.
+     *
+     * @return the PCM bytes, or null if the row has no audio or its segment was deleted
+     */
+    public byte[] read(Cursor cursor) throws IOException {
+        int segmentColumn = cursor.getColumnIndex(Provider.YAMNet_Audio.SEGMENT);
+        if (segmentColumn >= 0 && !cursor.isNull(segmentColumn)) {
+            long segment = cursor.getLong(segmentColumn);
+            if (!segmentFile(segment).exists()) return null;
+            return read(segment,
+                    cursor.getLong(cursor.getColumnIndexOrThrow(Provider.YAMNet_Audio.SEGMENT_OFFSET)),
+                    cursor.getInt(cursor.getColumnIndexOrThrow(Provider.YAMNet_Audio.SEGMENT_LENGTH)));
+        }
+
+        int rawColumn = cursor.getColumnIndex(Provider.YAMNet_Audio.RAW_AUDIO);
+        return rawColumn >= 0 && !cursor.isNull(rawColumn) ? cursor.getBlob(rawColumn) : null;
+    }
+
+    /**
+     * Delete every segment last written before the cutoff, except the current one and those with uncommitted clips
+     *
+     * @return the deleted segments, so their rows can be removed
+     */
+    public synchronized Deletion deleteSegmentsBefore(long cutoff) {
+        File[] files = segmentFiles();
+        long[] deleted = new long[files.length];
+        int count = 0;
+        long bytes = 0;
+        for (File file : files) {
+            if (file.lastModified() >= cutoff || inUse(file)) continue;
+
+            long size = file.length();
+            if (file.delete()) {
+                deleted[count++] = segmentId(file);
+                bytes += size;
+            }
+        }
+        return deletion(deleted, count, bytes, "last written before " + cutoff);
+    }
+
+    /**
+     * Delete the oldest segments until the store holds at most maxBytes, or only the current
+     * segment and those with uncommitted clips are left
+     *
+     * @return the deleted segments, so their rows can be removed
+     */
+    public synchronized Deletion deleteOldestSegments(long maxBytes) {
+        File[] files = segmentFiles();
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+
+        long[] deleted = new long[files.length];
+        int count = 0;
+        long bytes = 0;
+        for (int i = 0; i < files.length && total > maxBytes; i++) {
+            if (inUse(files[i])) continue;
+            long size = files[i].length();
+            if (files[i].delete()) {
+                deleted[count++] = segmentId(files[i]);
+                bytes += size;
+                total -= size;
+            }
+        }
+        return deletion(deleted, count, bytes, "to stay under " + maxBytes + " bytes");
+    }
+
+    /**
+     * Total bytes held in segment files
+     */
+    public long getSize() {
+        long size = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Seal the current segment, e.g. when the plugin stops
+     */
+    public synchronized void close() {
+        closeSegment();
+    }
+
+    File segmentFile(long segment) {
+        return new File(directory, segment + EXTENSION);
+    }
+
+    /**
+     * Segment files, oldest first
+     */
+    private File[] segmentFiles() {
+        File[] files = directory.listFiles();
+        if (files == null) return new File[0];
+
+        int count = 0;
+        for (File file : files) {
+            if (segmentId(file) >= 0) files[count++] = file;
+        }
+        File[] segments = new File[count];
+        System.arraycopy(files, 0, segments, 0, count);
+        Arrays.sort(segments, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long idA = segmentId(a);
+                long idB = segmentId(b);
+                return idA < idB ? -1 : (idA == idB ? 0 : 1);
+            }
+        });
+        return segments;
+    }
+
+    /**
+     * The segment being appended to, or one whose clips may still get rows
+     */
+    private boolean inUse(File file) {
+        long id = segmentId(file);
+        return id == segmentId || uncommitted.containsKey(id);
+    }
+
+    private static Deletion deletion(long[] deleted, int count, long bytes, String reason) {
+        if (count > 0) {
+            Log.d(TAG, "Deleted " + count + " segments (" + bytes + " bytes) " + reason);
+        }
+        long[] segments = new long[count];
+        System.arraycopy(deleted, 0, segments, 0, count);
+        return new Deletion(segments, bytes);
+    }
+
+    private static long segmentId(File file) {
+        String name = file.getName();
+        if (!name.endsWith(EXTENSION)) return -1;
+        try {
+            return Long.parseLong(name.substring(0, name.length() - EXTENSION.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void openSegment(long now) throws IOException {
+        closeSegment();
+
+        // Ids must be unique even if two segments are opened in the same millisecond
+        long id = now;
+        while (segmentFile(id).exists()) id++;
+
+        segmentChannel = new FileOutputStream(segmentFile(id), true).getChannel();
+        segmentId = id;
+        segmentSize = 0;
+    }
+
+    private void closeSegment() {
+        if (segmentChannel == null) return;
+        try {
+            segmentChannel.force(false);
+            segmentChannel.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Error closing segment " + segmentId + ": " + e.getMessage());
+        }
+        segmentChannel = null;
+        segmentId = -1;
+        segmentSize = 0;
+    }
+}
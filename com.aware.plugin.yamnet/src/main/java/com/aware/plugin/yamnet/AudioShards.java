@@ -0,0 +1,273 @@
+package com.aware.plugin.yamnet;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.io.File;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * Day-partitioned storage for plugin_yamnet_audio
+ * Each local day has its own SQLite file, named like the saved audio directories
+ * (audio_shards/yyyy-MM-dd.db next to plugin_yamnet.db), with the usual table and indexes.
+ * Row ids are (epoch day << 32) + row number, so an id names its shard and never collides with
+ * the ids below 2^32 of rows that earlier versions wrote to plugin_yamnet.db. Expiring a day
+ * closes and deletes its file instead of deleting its rows.
+ * Every shard handed out is referenced until release(): a provider cursor, batch or export still
+ * using a day that expires keeps it open, and the file is only closed and deleted on the last release.
+ */
+class AudioShards {
+    private static final String TAG = "AWARE::YAMNet::Shards";
+
+    static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    private static final String DIRECTORY = "audio_shards";
+    private static final String EXTENSION = ".db";
+    private static final String TABLE = Provider.DATABASE_TABLES[1];
+
+    /**
+     * One day's file, its connection once opened, and how many callers hold it
+     */
+    private static final class Shard {
+        final long day;
+        SQLiteDatabase db;
+        int users;
+        // Expired while in use; closed and deleted when the last user releases it
+        boolean dropped;
+
+        Shard(long day) {
+            this.day = day;
+        }
+    }
+
+    private final File directory;
+    // Every shard on disk, by epoch day
+    private final TreeMap<Long, Shard> shards = new TreeMap<>();
+    // Open shards by connection, including dropped shards that are still in use
+    private final IdentityHashMap<SQLiteDatabase, Shard> open = new IdentityHashMap<>();
+    // Dropped shards still in use, by epoch day
+    private final TreeMap<Long, Shard> dropped = new TreeMap<>();
+
+    AudioShards(Context context) {
+        this.directory = new File(context.getDatabasePath(Provider.DATABASE_NAME).getParentFile(), DIRECTORY);
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(TAG, "Could not create " + directory);
+        }
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                long day = dayOfFile(file);
+                if (day > 0) shards.put(day, new Shard(day));
+            }
+        }
+    }
+
+    /**
+     * Local epoch day of a timestamp, the same day AudioAnalyser files its recordings under.
+     * Timestamps before 1970-01-02 share the first shard, so shard ids stay above 2^32.
+     */
+    static long dayOf(long timestamp) {
+        long local = timestamp + TimeZone.getDefault().getOffset(timestamp);
+        long day = local / DAY_MS;
+        if (local % DAY_MS < 0) day--;
+        return Math.max(1, day);
+    }
+
+    /**
+     * Day of the shard holding a row id, or 0 for rows in plugin_yamnet.db
+     */
+    static long dayOfId(long id) {
+        return id >> 32;
+    }
+
+    /**
+     * The shard rows of this day are written to, created if needed. The caller holds it until release().
+     */
+    synchronized SQLiteDatabase forDay(long day) {
+        Shard shard = shards.get(day);
+        if (shard == null) {
+            // A day written to again while its dropped file is still in use keeps that file
+            shard = dropped.remove(day);
+            if (shard != null) {
+                shard.dropped = false;
+            } else {
+                shard = new Shard(day);
+            }
+            shards.put(day, shard);
+        }
+        if (shard.db == null) {
+            shard.db = open(day);
+            open.put(shard.db, shard);
+        }
+        shard.users++;
+        return shard.db;
+    }
+
+    /**
+     * The shard of this day if it exists, without creating it. The caller holds it until release().
+     */
+    synchronized SQLiteDatabase get(long day) {
+        return shards.containsKey(day) ? forDay(day) : null;
+    }
+
+    /**
+     * Take another reference on a shard the caller already holds, e.g. for a batch that keeps it
+     * until it ends. Databases other than shards are ignored.
+     */
+    synchronized void retain(SQLiteDatabase db) {
+        Shard shard = open.get(db);
+        if (shard != null) shard.users++;
+    }
+
+    /**
+     * Give back a shard from forDay, get, between or all; a dropped shard is closed and deleted
+     * with its last release. Databases other than shards are ignored.
+     */
+    synchronized void release(SQLiteDatabase db) {
+        Shard shard = open.get(db);
+        if (shard == null) return;
+        shard.users--;
+        if (shard.dropped && shard.users <= 0) {
+            dropped.remove(shard.day);
+            long size = delete(shard);
+            if (size >= 0) Log.d(TAG, "Dropped day shard " + shardFile(shard.day).getName() + " (" + size + " bytes) after its last use");
+        }
+    }
+
+    synchronized void release(Collection<SQLiteDatabase> dbs) {
+        for (SQLiteDatabase db : dbs) {
+            release(db);
+        }
+    }
+
+    /**
+     * Existing shards from fromDay to toDay inclusive, oldest first. The caller holds them until release().
+     */
+    synchronized List<SQLiteDatabase> between(long fromDay, long toDay) {
+        List<SQLiteDatabase> range = new ArrayList<>();
+        if (fromDay > toDay) return range;
+        for (Long day : new ArrayList<>(shards.subMap(fromDay, true, toDay, true).keySet())) {
+            range.add(forDay(day));
+        }
+        return range;
+    }
+
+    synchronized List<SQLiteDatabase> all() {
+        return between(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Close and delete every shard of a day before the cutoff's day. Shards still in use are
+     * no longer handed out and are deleted by their last release().
+     *
+     * @return bytes deleted now
+     */
+    synchronized long dropBefore(long cutoff) {
+        long cutoffDay = dayOf(cutoff);
+        long bytes = 0;
+        int deleted = 0;
+        int deferred = 0;
+        for (Long day : new ArrayList<>(shards.headMap(cutoffDay, false).keySet())) {
+            Shard shard = shards.remove(day);
+            if (shard.users > 0) {
+                shard.dropped = true;
+                dropped.put(day, shard);
+                deferred++;
+                continue;
+            }
+            long size = delete(shard);
+            if (size >= 0) {
+                bytes += size;
+                deleted++;
+            }
+        }
+        if (deleted > 0 || deferred > 0) {
+            Log.d(TAG, "Dropped " + deleted + " day shards (" + bytes + " bytes) before " + cutoff
+                    + (deferred > 0 ? ", " + deferred + " more once no longer in use" : ""));
+        }
+        return bytes;
+    }
+
+    /**
+     * Close a shard nobody holds and delete its file
+     *
+     * @return bytes deleted, or -1 if the file could not be deleted
+     */
+    private long delete(Shard shard) {
+        if (shard.db != null) {
+            open.remove(shard.db);
+            shard.db.close();
+            shard.db = null;
+        }
+        File file = shardFile(shard.day);
+        long size = sizeOf(file);
+        if (SQLiteDatabase.deleteDatabase(file)) return size;
+        Log.w(TAG, "Could not delete " + file.getName());
+        return -1;
+    }
+
+    /**
+     * Bytes held by the shard files, including their write-ahead logs
+     */
+    synchronized long getSize() {
+        long size = 0;
+        for (Long day : shards.keySet()) {
+            size += sizeOf(shardFile(day));
+        }
+        return size;
+    }
+
+    private SQLiteDatabase open(long day) {
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(shardFile(day), null);
+        // Only takes effect before the first table is created; lets partial deletes be vacuumed incrementally
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+        if (!db.enableWriteAheadLogging()) {
+            Log.w(TAG, "Write-ahead logging unavailable for " + shardFile(day).getName());
+        }
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE + " (" + Provider.TABLES_FIELDS[1] + ")");
+        // Start the day's autoincrement ids at day << 32
+        db.execSQL("INSERT INTO sqlite_sequence (name, seq) SELECT ?, ? WHERE NOT EXISTS (SELECT 1 FROM sqlite_sequence WHERE name = ?)",
+                new Object[]{TABLE, day << 32, TABLE});
+        Provider.createIndexes(db, TABLE);
+        return db;
+    }
+
+    private File shardFile(long day) {
+        return new File(directory, dayFormat().format(new Date(day * DAY_MS)) + EXTENSION);
+    }
+
+    private static long dayOfFile(File file) {
+        String name = file.getName();
+        if (!name.endsWith(EXTENSION)) return -1;
+        try {
+            return dayFormat().parse(name.substring(0, name.length() - EXTENSION.length())).getTime() / DAY_MS;
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * yyyy-MM-dd of an epoch day; days are already local, so the format itself is UTC
+     */
+    private static SimpleDateFormat dayFormat() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        format.setLenient(false);
+        return format;
+    }
+
+    private static long sizeOf(File file) {
+        return file.length() + new File(file.getPath() + "-wal").length() + new File(file.getPath() + "-shm").length();
+    }
+}
@@ -0,0 +1,179 @@
+package com.aware.plugin.yamnet;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.aware.Aware;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Byte budget and age limit for saved recordings (audio/yyyy-MM-dd/ in the app's external files)
+ * The size of every day directory is kept in memory: the tree is walked once, on first use, and
+ * every saved file is added as it is closed, so enforcing the quota never lists the file system.
+ * Whole day directories are evicted, oldest first; the directory of the current day is kept
+ * even when it alone is over the budget, since recordings are still being written to it.
+ */
+public class AudioStorageQuota {
+    private static final String TAG = "AWARE::YAMNet::Quota";
+
+    private static final long DEFAULT_MAX_MB = 1024;
+    private static final long DEFAULT_MAX_DAYS = 30;
+
+    private static AudioStorageQuota instance;
+
+    private final Context context;
+    private final File root;
+    // Bytes per day directory; yyyy-MM-dd keys sort oldest first
+    private TreeMap<String, Long> days;
+    private long total;
+
+    private AudioStorageQuota(Context context) {
+        this.context = context.getApplicationContext();
+        File external = this.context.getExternalFilesDir(null);
+        this.root = external != null ? new File(external, "audio") : null;
+    }
+
+    public static synchronized AudioStorageQuota getInstance(Context context) {
+        if (instance == null) {
+            instance = new AudioStorageQuota(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Count a saved recording and evict old days if the quota is now exceeded
+     */
+    public synchronized void add(File file) {
+        if (!index()) return;
+
+        File day = file.getParentFile();
+        if (day == null || !root.equals(day.getParentFile())) return;
+
+        long size = file.length();
+        Long current = days.get(day.getName());
+        days.put(day.getName(), (current != null ? current : 0) + size);
+        total += size;
+
+        enforce();
+    }
+
+    /**
+     * Evict the oldest day directories until the tree is within the age limit and byte budget
+     *
+     * @return bytes deleted
+     */
+    public synchronized long enforce() {
+        if (!index()) return 0;
+
+        long maxBytes = setting(Settings.AUDIO_FILES_MAX_MB_PLUGIN_YAMNET, DEFAULT_MAX_MB) * 1024 * 1024;
+        long maxDays = setting(Settings.AUDIO_FILES_MAX_DAYS_PLUGIN_YAMNET, DEFAULT_MAX_DAYS);
+
+        long now = System.currentTimeMillis();
+        String today = dayName(now);
+        // Days before this one are older than the age limit
+        String oldestKept = maxDays > 0 ? dayName(now - (maxDays - 1) * AudioShards.DAY_MS) : null;
+
+        long evicted = 0;
+        int evictedDays = 0;
+        for (Map.Entry<String, Long> day : new ArrayList<>(days.entrySet())) {
+            boolean tooOld = oldestKept != null && day.getKey().compareTo(oldestKept) < 0;
+            boolean overBudget = maxBytes > 0 && total > maxBytes;
+            if (!tooOld && !overBudget) break;
+            if (day.getKey().equals(today)) break;
+
+            delete(new File(root, day.getKey()));
+            days.remove(day.getKey());
+            total -= day.getValue();
+            evicted += day.getValue();
+            evictedDays++;
+        }
+
+        if (evictedDays > 0) {
+            Log.d(TAG, "Evicted " + evictedDays + " days of recordings (" + evicted + " bytes), " + total + " bytes left");
+        }
+        if (maxBytes > 0 && total > maxBytes) {
+            Log.w(TAG, "Today's recordings alone exceed the " + maxBytes + " byte budget");
+        }
+        return evicted;
+    }
+
+    /**
+     * Bytes of saved recordings, as indexed
+     */
+    public synchronized long getSize() {
+        return index() ? total : 0;
+    }
+
+    /**
+     * Build the index on first use
+     *
+     * @return false when external storage is unavailable
+     */
+    private boolean index() {
+        if (root == null) return false;
+        if (days != null) return true;
+
+        long start = System.currentTimeMillis();
+        days = new TreeMap<>();
+        total = 0;
+        File[] dirs = root.listFiles();
+        if (dirs != null) {
+            for (File dir : dirs) {
+                if (!dir.isDirectory()) continue;
+                long size = sizeOf(dir);
+                days.put(dir.getName(), size);
+                total += size;
+            }
+        }
+        Log.d(TAG, "Indexed " + days.size() + " days of recordings (" + total + " bytes) in "
+                + (System.currentTimeMillis() - start) + " ms");
+        return true;
+    }
+
+    private long setting(String key, long defaultValue) {
+        try {
+            String value = Aware.getSetting(context, key);
+            if (!value.isEmpty()) return Math.max(0, Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Invalid " + key + " setting, using default: " + e.getMessage());
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Day directory name of a timestamp, as AudioAnalyser.audioFile names it
+     */
+    private static String dayName(long timestamp) {
+        return new SimpleDateFormat("yyyy-MM-dd", Locale.US).format(new Date(timestamp));
+    }
+
+    private static long sizeOf(File dir) {
+        long size = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                size += file.isDirectory() ? sizeOf(file) : file.length();
+            }
+        }
+        return size;
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        if (!file.delete() && file.exists()) {
+            Log.w(TAG, "Could not delete " + file.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,744 @@
+package com.aware.plugin.yamnet;
+
+import android.app.IntentService;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+import android.os.Debug;
+import android.util.Log;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * On-device benchmarks, run one at a time and reported to logcat (tag AWARE::YAMNet::Benchmark)
+ * Start with BenchmarkService.start(context, BenchmarkService.PROVIDER_CONTENTION) from a debug build.
+ * Benchmark rows are written to the local-only audio table under BENCHMARK_DEVICE_ID and removed
+ * afterwards, or to a scratch database in the cache directory that is deleted afterwards.
+ */
+public class BenchmarkService extends IntentService {
+    private static final String TAG = "AWARE::YAMNet::Benchmark";
+
+    public static final String EXTRA_BENCHMARK = "benchmark";
+
+    /**
+     * Insert latency on the capture path while exports and cleanup run in parallel
+     */
+    public static final String PROVIDER_CONTENTION = "provider_contention";
+
+    /**
+     * Time-range query latency on plugin_yamnet at EXTRA_ROWS rows (default 1M), with the
+     * pre-version-6 schema (real timestamps, no indexes) and after migrating it
+     */
+    public static final String TIMESTAMP_INDEX = "timestamp_index";
+
+    /**
+     * FLAC encode speed and compression ratio against WAV at every level, on up to EXTRA_CLIPS
+     * (default 120) of the most recent clips stored in plugin_yamnet_audio
+     */
+    public static final String FLAC = "flac";
+
+    /**
+     * Inference latency and throughput of the bundled model on fixed synthetic 1 s clips, for
+     * 1, 2, 4 and all cores' threads with the XNNPACK delegate off and on, EXTRA_RUNS (default 100)
+     * timed runs each
+     */
+    public static final String INFERENCE = "inference";
+
+    /**
+     * Every packaged ModelRegistry variant and installed model on the same labelled WAV corpus: top-1 / top-5
+     * agreement with float32, accuracy against the labels, latency and peak native memory.
+     * The corpus is EXTRA_CORPUS (default model_corpus/ in the app's external files), one
+     * directory per YAMNet label holding 16-bit PCM WAV files; up to EXTRA_CLIPS (default 200).
+     */
+    public static final String MODEL_VARIANTS = "model_variants";
+
+    public static final String EXTRA_ROWS = "rows";
+    public static final String EXTRA_CLIPS = "clips";
+    public static final String EXTRA_RUNS = "runs";
+    public static final String EXTRA_CORPUS = "corpus";
+
+    static final String BENCHMARK_DEVICE_ID = "yamnet-benchmark";
+
+    private static final int CLIP_BYTES = YamnetSession.SAMPLE_RATE * 2; // 1s of 16-bit PCM
+    private static final int CONTENTION_INSERTS = 500;
+    private static final int CONTENTION_SEED_ROWS = 60;
+    private static final int CONTENTION_CLEANUP_BATCH = 20;
+    private static final int INDEX_DEFAULT_ROWS = 1000000;
+    private static final int INDEX_QUERY_RUNS = 20;
+    private static final int INDEX_DEVICES = 4;
+    private static final long INDEX_ROW_INTERVAL_MS = 1000;
+    private static final int FLAC_DEFAULT_CLIPS = 120;
+    private static final int WAV_HEADER_BYTES = 44;
+    private static final int INFERENCE_DEFAULT_RUNS = 100;
+    private static final int INFERENCE_WARMUP_RUNS = 5;
+    private static final int INFERENCE_CLIP_SAMPLES = YamnetSession.SAMPLE_RATE; // 1s, the default duration
+    private static final int VARIANTS_DEFAULT_CLIPS = 200;
+    private static final int VARIANTS_TOP_K = 5;
+
+    private volatile boolean loadRunning;
+
+    public BenchmarkService() {
+        super("BenchmarkService");
+    }
+
+    public static void start(Context context, String benchmark) {
+        Intent intent = new Intent(context, BenchmarkService.class);
+        intent.putExtra(EXTRA_BENCHMARK, benchmark);
+        context.startService(intent);
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        String benchmark = intent != null ? intent.getStringExtra(EXTRA_BENCHMARK) : null;
+        Log.d(TAG, "Starting benchmark " + benchmark);
+
+        try {
+            if (PROVIDER_CONTENTION.equals(benchmark)) {
+                runProviderContention();
+            } else if (TIMESTAMP_INDEX.equals(benchmark)) {
+                runTimestampIndex(intent.getIntExtra(EXTRA_ROWS, INDEX_DEFAULT_ROWS));
+            } else if (FLAC.equals(benchmark)) {
+                runFlac(intent.getIntExtra(EXTRA_CLIPS, FLAC_DEFAULT_CLIPS));
+            } else if (INFERENCE.equals(benchmark)) {
+                runInference(intent.getIntExtra(EXTRA_RUNS, INFERENCE_DEFAULT_RUNS));
+            } else if (MODEL_VARIANTS.equals(benchmark)) {
+                String corpus = intent.getStringExtra(EXTRA_CORPUS);
+                runModelVariants(corpus != null ? new File(corpus) : new File(getExternalFilesDir(null), "model_corpus"),
+                        intent.getIntExtra(EXTRA_CLIPS, VARIANTS_DEFAULT_CLIPS));
+            } else {
+                Log.w(TAG, "Unknown benchmark " + benchmark);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Benchmark " + benchmark + " failed: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            deleteBenchmarkRows();
+        }
+    }
+
+    /**
+     * Time single-row audio inserts alone, then again while one thread keeps reading every
+     * stored clip (an export) and another keeps inserting and deleting batches of clips (cleanup)
+     */
+    private void runProviderContention() throws InterruptedException {
+        final byte[] clip = new byte[CLIP_BYTES];
+
+        ContentValues[] seed = new ContentValues[CONTENTION_SEED_ROWS];
+        for (int i = 0; i < seed.length; i++) {
+            seed[i] = audioRow(i, clip);
+        }
+        getContentResolver().bulkInsert(Provider.YAMNet_Audio.CONTENT_URI, seed);
+
+        LatencyStats idle = timeInserts(clip, 0);
+
+        final AtomicLong exportedClips = new AtomicLong();
+        final AtomicLong cleanedClips = new AtomicLong();
+        loadRunning = true;
+
+        Thread exporter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (loadRunning) {
+                    Cursor cursor = getContentResolver().query(
+                            Provider.YAMNet_Audio.CONTENT_URI,
+                            new String[]{Provider.YAMNet_Audio.RAW_AUDIO},
+                            Provider.YAMNet_Audio.DEVICE_ID + " = ?",
+                            new String[]{BENCHMARK_DEVICE_ID},
+                            Provider.YAMNet_Audio.TIMESTAMP + " ASC");
+                    if (cursor == null) continue;
+                    while (loadRunning && cursor.moveToNext()) {
+                        cursor.getBlob(0);
+                        exportedClips.incrementAndGet();
+                    }
+                    cursor.close();
+                }
+            }
+        }, "YAMNet-Benchmark-Export");
+
+        Thread cleaner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ContentValues[] batch = new ContentValues[CONTENTION_CLEANUP_BATCH];
+                while (loadRunning) {
+                    for (int i = 0; i < batch.length; i++) {
+                        batch[i] = audioRow(-1, clip);
+                    }
+                    getContentResolver().bulkInsert(Provider.YAMNet_Audio.CONTENT_URI, batch);
+                    cleanedClips.addAndGet(getContentResolver().delete(
+                            Provider.YAMNet_Audio.CONTENT_URI,
+                            Provider.YAMNet_Audio.DEVICE_ID + " = ? AND " + Provider.YAMNet_Audio.TIMESTAMP + " < 0",
+                            new String[]{BENCHMARK_DEVICE_ID}));
+                }
+            }
+        }, "YAMNet-Benchmark-Cleanup");
+
+        exporter.start();
+        cleaner.start();
+        LatencyStats contended = timeInserts(clip, CONTENTION_INSERTS);
+        loadRunning = false;
+        exporter.join();
+        cleaner.join();
+
+        Log.i(TAG, "provider_contention idle:      " + idle);
+        Log.i(TAG, "provider_contention contended: " + contended
+                + ", exporter read " + exportedClips.get() + " clips, cleanup deleted " + cleanedClips.get() + " clips");
+    }
+
+    /**
+     * Build a scratch copy of plugin_yamnet in the old layout, time the export, cleanup and
+     * range queries, migrate it the way DatabaseHelper and Provider do, and time them again
+     */
+    private void runTimestampIndex(int rows) {
+        File file = new File(getCacheDir(), "yamnet_benchmark.db");
+        SQLiteDatabase.deleteDatabase(file);
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+
+        try {
+            db.execSQL("CREATE TABLE plugin_yamnet (_id integer primary key autoincrement, timestamp real default 0,"
+                    + " device_id text default '', duration integer default 0, analysis_results text)");
+
+            long fillStart = System.currentTimeMillis();
+            long firstTimestamp = fillStart - rows * INDEX_ROW_INTERVAL_MS;
+            SQLiteStatement insert = db.compileStatement(
+                    "INSERT INTO plugin_yamnet (timestamp, device_id, duration, analysis_results) VALUES (?, ?, ?, ?)");
+            String results = "{\"status\":\"success\",\"frames\":1,\"predictions\":[{\"label\":\"Speech\",\"score\":0.8,\"index\":0}]}";
+            db.beginTransaction();
+            for (int i = 0; i < rows; i++) {
+                insert.bindDouble(1, firstTimestamp + i * INDEX_ROW_INTERVAL_MS);
+                insert.bindString(2, BENCHMARK_DEVICE_ID + "-" + (i % INDEX_DEVICES));
+                insert.bindLong(3, 1000);
+                insert.bindString(4, results);
+                insert.executeInsert();
+                if (i % 10000 == 9999) {
+                    db.setTransactionSuccessful();
+                    db.endTransaction();
+                    db.beginTransaction();
+                }
+            }
+            db.setTransactionSuccessful();
+            db.endTransaction();
+            insert.close();
+            Log.i(TAG, "timestamp_index: " + rows + " rows written in " + (System.currentTimeMillis() - fillStart) + " ms");
+
+            String[] before = timeRangeQueries(db, firstTimestamp, rows);
+
+            // What a version 6 upgrade does: DatabaseHelper rebuilds the table from TABLES_FIELDS,
+            // then Provider applies its migrations and indexes
+            long migrateStart = System.currentTimeMillis();
+            db.execSQL("ALTER TABLE plugin_yamnet RENAME TO temp_plugin_yamnet");
+            db.execSQL("CREATE TABLE plugin_yamnet (" + Provider.TABLES_FIELDS[0] + ")");
+            db.execSQL("INSERT INTO plugin_yamnet (_id, timestamp, device_id, duration, analysis_results)"
+                    + " SELECT _id, timestamp, device_id, duration, analysis_results FROM temp_plugin_yamnet");
+            db.execSQL("DROP TABLE temp_plugin_yamnet");
+            db.execSQL("CREATE TABLE IF NOT EXISTS plugin_yamnet_audio (" + Provider.TABLES_FIELDS[1] + ")");
+            db.execSQL("CREATE TABLE IF NOT EXISTS plugin_yamnet_predictions (" + Provider.TABLES_FIELDS[2] + ")");
+            Provider.migrate(db);
+            Provider.createIndexes(db);
+            Log.i(TAG, "timestamp_index: migration took " + (System.currentTimeMillis() - migrateStart) + " ms");
+
+            String[] after = timeRangeQueries(db, firstTimestamp, rows);
+
+            for (int i = 0; i < before.length; i++) {
+                Log.i(TAG, "timestamp_index before: " + before[i]);
+                Log.i(TAG, "timestamp_index after:  " + after[i]);
+            }
+        } finally {
+            db.close();
+            SQLiteDatabase.deleteDatabase(file);
+        }
+    }
+
+    /**
+     * Encode real recordings the way saved audio files are written (one file per clip) at every
+     * compression level, and compare the size with the same clips as WAV
+     */
+    private void runFlac(int clips) throws IOException {
+        ArrayList<short[]> corpus = new ArrayList<short[]>();
+        long totalSamples = 0;
+
+        Cursor cursor = getContentResolver().query(
+                Provider.YAMNet_Audio.CONTENT_URI,
+                new String[]{Provider.YAMNet_Audio.RAW_AUDIO, Provider.YAMNet_Audio.SEGMENT,
+                        Provider.YAMNet_Audio.SEGMENT_OFFSET, Provider.YAMNet_Audio.SEGMENT_LENGTH},
+                Provider.YAMNet_Audio.DEVICE_ID + " != ?",
+                new String[]{BENCHMARK_DEVICE_ID},
+                Provider.YAMNet_Audio.TIMESTAMP + " DESC");
+        if (cursor != null) {
+            AudioSegmentStore store = AudioSegmentStore.getInstance(this);
+            while (corpus.size() < clips && cursor.moveToNext()) {
+                byte[] pcm = store.read(cursor);
+                if (pcm == null || pcm.length < 2) continue;
+                short[] clip = new short[pcm.length / 2];
+                ByteBuffer.wrap(pcm).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(clip);
+                corpus.add(clip);
+                totalSamples += clip.length;
+            }
+            cursor.close();
+        }
+
+        if (corpus.isEmpty()) {
+            Log.w(TAG, "flac: no stored recordings to encode, let the plugin record for a while first");
+            return;
+        }
+
+        double audioSeconds = totalSamples / (double) YamnetSession.SAMPLE_RATE;
+        long wavBytes = totalSamples * 2 + (long) WAV_HEADER_BYTES * corpus.size();
+        Log.i(TAG, "flac: " + corpus.size() + " clips, " + String.format(Locale.US, "%.1f", audioSeconds)
+                + " s of audio, " + wavBytes + " bytes as WAV");
+
+        File file = new File(getCacheDir(), "yamnet_benchmark.flac");
+        try {
+            for (int level = FlacEncoder.MIN_LEVEL; level <= FlacEncoder.MAX_LEVEL; level++) {
+                LatencyStats encode = new LatencyStats(corpus.size());
+                long flacBytes = 0;
+                for (short[] clip : corpus) {
+                    long start = System.nanoTime();
+                    FlacEncoder encoder = new FlacEncoder(file, YamnetSession.SAMPLE_RATE, level);
+                    encoder.write(clip, 0, clip.length);
+                    encoder.close();
+                    encode.add(System.nanoTime() - start);
+                    flacBytes += file.length();
+                }
+
+                Log.i(TAG, String.format(Locale.US, "flac level %d: ratio %.3f (%d bytes), %.0fx realtime, per clip %s",
+                        level, flacBytes / (double) wavBytes, flacBytes,
+                        audioSeconds / Math.max(encode.totalMs() / 1000.0, 1e-9), encode));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Run the bundled model on the same synthetic clips in every thread / XNNPACK configuration.
+     * Each configuration gets its own interpreter, so the plugin's shared session is left alone;
+     * load time and the first run are reported apart from the timed runs.
+     */
+    private void runInference(int runs) throws IOException {
+        short[][] clips = syntheticClips();
+        int cores = Runtime.getRuntime().availableProcessors();
+        TreeSet<Integer> threadCounts = new TreeSet<Integer>();
+        for (int threads : new int[]{1, 2, 4, cores}) {
+            if (threads <= cores) threadCounts.add(threads);
+        }
+        threadCounts.add(1);
+
+        Log.i(TAG, "inference: " + Build.MODEL + ", SDK " + Build.VERSION.SDK_INT + ", " + cores + " cores, "
+                + runs + " runs of " + clips.length + " synthetic " + (INFERENCE_CLIP_SAMPLES * 1000 / YamnetSession.SAMPLE_RATE) + " ms clips");
+
+        ByteBuffer inputBytes = ByteBuffer.allocateDirect(INFERENCE_CLIP_SAMPLES * 4).order(ByteOrder.nativeOrder());
+        FloatBuffer input = inputBytes.asFloatBuffer();
+        double clipSeconds = INFERENCE_CLIP_SAMPLES / (double) YamnetSession.SAMPLE_RATE;
+
+        for (boolean xnnpack : new boolean[]{false, true}) {
+            for (int threads : threadCounts) {
+                String config = YamnetSession.describeOptions(threads, xnnpack);
+
+                long loadStart = System.nanoTime();
+                Interpreter interpreter = new Interpreter(
+                        YamnetSession.loadModelFile(this, YamnetSession.MODEL_FILE),
+                        YamnetSession.options(threads, xnnpack));
+                try {
+                    interpreter.resizeInput(0, new int[]{INFERENCE_CLIP_SAMPLES});
+                    interpreter.allocateTensors();
+                    // The output shape is stale until the first invoke; see YamnetSession.prepareInput
+                    int frames = YamnetSession.expectedFrames(INFERENCE_CLIP_SAMPLES);
+                    ByteBuffer output = ByteBuffer.allocateDirect(frames * YamnetSession.NUM_CLASSES * 4).order(ByteOrder.nativeOrder());
+                    double loadMs = (System.nanoTime() - loadStart) / 1e6;
+
+                    long firstNanos = 0;
+                    for (int i = 0; i < INFERENCE_WARMUP_RUNS; i++) {
+                        fillInput(input, clips[i % clips.length]);
+                        long start = System.nanoTime();
+                        interpreter.run(inputBytes, output);
+                        if (i == 0) firstNanos = System.nanoTime() - start;
+                        output.rewind();
+                    }
+
+                    LatencyStats stats = new LatencyStats(runs);
+                    for (int i = 0; i < runs; i++) {
+                        fillInput(input, clips[i % clips.length]);
+                        long start = System.nanoTime();
+                        interpreter.run(inputBytes, output);
+                        stats.add(System.nanoTime() - start);
+                        output.rewind();
+                    }
+
+                    Log.i(TAG, String.format(Locale.US, "inference %s: load %.1fms, first run %.1fms, %s, %.1fx realtime",
+                            config, loadMs, firstNanos / 1e6, stats, stats.throughput() * clipSeconds));
+                } catch (Exception e) {
+                    Log.w(TAG, "inference " + config + " failed: " + e.getMessage());
+                } finally {
+                    interpreter.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Fixed inputs, the same on every device and run: silence, a 1 kHz tone, seeded white noise
+     * and a 100 Hz - 4 kHz chirp
+     */
+    private static short[][] syntheticClips() {
+        short[][] clips = new short[4][INFERENCE_CLIP_SAMPLES];
+        Random random = new Random(521);
+        double rate = YamnetSession.SAMPLE_RATE;
+        double seconds = INFERENCE_CLIP_SAMPLES / rate;
+        for (int i = 0; i < INFERENCE_CLIP_SAMPLES; i++) {
+            double t = i / rate;
+            clips[1][i] = (short) (8000 * Math.sin(2 * Math.PI * 1000 * t));
+            clips[2][i] = (short) (3000 * random.nextGaussian());
+            double sweep = 100 + (4000 - 100) * t / seconds / 2;
+            clips[3][i] = (short) (8000 * Math.sin(2 * Math.PI * sweep * t));
+        }
+        return clips;
+    }
+
+    private static void fillInput(FloatBuffer input, short[] clip) {
+        input.clear();
+        for (short value : clip) {
+            input.put(value / 32768.0f);
+        }
+    }
+
+    /**
+     * Run every packaged model variant and installed model, each in a session of its own with default options, over
+     * the same clips. Clip predictions are the mean-pooled top 5, as the plugin stores them;
+     * float32 runs first and is the reference for agreement.
+     */
+    private void runModelVariants(File corpus, int maxClips) throws IOException {
+        List<String> labels = YamnetSession.loadLabels(this);
+        HashMap<String, Integer> classes = new HashMap<String, Integer>();
+        for (int i = 0; i < labels.size(); i++) {
+            classes.put(labels.get(i).toLowerCase(Locale.US), i);
+        }
+
+        ArrayList<short[]> clips = new ArrayList<short[]>();
+        ArrayList<Integer> truth = new ArrayList<Integer>();
+        File[] dirs = corpus.listFiles();
+        if (dirs != null) {
+            Arrays.sort(dirs);
+            for (File dir : dirs) {
+                File[] files = dir.isDirectory() ? dir.listFiles() : null;
+                if (files == null) continue;
+                Arrays.sort(files);
+                Integer label = classes.get(dir.getName().toLowerCase(Locale.US));
+                for (File file : files) {
+                    if (clips.size() >= maxClips || !file.getName().toLowerCase(Locale.US).endsWith(".wav")) continue;
+                    short[] clip = readWav(file);
+                    if (clip == null) continue;
+                    clips.add(clip);
+                    truth.add(label != null ? label : -1);
+                }
+            }
+        }
+
+        if (clips.isEmpty()) {
+            Log.w(TAG, "model_variants: no WAV files in " + corpus + ", expected <label>/<clip>.wav");
+            return;
+        }
+        int labelled = 0;
+        for (int label : truth) {
+            if (label >= 0) labelled++;
+        }
+        Log.i(TAG, "model_variants: " + clips.size() + " clips from " + corpus + ", " + labelled + " with a YAMNet label");
+
+        TopKSelector topK = new TopKSelector(YamnetSession.NUM_CLASSES);
+        float[] pooled = new float[YamnetSession.NUM_CLASSES];
+        int[][] reference = null;
+
+        List<ModelRegistry.Variant> variants = new ArrayList<ModelRegistry.Variant>(ModelRegistry.all());
+        variants.addAll(ModelRegistry.installed(this));
+        for (ModelRegistry.Variant variant : variants) {
+            if (!ModelRegistry.isAvailable(this, variant)) {
+                Log.i(TAG, "model_variants " + variant.version + ": skipped, " + variant + " is not available");
+                continue;
+            }
+
+            YamnetSession session = new YamnetSession(this);
+            session.configure(variant, 0, true);
+            int[][] predictions = new int[clips.size()][VARIANTS_TOP_K];
+            LatencyStats latency = new LatencyStats(clips.size());
+            long heapBefore = Debug.getNativeHeapAllocatedSize();
+            long heapPeak = heapBefore;
+            long coldNanos;
+            try {
+                long coldStart = System.nanoTime();
+                session.run(clips.get(0), 0, clips.get(0).length);
+                coldNanos = System.nanoTime() - coldStart;
+                if (!variant.version.equals(session.getModelVersion())) {
+                    Log.w(TAG, "model_variants " + variant.version + ": skipped, failed verification");
+                    continue;
+                }
+                heapPeak = Math.max(heapPeak, Debug.getNativeHeapAllocatedSize());
+
+                for (int i = 0; i < clips.size(); i++) {
+                    short[] clip = clips.get(i);
+                    long start = System.nanoTime();
+                    int frames = session.run(clip, 0, clip.length);
+                    latency.add(System.nanoTime() - start);
+                    heapPeak = Math.max(heapPeak, Debug.getNativeHeapAllocatedSize());
+
+                    ScorePooling.pool(session.getFrameScores(), frames, YamnetSession.NUM_CLASSES, ScorePooling.MEAN, pooled);
+                    int count = topK.select(pooled, VARIANTS_TOP_K, Float.NEGATIVE_INFINITY);
+                    for (int rank = 0; rank < VARIANTS_TOP_K; rank++) {
+                        predictions[i][rank] = rank < count ? topK.indexAt(rank) : -1;
+                    }
+                }
+            } finally {
+                session.close();
+            }
+            if (reference == null) reference = predictions;
+
+            int top1Agree = 0, top5Agree = 0, overlap = 0, top1Correct = 0, top5Correct = 0;
+            for (int i = 0; i < clips.size(); i++) {
+                if (predictions[i][0] == reference[i][0]) top1Agree++;
+                if (contains(predictions[i], reference[i][0])) top5Agree++;
+                for (int index : reference[i]) {
+                    if (index >= 0 && contains(predictions[i], index)) overlap++;
+                }
+                if (truth.get(i) >= 0) {
+                    if (predictions[i][0] == truth.get(i)) top1Correct++;
+                    if (contains(predictions[i], truth.get(i))) top5Correct++;
+                }
+            }
+
+            int n = clips.size();
+            Log.i(TAG, String.format(Locale.US,
+                    "model_variants %s: model %d bytes, agreement with %s top-1 %.3f top-5 %.3f (top-5 overlap %.3f)%s,"
+                            + " cold %.1fms, %s, peak native heap +%d KB",
+                    variant.version, ModelRegistry.modelLength(this, variant), ModelRegistry.FLOAT32,
+                    top1Agree / (double) n, top5Agree / (double) n, overlap / (double) (n * VARIANTS_TOP_K),
+                    labelled > 0 ? String.format(Locale.US, ", label accuracy top-1 %.3f top-5 %.3f",
+                            top1Correct / (double) labelled, top5Correct / (double) labelled) : "",
+                    coldNanos / 1e6, latency, (heapPeak - heapBefore) / 1024));
+        }
+    }
+
+    private static boolean contains(int[] indices, int index) {
+        for (int value : indices) {
+            if (value == index) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 16-bit PCM WAV as 16 kHz mono: channels are averaged and other rates linearly resampled
+     *
+     * @return the samples, or null if the file is not 16-bit PCM WAV
+     */
+    static short[] readWav(File file) throws IOException {
+        byte[] bytes;
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+
+        ByteBuffer wav = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (bytes.length < 12 || wav.getInt(0) != 0x46464952 || wav.getInt(8) != 0x45564157) { // "RIFF", "WAVE"
+            Log.w(TAG, file.getName() + " is not a WAV file");
+            return null;
+        }
+
+        int channels = 0, rate = 0, bits = 0, dataOffset = -1, dataLength = 0;
+        int position = 12;
+        while (position + 8 <= bytes.length) {
+            int id = wav.getInt(position);
+            int size = wav.getInt(position + 4);
+            int body = position + 8;
+            if (id == 0x20746d66 && body + 16 <= bytes.length) { // "fmt "
+                if (wav.getShort(body) != 1) break; // not PCM
+                channels = wav.getShort(body + 2);
+                rate = wav.getInt(body + 4);
+                bits = wav.getShort(body + 14);
+            } else if (id == 0x61746164) { // "data"
+                dataOffset = body;
+                dataLength = Math.min(size < 0 ? Integer.MAX_VALUE : size, bytes.length - body);
+                break;
+            }
+            if (size < 0) break;
+            position = body + size + (size & 1);
+        }
+
+        if (dataOffset < 0 || bits != 16 || channels < 1 || rate <= 0) {
+            Log.w(TAG, file.getName() + " is not 16-bit PCM, skipped");
+            return null;
+        }
+
+        int frames = dataLength / (2 * channels);
+        if (frames == 0) return null;
+        float[] mono = new float[frames];
+        for (int f = 0; f < frames; f++) {
+            int sum = 0;
+            for (int c = 0; c < channels; c++) {
+                sum += wav.getShort(dataOffset + (f * channels + c) * 2);
+            }
+            mono[f] = sum / (float) channels;
+        }
+
+        int length = (int) ((long) frames * YamnetSession.SAMPLE_RATE / rate);
+        short[] clip = new short[length];
+        for (int i = 0; i < length; i++) {
+            double source = i * (double) rate / YamnetSession.SAMPLE_RATE;
+            int index = (int) source;
+            float next = index + 1 < frames ? mono[index + 1] : mono[index];
+            clip[i] = (short) Math.round(mono[index] + (next - mono[index]) * (source - index));
+        }
+        return clip;
+    }
+
+    /**
+     * The queries behind AudioExportUtility (one timestamp), AudioMigrationService (everything
+     * before a cutoff) and a one-hour window, overall and for one device
+     */
+    private String[] timeRangeQueries(SQLiteDatabase db, long firstTimestamp, int rows) {
+        long hour = 60 * 60 * 1000L;
+        long span = rows * INDEX_ROW_INTERVAL_MS;
+        String device = BENCHMARK_DEVICE_ID + "-1";
+
+        LatencyStats lookup = new LatencyStats(INDEX_QUERY_RUNS);
+        LatencyStats cutoff = new LatencyStats(INDEX_QUERY_RUNS);
+        LatencyStats window = new LatencyStats(INDEX_QUERY_RUNS);
+        LatencyStats deviceWindow = new LatencyStats(INDEX_QUERY_RUNS);
+
+        for (int run = 0; run < INDEX_QUERY_RUNS; run++) {
+            // Spread the probes over the table so no run only hits cached pages
+            long probe = firstTimestamp + (span / INDEX_QUERY_RUNS) * run;
+            String from = String.valueOf(probe);
+            String to = String.valueOf(probe + hour);
+
+            lookup.add(timeQuery(db, "SELECT _id, analysis_results FROM plugin_yamnet WHERE timestamp = ?", from));
+            cutoff.add(timeQuery(db, "SELECT count(*) FROM plugin_yamnet WHERE timestamp < ?",
+                    String.valueOf(firstTimestamp + span / 100)));
+            window.add(timeQuery(db, "SELECT _id, timestamp FROM plugin_yamnet WHERE timestamp >= ? AND timestamp < ?", from, to));
+            deviceWindow.add(timeQuery(db, "SELECT _id, timestamp FROM plugin_yamnet WHERE device_id = ? AND timestamp >= ? AND timestamp < ?",
+                    device, from, to));
+        }
+
+        return new String[]{
+                "lookup " + lookup,
+                "cutoff " + cutoff,
+                "window " + window,
+                "device window " + deviceWindow
+        };
+    }
+
+    private static long timeQuery(SQLiteDatabase db, String sql, String... args) {
+        long start = System.nanoTime();
+        Cursor cursor = db.rawQuery(sql, args);
+        while (cursor.moveToNext()) {
+            cursor.getLong(0);
+        }
+        cursor.close();
+        return System.nanoTime() - start;
+    }
+
+    private LatencyStats timeInserts(byte[] clip, int offset) {
+        LatencyStats stats = new LatencyStats(CONTENTION_INSERTS);
+        for (int i = 0; i < CONTENTION_INSERTS; i++) {
+            ContentValues row = audioRow(CONTENTION_SEED_ROWS + offset + i, clip);
+            long start = System.nanoTime();
+            getContentResolver().insert(Provider.YAMNet_Audio.CONTENT_URI, row);
+            stats.add(System.nanoTime() - start);
+        }
+        return stats;
+    }
+
+    private static ContentValues audioRow(long timestamp, byte[] clip) {
+        ContentValues row = new ContentValues();
+        row.put(Provider.YAMNet_Audio.TIMESTAMP, timestamp);
+        row.put(Provider.YAMNet_Audio.DEVICE_ID, BENCHMARK_DEVICE_ID);
+        row.put(Provider.YAMNet_Audio.DURATION, 1000);
+        row.put(Provider.YAMNet_Audio.RAW_AUDIO, clip);
+        return row;
+    }
+
+    private void deleteBenchmarkRows() {
+        getContentResolver().delete(Provider.YAMNet_Audio.CONTENT_URI,
+                Provider.YAMNet_Audio.DEVICE_ID + " = ?", new String[]{BENCHMARK_DEVICE_ID});
+    }
+
+    /**
+     * Latency samples in nanoseconds, summarised as percentiles in milliseconds
+     */
+    static class LatencyStats {
+        private long[] samples;
+        private int count = 0;
+        private long startNanos = System.nanoTime();
+        private long endNanos;
+
+        LatencyStats(int expected) {
+            samples = new long[Math.max(expected, 16)];
+        }
+
+        void add(long nanos) {
+            if (count == samples.length) {
+                samples = Arrays.copyOf(samples, count * 2);
+            }
+            samples[count++] = nanos;
+            endNanos = System.nanoTime();
+        }
+
+        int count() {
+            return count;
+        }
+
+        /**
+         * Nearest-rank percentile in milliseconds
+         */
+        double percentileMs(double percentile) {
+            if (count == 0) return 0;
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile / 100.0 * count) - 1;
+            return sorted[Math.max(0, Math.min(rank, count - 1))] / 1e6;
+        }
+
+        /**
+         * Sum of all samples in milliseconds
+         */
+        double totalMs() {
+            long total = 0;
+            for (int i = 0; i < count; i++) {
+                total += samples[i];
+            }
+            return total / 1e6;
+        }
+
+        /**
+         * Completed operations per second over the measured interval
+         */
+        double throughput() {
+            long elapsed = endNanos - startNanos;
+            return elapsed > 0 ? count * 1e9 / elapsed : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "n=%d p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms (%.1f/s)",
+                    count, percentileMs(50), percentileMs(95), percentileMs(99), percentileMs(100), throughput());
+        }
+    }
+}
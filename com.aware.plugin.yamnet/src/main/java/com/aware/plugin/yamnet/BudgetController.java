@@ -0,0 +1,200 @@
+package com.aware.plugin.yamnet;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.aware.Aware;
+
+/**
+ * Battery and thermal budget for each sample
+ * Before a sample is captured the battery level, charging state, battery temperature and (on
+ * Android 10+) the thermal status are read and mapped to a tier. The tier decides the number of
+ * interpreter threads, a cap on the recording duration, whether the energy gate is forced on and
+ * whether rows are held back and written in larger batches. The tier is stored with every row.
+ */
+public class BudgetController {
+    private static final String TAG = "AWARE::YAMNet::Budget";
+
+    public static final String TIER_FULL = "full";
+    public static final String TIER_SAVER = "saver";
+    public static final String TIER_CRITICAL = "critical";
+
+    private static final int DEFAULT_SAVER_BATTERY = 30;
+    private static final int DEFAULT_CRITICAL_BATTERY = 15;
+    private static final int DEFAULT_MAX_TEMPERATURE = 40;
+    private static final int DEFAULT_SAVER_DURATION_MS = 1000;
+    private static final int DEFAULT_DEFER_SAMPLES = 10;
+
+    // One YAMNet patch, the shortest clip that still yields a full score frame
+    private static final int CRITICAL_DURATION_MS = YamnetSession.PATCH_SAMPLES * 1000 / YamnetSession.SAMPLE_RATE;
+    // The critical tier only runs the model on clearly audible clips
+    private static final float CRITICAL_GATE_DBFS = -45f;
+    // Deferred rows are written at the latest after this long
+    private static final long DEFER_MAX_MS = 60 * 60 * 1000L;
+    // Battery and thermal state are re-read at most this often (continuous mode asks every window)
+    private static final long CHECK_INTERVAL_MS = 10 * 1000L;
+
+    /**
+     * What a sample may spend
+     */
+    public static final class Budget {
+        public final String tier;
+        /** Most interpreter threads, 0 = as configured */
+        public final int threads;
+        /** Longest recording in milliseconds, 0 = as configured */
+        public final int maxDurationMs;
+        /** Force the energy gate on, whatever silence_gate_plugin_yamnet says */
+        public final boolean gate;
+        /** Lowest gate threshold in dBFS; the configured threshold applies when it is higher */
+        public final float gateThresholdDbfs;
+        /** Samples to hold back before writing, 1 = write each sample */
+        public final int deferSamples;
+        /** Longest time deferred rows are held, in milliseconds */
+        public final long deferMs;
+
+        Budget(String tier, int threads, int maxDurationMs, boolean gate, float gateThresholdDbfs,
+               int deferSamples, long deferMs) {
+            this.tier = tier;
+            this.threads = threads;
+            this.maxDurationMs = maxDurationMs;
+            this.gate = gate;
+            this.gateThresholdDbfs = gateThresholdDbfs;
+            this.deferSamples = deferSamples;
+            this.deferMs = deferMs;
+        }
+
+        /**
+         * The configured recording duration, capped by this budget
+         */
+        public int capDuration(int durationMs) {
+            return maxDurationMs > 0 ? Math.min(durationMs, maxDurationMs) : durationMs;
+        }
+
+        @Override
+        public String toString() {
+            return tier + " (" + (threads > 0 ? "at most " + threads + " threads" : "configured threads")
+                    + (maxDurationMs > 0 ? ", at most " + maxDurationMs + " ms" : "")
+                    + (gate ? ", gate at " + gateThresholdDbfs + " dBFS" : "")
+                    + (deferSamples > 1 ? ", writes deferred " + deferSamples + " samples" : "") + ")";
+        }
+    }
+
+    /**
+     * Budget of samples taken while the controller is off, or without any limit
+     */
+    public static final Budget FULL = new Budget(TIER_FULL, 0, 0, false, Float.NEGATIVE_INFINITY, 1, 0);
+
+    private static BudgetController instance;
+
+    private final Context context;
+    private Budget current = FULL;
+    private long checkedAt = -1;
+
+    private BudgetController(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static synchronized BudgetController getInstance(Context context) {
+        if (instance == null) {
+            instance = new BudgetController(context);
+        }
+        return instance;
+    }
+
+    /**
+     * The budget of the next sample, from the current battery and thermal state
+     */
+    public synchronized Budget current() {
+        if (!Aware.getSetting(context, Settings.BUDGET_CONTROLLER_PLUGIN_YAMNET).equals("true")) {
+            current = FULL;
+            checkedAt = -1;
+            return current;
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        if (checkedAt >= 0 && now - checkedAt < CHECK_INTERVAL_MS) return current;
+        checkedAt = now;
+
+        Budget next = decide();
+        if (!next.tier.equals(current.tier)) {
+            Log.d(TAG, "Tier " + current.tier + " -> " + next);
+        }
+        current = next;
+        return current;
+    }
+
+    private Budget decide() {
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        int level = -1;
+        boolean charging = false;
+        float temperature = Float.NaN;
+        if (battery != null) {
+            int raw = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, 100);
+            if (raw >= 0 && scale > 0) level = raw * 100 / scale;
+            charging = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+            int tenths = battery.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, Integer.MIN_VALUE);
+            if (tenths != Integer.MIN_VALUE) temperature = tenths / 10f;
+        }
+
+        int thermal = PowerManager.THERMAL_STATUS_NONE;
+        boolean powerSave = false;
+        PowerManager power = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        if (power != null) {
+            powerSave = power.isPowerSaveMode();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                thermal = power.getCurrentThermalStatus();
+            }
+        }
+
+        int saverBattery = (int) setting(Settings.BUDGET_SAVER_BATTERY_PLUGIN_YAMNET, DEFAULT_SAVER_BATTERY);
+        int criticalBattery = (int) setting(Settings.BUDGET_CRITICAL_BATTERY_PLUGIN_YAMNET, DEFAULT_CRITICAL_BATTERY);
+        float maxTemperature = setting(Settings.BUDGET_MAX_TEMPERATURE_PLUGIN_YAMNET, DEFAULT_MAX_TEMPERATURE);
+
+        // Heat limits the budget even while charging; the battery level only when it is not
+        String tier;
+        if (thermal >= PowerManager.THERMAL_STATUS_SEVERE) {
+            tier = TIER_CRITICAL;
+        } else if (!charging && level >= 0 && level <= criticalBattery) {
+            tier = TIER_CRITICAL;
+        } else if (thermal >= PowerManager.THERMAL_STATUS_MODERATE
+                || (!Float.isNaN(temperature) && temperature >= maxTemperature)) {
+            tier = TIER_SAVER;
+        } else if (!charging && ((level >= 0 && level <= saverBattery) || powerSave)) {
+            tier = TIER_SAVER;
+        } else {
+            tier = TIER_FULL;
+        }
+
+        Log.d(TAG, "Battery " + level + "%" + (charging ? " charging" : "") + (powerSave ? " power save" : "")
+                + ", " + temperature + " C, thermal status " + thermal + ": " + tier);
+
+        if (tier.equals(TIER_FULL)) return FULL;
+
+        float threshold = setting(Settings.SILENCE_THRESHOLD_PLUGIN_YAMNET, SilenceGate.DEFAULT_THRESHOLD_DBFS);
+        int deferSamples = Math.max(1, (int) setting(Settings.BUDGET_DEFER_SAMPLES_PLUGIN_YAMNET, DEFAULT_DEFER_SAMPLES));
+        if (tier.equals(TIER_SAVER)) {
+            int duration = (int) setting(Settings.BUDGET_SAVER_DURATION_PLUGIN_YAMNET, DEFAULT_SAVER_DURATION_MS);
+            return new Budget(TIER_SAVER, 1, Math.max(CRITICAL_DURATION_MS, duration), true, threshold,
+                    deferSamples, DEFER_MAX_MS);
+        }
+        return new Budget(TIER_CRITICAL, 1, CRITICAL_DURATION_MS, true, Math.max(threshold, CRITICAL_GATE_DBFS),
+                deferSamples, DEFER_MAX_MS);
+    }
+
+    private float setting(String key, float defaultValue) {
+        try {
+            String value = Aware.getSetting(context, key);
+            if (!value.isEmpty()) return Float.parseFloat(value);
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Invalid " + key + " setting, using default: " + e.getMessage());
+        }
+        return defaultValue;
+    }
+}
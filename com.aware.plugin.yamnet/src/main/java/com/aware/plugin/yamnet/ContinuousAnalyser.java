@@ -0,0 +1,244 @@
+package com.aware.plugin.yamnet;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Build;
+import android.os.IBinder;
+import android.os.Process;
+import android.util.Log;
+
+import com.aware.Aware;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Continuous streaming capture mode (opt-in through continuous_plugin_yamnet)
+ * Keeps a single AudioRecord open in a foreground service, feeds a lock-free ring buffer from a
+ * capture thread and cuts overlapping 0.975s YAMNet windows every hop on a windowing thread,
+ * which hands them to the AnalysisPipeline for inference with the warm shared session. When
+ * the pipeline cannot keep up, stale windows are skipped instead of falling behind real time.
+ */
+public class ContinuousAnalyser extends Service {
+    private static final String TAG = "AWARE::YAMNet::Continuous";
+    private static final String CHANNEL_ID = "yamnet_continuous";
+    private static final int NOTIFICATION_ID = 4096;
+
+    private static final int SAMPLE_RATE = YamnetSession.SAMPLE_RATE;
+    private static final int WINDOW_SAMPLES = YamnetSession.PATCH_SAMPLES;
+    private static final int WINDOW_MS = WINDOW_SAMPLES * 1000 / SAMPLE_RATE;
+    private static final int CHUNK_SAMPLES = SAMPLE_RATE / 20; // 50ms per read
+    private static final int MAX_LAG_SAMPLES = SAMPLE_RATE; // skip ahead when more than 1s behind
+    private static final int RING_SAMPLES = SAMPLE_RATE * 4;
+
+    private volatile boolean running = false;
+    private Thread captureThread;
+    private Thread windowThread;
+    private AudioRingBuffer ring;
+    private int hopSamples;
+
+    // Wall clock at the first captured sample, to timestamp windows by their position
+    private volatile long captureStartTime;
+
+    private long windowsSubmitted = 0;
+    private long windowsSkipped = 0;
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        startForegroundNotification();
+
+        if (!running) {
+            start();
+        }
+        return START_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        stop();
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    private void start() {
+        hopSamples = getHopMs(getApplicationContext()) * SAMPLE_RATE / 1000;
+        ring = new AudioRingBuffer(RING_SAMPLES, CHUNK_SAMPLES);
+        running = true;
+
+        windowThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                windowLoop();
+            }
+        }, "YAMNet-Window");
+
+        captureThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+                captureLoop();
+            }
+        }, "YAMNet-Capture");
+
+        windowThread.start();
+        captureThread.start();
+
+        Log.d(TAG, "Continuous mode started, hop " + (hopSamples * 1000 / SAMPLE_RATE) + " ms");
+    }
+
+    private void stop() {
+        if (!running) return;
+        running = false;
+
+        try {
+            captureThread.join(1000);
+            LockSupport.unpark(windowThread);
+            windowThread.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Log.d(TAG, "Continuous mode stopped: " + windowsSubmitted + " windows submitted, " + windowsSkipped + " skipped");
+    }
+
+    /**
+     * Capture thread: one AudioRecord for the lifetime of the service, appending to the ring
+     */
+    private void captureLoop() {
+        int bufferSize = AudioRecord.getMinBufferSize(
+                SAMPLE_RATE,
+                AudioFormat.CHANNEL_IN_MONO,
+                AudioFormat.ENCODING_PCM_16BIT
+        );
+        bufferSize = Math.max(bufferSize, CHUNK_SAMPLES * 2 * 4);
+
+        AudioRecord recorder = new AudioRecord(
+                MediaRecorder.AudioSource.VOICE_RECOGNITION,
+                SAMPLE_RATE,
+                AudioFormat.CHANNEL_IN_MONO,
+                AudioFormat.ENCODING_PCM_16BIT,
+                bufferSize
+        );
+
+        if (recorder.getState() != AudioRecord.STATE_INITIALIZED) {
+            Log.e(TAG, "Recorder failed to initialize, stopping continuous mode");
+            recorder.release();
+            running = false;
+            LockSupport.unpark(windowThread);
+            stopSelf();
+            return;
+        }
+
+        short[] chunk = new short[CHUNK_SAMPLES];
+        recorder.startRecording();
+        captureStartTime = System.currentTimeMillis();
+
+        while (running) {
+            int samplesRead = recorder.read(chunk, 0, CHUNK_SAMPLES);
+            if (samplesRead > 0) {
+                ring.write(chunk, 0, samplesRead);
+                LockSupport.unpark(windowThread);
+            } else if (samplesRead < 0) {
+                Log.e(TAG, "AudioRecord read error " + samplesRead);
+                break;
+            }
+        }
+
+        recorder.stop();
+        recorder.release();
+    }
+
+    /**
+     * Windowing thread: hand one window per hop to the pipeline, skipping ahead when lagging
+     */
+    private void windowLoop() {
+        AnalysisPipeline pipeline = AnalysisPipeline.getInstance(getApplicationContext());
+        long next = 0;
+
+        while (running) {
+            long written = ring.getWritePosition();
+            if (written < next + WINDOW_SAMPLES) {
+                // Wait for the capture thread to deliver the rest of the window
+                LockSupport.parkNanos(10 * 1000 * 1000L);
+                continue;
+            }
+
+            // Stay in step with real time: never hand over a window older than MAX_LAG_SAMPLES
+            long latest = written - WINDOW_SAMPLES;
+            if (latest - next > MAX_LAG_SAMPLES || next < ring.getOldestPosition()) {
+                long skipped = (latest - next) / hopSamples;
+                next += skipped * hopSamples;
+                windowsSkipped += skipped;
+                Log.w(TAG, "Windowing behind real time, skipped " + skipped + " windows");
+            }
+
+            AudioSample sample = pipeline.obtainSample(WINDOW_SAMPLES);
+            if (!ring.read(next, sample.pcm, 0, WINDOW_SAMPLES)) {
+                pipeline.recycleSample(sample);
+                windowsSkipped++;
+                next += hopSamples;
+                continue;
+            }
+
+            // Overlapping windows are classified only; raw audio is not stored in continuous mode
+            sample.length = WINDOW_SAMPLES;
+            sample.timestamp = captureStartTime + (next + WINDOW_SAMPLES) * 1000 / SAMPLE_RATE;
+            sample.durationMs = WINDOW_MS;
+            // Windows keep their length; the budget only sets threads, the gate and write deferral
+            sample.budget = BudgetController.getInstance(getApplicationContext()).current();
+            if (pipeline.submit(sample)) {
+                windowsSubmitted++;
+            }
+            next += hopSamples;
+        }
+    }
+
+    private void startForegroundNotification() {
+        Notification.Builder builder;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+            manager.createNotificationChannel(new NotificationChannel(CHANNEL_ID, "YAMNet continuous analysis", NotificationManager.IMPORTANCE_LOW));
+            builder = new Notification.Builder(this, CHANNEL_ID);
+        } else {
+            builder = new Notification.Builder(this);
+        }
+
+        Notification notification = builder
+                .setContentTitle("AWARE: YAMNet")
+                .setContentText("Continuously analysing ambient sound")
+                .setSmallIcon(android.R.drawable.ic_btn_speak_now)
+                .setOngoing(true)
+                .build();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            startForeground(NOTIFICATION_ID, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_MICROPHONE);
+        } else {
+            startForeground(NOTIFICATION_ID, notification);
+        }
+    }
+
+    /**
+     * Hop between analysed windows in milliseconds (default = 480, YAMNet's own hop)
+     */
+    private static int getHopMs(Context context) {
+        try {
+            String value = Aware.getSetting(context, Settings.HOP_PLUGIN_YAMNET);
+            if (!value.isEmpty()) return Math.max(50, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Invalid hop setting, using default: " + e.getMessage());
+        }
+        return YamnetSession.HOP_MS;
+    }
+}
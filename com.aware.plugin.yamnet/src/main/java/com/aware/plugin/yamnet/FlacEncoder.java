@@ -0,0 +1,810 @@
+package com.aware.plugin.yamnet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+/**
+ * Streaming FLAC encoder for 16-bit mono PCM, in pure Java
+ * Samples are buffered into fixed-size blocks; every full block is encoded as one frame with the
+ * cheapest of a constant, verbatim, fixed (order 0-4) or LPC subframe, and Rice-coded residuals
+ * with a searched partition order. STREAMINFO (frame sizes, sample count, MD5) is patched on close.
+ * Encodes to a file, or into memory where one encoder can be reset() and reused for many clips.
+ * Not thread-safe: FlacStreamWriter drives one from a background thread.
+ */
+public class FlacEncoder {
+
+    public static final int MIN_LEVEL = 0;
+    public static final int MAX_LEVEL = 8;
+    public static final int DEFAULT_LEVEL = 5;
+
+    private static final int BITS_PER_SAMPLE = 16;
+    private static final int STREAMINFO_OFFSET = 8; // after "fLaC" and the metadata block header
+    private static final int STREAMINFO_LENGTH = 34;
+    private static final int MAX_RICE_PARAMETER = 14;
+    private static final int MAX_FIXED_ORDER = 4;
+
+    // Per compression level, like the reference encoder: block size, fixed order, LPC order, partition order
+    private static final int[][] LEVELS = {
+            {1152, 2, 0, 3},
+            {1152, 4, 0, 3},
+            {1152, 4, 0, 4},
+            {4096, 4, 6, 4},
+            {4096, 4, 8, 4},
+            {4096, 4, 8, 5},
+            {4096, 4, 8, 6},
+            {4096, 4, 12, 6},
+            {4096, 4, 12, 6},
+    };
+
+    private final RandomAccessFile file; // null when encoding into memory
+    private byte[] memory;
+    private int memoryLength;
+    private final int sampleRate;
+    private final int blockSize;
+    private final int maxFixedOrder;
+    private final int maxLpcOrder;
+    private final int maxPartitionOrder;
+    private final boolean exhaustiveLpc;
+
+    private final int[] block;
+    private int blockFill = 0;
+    private final byte[] md5Bytes;
+    private final MessageDigest md5;
+
+    private final BitWriter out = new BitWriter(8192);
+
+    // Candidate residuals and Rice parameters; the best fixed and LPC candidates are kept side by side
+    private final int[] fixedResidual;
+    private final int[] lpcResidual;
+    private final int[] scratchResidual;
+    private final int[] fixedParams;
+    private final int[] lpcParams;
+    private final int[] scratchParams;
+    private final long[] partitionSums;
+    private int fixedPartitionOrder;
+    private int lpcPartitionOrder;
+    private int scratchPartitionOrder;
+
+    // LPC analysis buffers
+    private final double[] window;
+    private final double[] windowed;
+    private final double[] autocorrelation;
+    private final double[][] lpCoefficients;
+    private final double[] lpErrors;
+    private final int[] qlpCoefficients;
+    private final int[] bestQlpCoefficients;
+    private int bestLpcOrder;
+    private int bestLpcShift;
+    private int bestLpcPrecision;
+
+    private long totalSamples = 0;
+    private long frameNumber = 0;
+    private int minFrameSize = Integer.MAX_VALUE;
+    private int maxFrameSize = 0;
+    private boolean closed = false;
+
+    /**
+     * Create the file and write the stream header
+     *
+     * @param level compression level, 0 (fastest) to 8 (smallest)
+     */
+    public FlacEncoder(File outputFile, int sampleRate, int level) throws IOException {
+        this(sampleRate, level, new RandomAccessFile(outputFile, "rw"));
+    }
+
+    /**
+     * Encode into memory; after close() the stream is read with writeTo() or toByteArray()
+     *
+     * @param level compression level, 0 (fastest) to 8 (smallest)
+     */
+    public FlacEncoder(int sampleRate, int level) throws IOException {
+        this(sampleRate, level, null);
+    }
+
+    private FlacEncoder(int sampleRate, int level, RandomAccessFile file) throws IOException {
+        this.file = file;
+        this.memory = file == null ? new byte[8192] : null;
+        int[] settings = LEVELS[Math.max(MIN_LEVEL, Math.min(MAX_LEVEL, level))];
+        this.sampleRate = sampleRate;
+        this.blockSize = settings[0];
+        this.maxFixedOrder = settings[1];
+        this.maxLpcOrder = settings[2];
+        this.maxPartitionOrder = settings[3];
+        this.exhaustiveLpc = level >= 7;
+
+        block = new int[blockSize];
+        md5Bytes = new byte[blockSize * 2];
+        fixedResidual = new int[blockSize];
+        lpcResidual = new int[blockSize];
+        scratchResidual = new int[blockSize];
+        fixedParams = new int[1 << maxPartitionOrder];
+        lpcParams = new int[1 << maxPartitionOrder];
+        scratchParams = new int[1 << maxPartitionOrder];
+        partitionSums = new long[1 << maxPartitionOrder];
+
+        window = new double[blockSize];
+        windowed = new double[blockSize];
+        autocorrelation = new double[maxLpcOrder + 1];
+        lpCoefficients = new double[maxLpcOrder][maxLpcOrder];
+        lpErrors = new double[maxLpcOrder];
+        qlpCoefficients = new int[maxLpcOrder];
+        bestQlpCoefficients = new int[maxLpcOrder];
+        tukeyWindow(window, blockSize);
+
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            if (file != null) file.close();
+            throw new IOException("MD5 unavailable", e);
+        }
+
+        if (file != null) {
+            file.setLength(0);
+        }
+        writeStreamHeader();
+    }
+
+    /**
+     * Start a new stream in memory, keeping the analysis buffers of the previous one
+     */
+    public void reset() throws IOException {
+        if (file != null) {
+            throw new IllegalStateException("Only an in-memory encoder can be reset");
+        }
+        blockFill = 0;
+        totalSamples = 0;
+        frameNumber = 0;
+        minFrameSize = Integer.MAX_VALUE;
+        maxFrameSize = 0;
+        closed = false;
+        md5.reset();
+        memoryLength = 0;
+        writeStreamHeader();
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Append 16-bit samples
+     */
+    public void write(short[] pcm, int offset, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            block[blockFill++] = pcm[offset + i];
+            if (blockFill == blockSize) {
+                encodeBlock();
+            }
+        }
+    }
+
+    /**
+     * Append 16-bit little-endian PCM bytes
+     */
+    public void write(byte[] pcm, int offset, int length) throws IOException {
+        for (int i = 0; i + 1 < length; i += 2) {
+            block[blockFill++] = (short) ((pcm[offset + i] & 0xFF) | (pcm[offset + i + 1] << 8));
+            if (blockFill == blockSize) {
+                encodeBlock();
+            }
+        }
+    }
+
+    /**
+     * Encode the last partial block, patch STREAMINFO and close the file
+     */
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            if (blockFill > 0) {
+                encodeBlock();
+            }
+            out.reset();
+            writeStreamInfo(out);
+            if (file != null) {
+                file.seek(STREAMINFO_OFFSET);
+                file.write(out.buffer(), 0, out.length());
+            } else {
+                System.arraycopy(out.buffer(), 0, memory, STREAMINFO_OFFSET, out.length());
+            }
+        } finally {
+            if (file != null) file.close();
+        }
+    }
+
+    /**
+     * Bytes written so far
+     */
+    public long getEncodedBytes() throws IOException {
+        return file != null ? file.getFilePointer() : memoryLength;
+    }
+
+    /**
+     * Copy a closed in-memory stream to out
+     */
+    public void writeTo(OutputStream output) throws IOException {
+        output.write(memory, 0, memoryLength);
+    }
+
+    /**
+     * A closed in-memory stream
+     */
+    public byte[] toByteArray() {
+        byte[] copy = new byte[memoryLength];
+        System.arraycopy(memory, 0, copy, 0, memoryLength);
+        return copy;
+    }
+
+    /**
+     * Checksum of a closed in-memory stream, e.g. for a stored ZIP entry
+     */
+    public long crc32() {
+        CRC32 crc = new CRC32();
+        crc.update(memory, 0, memoryLength);
+        return crc.getValue();
+    }
+
+    private void writeStreamHeader() throws IOException {
+        out.reset();
+        out.writeBits(0x664C6143, 32); // "fLaC"
+        out.writeBits(0x80, 8); // last metadata block, type 0 = STREAMINFO
+        out.writeBits(STREAMINFO_LENGTH, 24);
+        writeStreamInfo(out);
+        emit(out.buffer(), out.length());
+    }
+
+    private void emit(byte[] bytes, int length) throws IOException {
+        if (file != null) {
+            file.write(bytes, 0, length);
+            return;
+        }
+        if (memoryLength + length > memory.length) {
+            byte[] grown = new byte[Math.max(memory.length * 2, memoryLength + length)];
+            System.arraycopy(memory, 0, grown, 0, memoryLength);
+            memory = grown;
+        }
+        System.arraycopy(bytes, 0, memory, memoryLength, length);
+        memoryLength += length;
+    }
+
+    private void writeStreamInfo(BitWriter bits) {
+        bits.writeBits(blockSize, 16);
+        bits.writeBits(blockSize, 16);
+        bits.writeBits(minFrameSize == Integer.MAX_VALUE ? 0 : minFrameSize, 24);
+        bits.writeBits(maxFrameSize, 24);
+        bits.writeBits(sampleRate, 20);
+        bits.writeBits(0, 3); // channels - 1
+        bits.writeBits(BITS_PER_SAMPLE - 1, 5);
+        bits.writeBits((int) (totalSamples >>> 32) & 0xF, 4);
+        bits.writeBits((int) totalSamples, 32);
+        byte[] digest = closed ? md5.digest() : new byte[16];
+        for (byte b : digest) {
+            bits.writeBits(b & 0xFF, 8);
+        }
+    }
+
+    private void encodeBlock() throws IOException {
+        int n = blockFill;
+        for (int i = 0, j = 0; i < n; i++) {
+            md5Bytes[j++] = (byte) block[i];
+            md5Bytes[j++] = (byte) (block[i] >> 8);
+        }
+        md5.update(md5Bytes, 0, n * 2);
+
+        out.reset();
+        writeFrameHeader(n);
+        writeSubframe(n);
+        out.alignToByte();
+        out.writeBits(Crc.crc16(out.buffer(), 0, out.length()), 16);
+
+        int size = out.length();
+        emit(out.buffer(), size);
+        minFrameSize = Math.min(minFrameSize, size);
+        maxFrameSize = Math.max(maxFrameSize, size);
+
+        totalSamples += n;
+        frameNumber++;
+        blockFill = 0;
+    }
+
+    private void writeFrameHeader(int n) {
+        out.writeBits(0x3FFE, 14); // sync
+        out.writeBits(0, 1);
+        out.writeBits(0, 1); // fixed block size stream
+        out.writeBits(7, 4); // block size - 1 follows as 16 bits
+        out.writeBits(sampleRateCode(sampleRate), 4);
+        out.writeBits(0, 4); // mono
+        out.writeBits(4, 3); // 16 bits per sample
+        out.writeBits(0, 1);
+        writeUtf8(frameNumber);
+        out.writeBits(n - 1, 16);
+        out.writeBits(Crc.crc8(out.buffer(), 0, out.length()), 8);
+    }
+
+    private void writeUtf8(long value) {
+        if (value < 0x80) {
+            out.writeBits((int) value, 8);
+            return;
+        }
+        int extra = value < 0x800 ? 1 : value < 0x10000 ? 2 : value < 0x200000 ? 3 : value < 0x4000000 ? 4 : 5;
+        int lead = (0xFF00 >> (extra + 1)) & 0xFF;
+        out.writeBits(lead | (int) (value >>> (6 * extra)), 8);
+        for (int i = extra - 1; i >= 0; i--) {
+            out.writeBits(0x80 | (int) ((value >>> (6 * i)) & 0x3F), 8);
+        }
+    }
+
+    private static int sampleRateCode(int rate) {
+        switch (rate) {
+            case 8000: return 4;
+            case 16000: return 5;
+            case 22050: return 6;
+            case 24000: return 7;
+            case 32000: return 8;
+            case 44100: return 9;
+            case 48000: return 10;
+            case 96000: return 11;
+            default: return 0; // from STREAMINFO
+        }
+    }
+
+    private void writeSubframe(int n) {
+        boolean constant = true;
+        for (int i = 1; i < n && constant; i++) {
+            constant = block[i] == block[0];
+        }
+        if (constant) {
+            out.writeBits(0, 8); // type CONSTANT, no wasted bits
+            out.writeBits(block[0], BITS_PER_SAMPLE);
+            return;
+        }
+
+        long verbatimBits = (long) n * BITS_PER_SAMPLE;
+
+        int fixedOrder = chooseFixedOrder(n);
+        long fixedBits = fixedOrder * BITS_PER_SAMPLE
+                + encodeResidualCost(fixedResidual, n, fixedOrder, fixedParams);
+        fixedPartitionOrder = scratchPartitionOrder;
+
+        long lpcBits = Long.MAX_VALUE;
+        if (maxLpcOrder > 0 && n > maxLpcOrder * 4) {
+            lpcBits = chooseLpc(n);
+        }
+
+        if (verbatimBits <= fixedBits && verbatimBits <= lpcBits) {
+            out.writeBits(0x02, 8); // type VERBATIM
+            for (int i = 0; i < n; i++) {
+                out.writeBits(block[i], BITS_PER_SAMPLE);
+            }
+        } else if (fixedBits <= lpcBits) {
+            out.writeBits((0x08 | fixedOrder) << 1, 8); // type FIXED
+            for (int i = 0; i < fixedOrder; i++) {
+                out.writeBits(block[i], BITS_PER_SAMPLE);
+            }
+            writeResidual(fixedResidual, n, fixedOrder, fixedParams, fixedPartitionOrder);
+        } else {
+            out.writeBits((0x20 | (bestLpcOrder - 1)) << 1, 8); // type LPC
+            for (int i = 0; i < bestLpcOrder; i++) {
+                out.writeBits(block[i], BITS_PER_SAMPLE);
+            }
+            out.writeBits(bestLpcPrecision - 1, 4);
+            out.writeBits(bestLpcShift, 5);
+            for (int i = 0; i < bestLpcOrder; i++) {
+                out.writeBits(bestQlpCoefficients[i], bestLpcPrecision);
+            }
+            writeResidual(lpcResidual, n, bestLpcOrder, lpcParams, lpcPartitionOrder);
+        }
+    }
+
+    /**
+     * Pick the fixed predictor order with the smallest total absolute residual, leaving its residual in fixedResidual
+     */
+    private int chooseFixedOrder(int n) {
+        int maxOrder = Math.min(maxFixedOrder, Math.min(MAX_FIXED_ORDER, n - 1));
+        long[] totals = new long[MAX_FIXED_ORDER + 1];
+        for (int i = MAX_FIXED_ORDER; i < n; i++) {
+            int x0 = block[i], x1 = block[i - 1], x2 = block[i - 2], x3 = block[i - 3], x4 = block[i - 4];
+            totals[0] += Math.abs(x0);
+            totals[1] += Math.abs(x0 - x1);
+            totals[2] += Math.abs(x0 - 2 * x1 + x2);
+            totals[3] += Math.abs(x0 - 3 * x1 + 3 * x2 - x3);
+            totals[4] += Math.abs(x0 - 4 * x1 + 6 * x2 - 4 * x3 + x4);
+        }
+        int order = 0;
+        for (int o = 1; o <= maxOrder; o++) {
+            if (totals[o] < totals[order]) order = o;
+        }
+
+        for (int i = order; i < n; i++) {
+            switch (order) {
+                case 0: fixedResidual[i] = block[i]; break;
+                case 1: fixedResidual[i] = block[i] - block[i - 1]; break;
+                case 2: fixedResidual[i] = block[i] - 2 * block[i - 1] + block[i - 2]; break;
+                case 3: fixedResidual[i] = block[i] - 3 * block[i - 1] + 3 * block[i - 2] - block[i - 3]; break;
+                default: fixedResidual[i] = block[i] - 4 * block[i - 1] + 6 * block[i - 2] - 4 * block[i - 3] + block[i - 4]; break;
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Windowed autocorrelation, Levinson-Durbin and coefficient quantisation; leaves the best
+     * candidate in lpcResidual / lpcParams / bestQlpCoefficients and returns its size in bits
+     */
+    private long chooseLpc(int n) {
+        double[] w = window;
+        if (n != blockSize) {
+            w = new double[n];
+            tukeyWindow(w, n);
+        }
+        for (int i = 0; i < n; i++) {
+            windowed[i] = block[i] * w[i];
+        }
+        for (int lag = 0; lag <= maxLpcOrder; lag++) {
+            double sum = 0;
+            for (int i = lag; i < n; i++) {
+                sum += windowed[i] * windowed[i - lag];
+            }
+            autocorrelation[lag] = sum;
+        }
+        if (autocorrelation[0] == 0) return Long.MAX_VALUE;
+
+        int orders = levinsonDurbin();
+        int precision = qlpPrecision(n);
+
+        int firstOrder = 1;
+        int lastOrder = orders;
+        if (!exhaustiveLpc) {
+            // Estimate the residual size from each order's prediction error and only encode the best
+            double bestEstimate = Double.MAX_VALUE;
+            int estimatedOrder = 1;
+            for (int order = 1; order <= orders; order++) {
+                double bitsPerSample = lpErrors[order - 1] > 0
+                        ? Math.max(0, 0.5 * Math.log(0.5 / n * lpErrors[order - 1]) / Math.log(2)) : 0;
+                double estimate = bitsPerSample * (n - order) + order * (BITS_PER_SAMPLE + precision);
+                if (estimate < bestEstimate) {
+                    bestEstimate = estimate;
+                    estimatedOrder = order;
+                }
+            }
+            firstOrder = estimatedOrder;
+            lastOrder = estimatedOrder;
+        }
+
+        long bestBits = Long.MAX_VALUE;
+        for (int order = firstOrder; order <= lastOrder; order++) {
+            int shift = quantize(lpCoefficients[order - 1], order, precision);
+            if (shift < 0) continue;
+
+            if (!lpcResidual(n, order, shift)) continue;
+            long bits = order * BITS_PER_SAMPLE + 4 + 5 + (long) order * precision
+                    + encodeResidualCost(scratchResidual, n, order, scratchParams);
+            if (bits < bestBits) {
+                bestBits = bits;
+                bestLpcOrder = order;
+                bestLpcShift = shift;
+                bestLpcPrecision = precision;
+                System.arraycopy(qlpCoefficients, 0, bestQlpCoefficients, 0, order);
+                System.arraycopy(scratchResidual, order, lpcResidual, order, n - order);
+                System.arraycopy(scratchParams, 0, lpcParams, 0, 1 << scratchPartitionOrder);
+                lpcPartitionOrder = scratchPartitionOrder;
+            }
+        }
+        return bestBits;
+    }
+
+    /**
+     * @return number of usable orders
+     */
+    private int levinsonDurbin() {
+        double[] lpc = new double[maxLpcOrder];
+        double error = autocorrelation[0];
+        for (int i = 0; i < maxLpcOrder; i++) {
+            double r = -autocorrelation[i + 1];
+            for (int j = 0; j < i; j++) {
+                r -= lpc[j] * autocorrelation[i - j];
+            }
+            r /= error;
+
+            lpc[i] = r;
+            int j;
+            for (j = 0; j < (i >> 1); j++) {
+                double tmp = lpc[j];
+                lpc[j] += r * lpc[i - 1 - j];
+                lpc[i - 1 - j] += r * tmp;
+            }
+            if ((i & 1) != 0) {
+                lpc[j] += lpc[j] * r;
+            }
+            error *= (1.0 - r * r);
+
+            for (j = 0; j <= i; j++) {
+                lpCoefficients[i][j] = -lpc[j];
+            }
+            lpErrors[i] = error;
+            if (error <= 0) {
+                return i + 1;
+            }
+        }
+        return maxLpcOrder;
+    }
+
+    /**
+     * Quantise coefficients to the given precision with error feedback
+     *
+     * @return the shift, or -1 if the coefficients cannot be represented
+     */
+    private int quantize(double[] coefficients, int order, int precision) {
+        int magnitudeBits = precision - 1;
+        int qmax = (1 << magnitudeBits) - 1;
+        int qmin = -(1 << magnitudeBits);
+
+        double cmax = 0;
+        for (int i = 0; i < order; i++) {
+            cmax = Math.max(cmax, Math.abs(coefficients[i]));
+        }
+        if (cmax <= 0) return -1;
+
+        int shift = magnitudeBits - Math.getExponent(cmax) - 1;
+        if (shift > 15) shift = 15;
+        if (shift < 0) return -1;
+
+        double error = 0;
+        for (int i = 0; i < order; i++) {
+            error += coefficients[i] * (1 << shift);
+            long q = Math.round(error);
+            if (q > qmax) q = qmax;
+            else if (q < qmin) q = qmin;
+            error -= q;
+            qlpCoefficients[i] = (int) q;
+        }
+        return shift;
+    }
+
+    /**
+     * Residual of the quantised predictor into scratchResidual
+     *
+     * @return false if a residual does not fit in 32 bits
+     */
+    private boolean lpcResidual(int n, int order, int shift) {
+        for (int i = order; i < n; i++) {
+            long sum = 0;
+            for (int j = 0; j < order; j++) {
+                sum += (long) qlpCoefficients[j] * block[i - 1 - j];
+            }
+            long residual = block[i] - (sum >> shift);
+            if (residual > Integer.MAX_VALUE || residual < Integer.MIN_VALUE) return false;
+            scratchResidual[i] = (int) residual;
+        }
+        return true;
+    }
+
+    /**
+     * Choose the Rice partition order and parameters for residual[predictorOrder, n)
+     *
+     * @return estimated size of the residual section in bits; the order is left in scratchPartitionOrder
+     */
+    private long encodeResidualCost(int[] residual, int n, int predictorOrder, int[] params) {
+        int maxOrder = maxPartitionOrder;
+        while (maxOrder > 0 && ((n >> maxOrder) << maxOrder != n || (n >> maxOrder) < predictorOrder)) {
+            maxOrder--;
+        }
+
+        // Sums of folded residuals per partition at the finest order, merged pairwise for coarser ones
+        int partitions = 1 << maxOrder;
+        int partitionSize = n >> maxOrder;
+        for (int p = 0, i = predictorOrder; p < partitions; p++) {
+            int end = (p + 1) * partitionSize;
+            long sum = 0;
+            for (; i < end; i++) {
+                int r = residual[i];
+                sum += (r << 1) ^ (r >> 31);
+            }
+            partitionSums[p] = sum;
+        }
+
+        long bestBits = Long.MAX_VALUE;
+        int bestOrder = 0;
+        for (int order = maxOrder; order >= 0; order--) {
+            int count = 1 << order;
+            int size = n >> order;
+            long bits = 6; // method and partition order
+            for (int p = 0; p < count; p++) {
+                int samples = p == 0 ? size - predictorOrder : size;
+                bits += 4 + riceBits(partitionSums[p], samples);
+            }
+            if (bits < bestBits) {
+                bestBits = bits;
+                bestOrder = order;
+                for (int p = 0; p < count; p++) {
+                    int samples = p == 0 ? size - predictorOrder : size;
+                    params[p] = riceParameter(partitionSums[p], samples);
+                }
+            }
+            // Merge pairs for the next coarser order
+            for (int p = 0; p < count / 2; p++) {
+                partitionSums[p] = partitionSums[2 * p] + partitionSums[2 * p + 1];
+            }
+        }
+        scratchPartitionOrder = bestOrder;
+        return bestBits;
+    }
+
+    private static int riceParameter(long sum, int samples) {
+        int best = 0;
+        long bestBits = Long.MAX_VALUE;
+        for (int k = 0; k <= MAX_RICE_PARAMETER; k++) {
+            long bits = (long) samples * (k + 1) + (sum >> k);
+            if (bits < bestBits) {
+                bestBits = bits;
+                best = k;
+            }
+        }
+        return best;
+    }
+
+    private static long riceBits(long sum, int samples) {
+        int k = riceParameter(sum, samples);
+        return (long) samples * (k + 1) + (sum >> k);
+    }
+
+    private void writeResidual(int[] residual, int n, int predictorOrder, int[] params, int partitionOrder) {
+        out.writeBits(0, 2); // Rice coding with 4-bit parameters
+        out.writeBits(partitionOrder, 4);
+
+        int partitions = 1 << partitionOrder;
+        int size = n >> partitionOrder;
+        int i = predictorOrder;
+        for (int p = 0; p < partitions; p++) {
+            int k = params[p];
+            out.writeBits(k, 4);
+            int end = (p + 1) * size;
+            for (; i < end; i++) {
+                int r = residual[i];
+                out.writeRice((r << 1) ^ (r >> 31), k);
+            }
+        }
+    }
+
+    /**
+     * Quantised coefficient precision by block size, as in the reference encoder
+     */
+    private static int qlpPrecision(int n) {
+        if (n <= 192) return 7;
+        if (n <= 384) return 8;
+        if (n <= 576) return 9;
+        if (n <= 1152) return 10;
+        if (n <= 2304) return 11;
+        if (n <= 4608) return 12;
+        return 13;
+    }
+
+    /**
+     * Tukey window with p = 0.5
+     */
+    private static void tukeyWindow(double[] w, int n) {
+        int taper = (int) (0.25 * n);
+        for (int i = 0; i < n; i++) {
+            if (i < taper) {
+                w[i] = 0.5 - 0.5 * Math.cos(Math.PI * i / taper);
+            } else if (i >= n - taper) {
+                w[i] = 0.5 - 0.5 * Math.cos(Math.PI * (n - 1 - i) / taper);
+            } else {
+                w[i] = 1.0;
+            }
+        }
+    }
+
+    /**
+     * MSB-first bit writer over a growable byte array
+     */
+    static final class BitWriter {
+        private byte[] buffer;
+        private int length;
+        private long accumulator;
+        private int bits;
+
+        BitWriter(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void reset() {
+            length = 0;
+            accumulator = 0;
+            bits = 0;
+        }
+
+        byte[] buffer() {
+            return buffer;
+        }
+
+        /**
+         * Bytes completed so far
+         */
+        int length() {
+            return length;
+        }
+
+        /**
+         * Write the low n bits of value, n <= 32
+         */
+        void writeBits(int value, int n) {
+            if (n == 0) return;
+            accumulator = (accumulator << n) | (value & (0xFFFFFFFFL >>> (32 - n)));
+            bits += n;
+            while (bits >= 8) {
+                bits -= 8;
+                if (length == buffer.length) {
+                    byte[] grown = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, grown, 0, length);
+                    buffer = grown;
+                }
+                buffer[length++] = (byte) (accumulator >>> bits);
+            }
+        }
+
+        /**
+         * Rice code: quotient in unary (zeros then a one), then the k low bits
+         */
+        void writeRice(int value, int k) {
+            int quotient = value >>> k;
+            while (quotient >= 32) {
+                writeBits(0, 32);
+                quotient -= 32;
+            }
+            if (quotient > 0) {
+                writeBits(0, quotient);
+            }
+            writeBits((1 << k) | (value & ((1 << k) - 1)), k + 1);
+        }
+
+        void alignToByte() {
+            if (bits > 0) {
+                writeBits(0, 8 - bits);
+            }
+        }
+    }
+
+    /**
+     * CRC-8 (x^8 + x^2 + x + 1) over frame headers and CRC-16 (x^16 + x^15 + x^2 + 1) over frames
+     */
+    static final class Crc {
+        private static final int[] CRC8 = new int[256];
+        private static final int[] CRC16 = new int[256];
+
+        static {
+            for (int i = 0; i < 256; i++) {
+                int crc8 = i;
+                int crc16 = i << 8;
+                for (int b = 0; b < 8; b++) {
+                    crc8 = (crc8 & 0x80) != 0 ? (crc8 << 1) ^ 0x07 : crc8 << 1;
+                    crc16 = (crc16 & 0x8000) != 0 ? (crc16 << 1) ^ 0x8005 : crc16 << 1;
+                }
+                CRC8[i] = crc8 & 0xFF;
+                CRC16[i] = crc16 & 0xFFFF;
+            }
+        }
+
+        static int crc8(byte[] data, int offset, int length) {
+            int crc = 0;
+            for (int i = offset; i < offset + length; i++) {
+                crc = CRC8[(crc ^ data[i]) & 0xFF];
+            }
+            return crc;
+        }
+
+        static int crc16(byte[] data, int offset, int length) {
+            int crc = 0;
+            for (int i = offset; i < offset + length; i++) {
+                crc = ((crc << 8) ^ CRC16[((crc >> 8) ^ data[i]) & 0xFF]) & 0xFFFF;
+            }
+            return crc;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.aware.plugin.yamnet;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Encodes a recording to FLAC on a background thread while it is being captured
+ * The capture loop hands over each chunk as soon as it is read; the chunk is copied, so the
+ * caller may reuse its buffer. close() waits for the encoder to drain and finish the file.
+ */
+public class FlacStreamWriter implements AudioFileWriter {
+    private static final String TAG = "AWARE::YAMNet::Flac";
+
+    private static final short[] END = new short[0];
+
+    private final File outputFile;
+    private final FlacEncoder encoder;
+    private final LinkedBlockingQueue<short[]> chunks = new LinkedBlockingQueue<short[]>();
+    private final Thread thread;
+    private volatile IOException error;
+    private long samples;
+
+    public FlacStreamWriter(File outputFile, int sampleRate, int level) throws IOException {
+        this.outputFile = outputFile;
+        this.encoder = new FlacEncoder(outputFile, sampleRate, level);
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                encode();
+            }
+        }, "YAMNet-Flac");
+        thread.start();
+    }
+
+    /**
+     * Queue samples for encoding
+     */
+    @Override
+    public void write(short[] pcm, int offset, int length) {
+        if (length <= 0 || error != null) return;
+        short[] chunk = new short[length];
+        System.arraycopy(pcm, offset, chunk, 0, length);
+        chunks.offer(chunk);
+        samples += length;
+    }
+
+    /**
+     * Encode what is left, write the final STREAMINFO and close the file
+     *
+     * @throws IOException if encoding failed at any point; the partial file is deleted
+     */
+    @Override
+    public void close() throws IOException {
+        chunks.offer(END);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while finishing " + outputFile.getName());
+        }
+
+        if (error != null) {
+            outputFile.delete();
+            throw error;
+        }
+    }
+
+    @Override
+    public File getFile() {
+        return outputFile;
+    }
+
+    /**
+     * Number of samples queued so far
+     */
+    public long getSampleCount() {
+        return samples;
+    }
+
+    private void encode() {
+        try {
+            while (true) {
+                short[] chunk = chunks.take();
+                if (chunk == END) break;
+                encoder.write(chunk, 0, chunk.length);
+            }
+        } catch (InterruptedException e) {
+            error = new IOException("FLAC encoding interrupted");
+        } catch (IOException e) {
+            Log.e(TAG, "Error encoding " + outputFile.getName() + ": " + e.getMessage());
+            error = e;
+        }
+
+        try {
+            encoder.close();
+        } catch (IOException e) {
+            if (error == null) error = e;
+        }
+    }
+}
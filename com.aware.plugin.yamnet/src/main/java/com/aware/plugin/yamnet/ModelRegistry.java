@@ -0,0 +1,456 @@
+package com.aware.plugin.yamnet;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import com.aware.Aware;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * YAMNet models the session can run
+ * Bundled variants are selected by model_variant_plugin_yamnet: float32 is the bundled
+ * yamnet.tflite, the quantized variants are used when their asset is packaged with the app.
+ * Installed models live in files/models/<version>/ (model.tflite, labels.txt and manifest.json
+ * with their SHA-256) and are selected by model_version_plugin_yamnet; they are memory-mapped
+ * from app storage and verified against the manifest before use. A model that is missing or
+ * fails verification falls back to the bundled selection.
+ */
+public class ModelRegistry {
+    private static final String TAG = "AWARE::YAMNet::Models";
+
+    public static final String FLOAT32 = "float32";
+    public static final String INT8_DYNAMIC = "int8_dynamic";
+    public static final String INT8_FULL = "int8_full";
+
+    private static final String MODELS_DIRECTORY = "models";
+    private static final String MODEL_FILE = "model.tflite";
+    private static final String LABELS_FILE = "labels.txt";
+    private static final String MANIFEST_FILE = "manifest.json";
+
+    public static final class Variant {
+        public final String name;
+        /** Model asset of a bundled variant, null for installed models */
+        public final String asset;
+        public final String description;
+        /** Stamped on the rows analysed with this model: the variant name, or the installed version */
+        public final String version;
+        /** Directory of an installed model, null for bundled variants */
+        final File directory;
+        /** Expected SHA-256 (hex) of an installed model and its labels */
+        final String sha256;
+        final String labelsSha256;
+
+        Variant(String name, String asset, String description) {
+            this(name, asset, description, name, null, null, null);
+        }
+
+        private Variant(String name, String asset, String description, String version, File directory,
+                        String sha256, String labelsSha256) {
+            this.name = name;
+            this.asset = asset;
+            this.description = description;
+            this.version = version;
+            this.directory = directory;
+            this.sha256 = sha256;
+            this.labelsSha256 = labelsSha256;
+        }
+
+        public boolean isInstalled() {
+            return directory != null;
+        }
+
+        @Override
+        public String toString() {
+            return isInstalled() ? "installed " + version : name + " (" + asset + ")";
+        }
+    }
+
+    private static final List<Variant> VARIANTS = Collections.unmodifiableList(Arrays.asList(
+            new Variant(FLOAT32, YamnetSession.MODEL_FILE, "float32 weights and activations"),
+            new Variant(INT8_DYNAMIC, "yamnet_int8_dynamic.tflite", "int8 weights, float activations (dynamic-range quantization)"),
+            new Variant(INT8_FULL, "yamnet_int8_full.tflite", "int8 weights and activations (full-integer quantization)")
+    ));
+
+    // Root asset names, listed once; the APK's assets do not change while it runs
+    private static Set<String> assets;
+    // Installed models by version, read from their manifest once; installs never change a version
+    private static final HashMap<String, Variant> installed = new HashMap<>();
+    // Installed versions that failed verification in this process
+    private static final Set<String> rejected = new HashSet<>();
+    // Selection problems already logged, so they are not repeated for every sample
+    private static final Set<String> warned = new HashSet<>();
+
+    private ModelRegistry() {}
+
+    /**
+     * Every bundled variant, float32 first
+     */
+    public static List<Variant> all() {
+        return VARIANTS;
+    }
+
+    /**
+     * The bundled variant of this name, or null
+     */
+    public static Variant get(String name) {
+        for (Variant variant : VARIANTS) {
+            if (variant.name.equals(name)) return variant;
+        }
+        return null;
+    }
+
+    public static Variant getDefault() {
+        return VARIANTS.get(0);
+    }
+
+    /**
+     * Whether the variant's model file is packaged with the app, or installed and not rejected
+     */
+    public static boolean isAvailable(Context context, Variant variant) {
+        if (variant.isInstalled()) {
+            synchronized (ModelRegistry.class) {
+                return !rejected.contains(variant.version) && new File(variant.directory, MODEL_FILE).isFile();
+            }
+        }
+        return listAssets(context).contains(variant.asset);
+    }
+
+    /**
+     * Bundled variants whose model file is packaged with the app, float32 first
+     */
+    public static List<Variant> available(Context context) {
+        List<Variant> available = new ArrayList<>();
+        for (Variant variant : VARIANTS) {
+            if (isAvailable(context, variant)) available.add(variant);
+        }
+        return available;
+    }
+
+    /**
+     * The installed model of model_version_plugin_yamnet if set and usable, otherwise the bundled
+     * variant chosen by model_variant_plugin_yamnet, otherwise float32
+     */
+    public static Variant selected(Context context) {
+        String version = Aware.getSetting(context, Settings.MODEL_VERSION_PLUGIN_YAMNET);
+        if (!version.isEmpty()) {
+            Variant model = getInstalled(context, version);
+            if (model != null && isAvailable(context, model)) return model;
+            warnOnce("version " + version, "Model version " + version + " is not installed or failed verification, using the bundled model");
+        }
+        return selectedBundled(context);
+    }
+
+    /**
+     * The bundled variant chosen by model_variant_plugin_yamnet, or float32 when it is unknown or not packaged
+     */
+    public static Variant selectedBundled(Context context) {
+        String name = Aware.getSetting(context, Settings.MODEL_VARIANT_PLUGIN_YAMNET);
+        if (name.isEmpty() || FLOAT32.equals(name)) return getDefault();
+
+        Variant variant = get(name);
+        if (variant == null) {
+            warnOnce("variant " + name, "Unknown model variant " + name + ", using " + FLOAT32);
+            return getDefault();
+        }
+        if (!isAvailable(context, variant)) {
+            warnOnce("variant " + name, "Model variant " + name + " is not packaged (" + variant.asset + "), using " + FLOAT32);
+            return getDefault();
+        }
+        return variant;
+    }
+
+    /**
+     * Models installed in app storage, in version order
+     */
+    public static List<Variant> installed(Context context) {
+        List<Variant> models = new ArrayList<>();
+        String[] versions = modelsDirectory(context).list();
+        if (versions == null) return models;
+        Arrays.sort(versions);
+        for (String version : versions) {
+            if (version.startsWith(".")) continue;
+            Variant model = getInstalled(context, version);
+            if (model != null) models.add(model);
+        }
+        return models;
+    }
+
+    /**
+     * The installed model of this version, or null
+     */
+    public static synchronized Variant getInstalled(Context context, String version) {
+        Variant model = installed.get(version);
+        if (model != null) return model;
+
+        File directory = new File(modelsDirectory(context), version);
+        File manifest = new File(directory, MANIFEST_FILE);
+        if (!manifest.isFile()) return null;
+        try {
+            JSONObject json = new JSONObject(new String(readFully(manifest), "UTF-8"));
+            model = new Variant(json.optString("variant", "installed"), null, json.optString("description", ""),
+                    version, directory, json.getString("sha256"), json.optString("labels_sha256", null));
+            installed.put(version, model);
+            return model;
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Unreadable manifest for model " + version + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Install a model and its labels as a new version. The files are copied into a temporary
+     * directory, checked against the expected SHA-256 and a full label list, and the directory is
+     * then renamed into place, so a version is either complete or absent. Installing a version
+     * that exists with the same checksum does nothing. Select it with model_version_plugin_yamnet;
+     * the session switches to it between two inferences.
+     *
+     * @param sha256 expected SHA-256 of the model file, in hex
+     */
+    public static synchronized Variant install(Context context, File model, File labels, String version, String sha256)
+            throws IOException {
+        if (!version.matches("[A-Za-z0-9._-]+") || version.startsWith(".") || get(version) != null) {
+            throw new IOException("Invalid model version " + version);
+        }
+
+        Variant existing = getInstalled(context, version);
+        if (existing != null) {
+            if (existing.sha256.equalsIgnoreCase(sha256)) return existing;
+            throw new IOException("Model version " + version + " is already installed with a different checksum");
+        }
+
+        File root = modelsDirectory(context);
+        File staging = new File(root, "." + version + ".tmp");
+        delete(staging);
+        if (!staging.mkdirs()) throw new IOException("Could not create " + staging);
+
+        try {
+            String modelHash = copy(model, new File(staging, MODEL_FILE));
+            if (!modelHash.equalsIgnoreCase(sha256)) {
+                throw new IOException("Checksum mismatch for model " + version + ": expected " + sha256 + ", got " + modelHash);
+            }
+            File stagedLabels = new File(staging, LABELS_FILE);
+            String labelsHash = copy(labels, stagedLabels);
+            readLabels(stagedLabels);
+
+            JSONObject manifest = new JSONObject();
+            manifest.put("version", version);
+            manifest.put("sha256", modelHash);
+            manifest.put("labels_sha256", labelsHash);
+            manifest.put("installed", System.currentTimeMillis());
+            OutputStream out = new FileOutputStream(new File(staging, MANIFEST_FILE));
+            try {
+                out.write(manifest.toString().getBytes("UTF-8"));
+                out.flush();
+            } finally {
+                out.close();
+            }
+
+            File target = new File(root, version);
+            if (!staging.renameTo(target)) throw new IOException("Could not move model " + version + " into place");
+        } catch (IOException | JSONException e) {
+            delete(staging);
+            throw e instanceof IOException ? (IOException) e : new IOException(e.getMessage());
+        }
+
+        Log.d(TAG, "Installed model " + version + " (sha256 " + sha256 + ")");
+        return getInstalled(context, version);
+    }
+
+    /**
+     * Memory-map the variant's model. An installed model is hashed through the mapping, so the
+     * bytes verified are the bytes the interpreter reads; a mismatch rejects the version.
+     */
+    static MappedByteBuffer map(Context context, Variant variant) throws IOException {
+        if (!variant.isInstalled()) return YamnetSession.loadModelFile(context, variant.asset);
+
+        RandomAccessFile file = new RandomAccessFile(new File(variant.directory, MODEL_FILE), "r");
+        MappedByteBuffer buffer;
+        try {
+            FileChannel channel = file.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            // The mapping stays valid after the file is closed
+            file.close();
+        }
+
+        MessageDigest digest = sha256();
+        digest.update(buffer.duplicate());
+        String hash = hex(digest.digest());
+        if (!hash.equalsIgnoreCase(variant.sha256)) {
+            reject(variant, "model checksum " + hash + " does not match " + variant.sha256);
+            throw new IOException("Model " + variant.version + " failed verification");
+        }
+        return buffer;
+    }
+
+    /**
+     * Size of the variant's model file in bytes, or -1 if it cannot be read
+     */
+    static long modelLength(Context context, Variant variant) {
+        if (variant.isInstalled()) return new File(variant.directory, MODEL_FILE).length();
+        try {
+            AssetFileDescriptor descriptor = context.getAssets().openFd(variant.asset);
+            try {
+                return descriptor.getLength();
+            } finally {
+                descriptor.close();
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * The labels versioned with the variant: the bundled label file, or the installed model's own
+     */
+    static List<String> labels(Context context, Variant variant) throws IOException {
+        if (!variant.isInstalled()) return YamnetSession.loadLabels(context);
+
+        File file = new File(variant.directory, LABELS_FILE);
+        if (variant.labelsSha256 != null) {
+            MessageDigest digest = sha256();
+            digest.update(readFully(file));
+            String hash = hex(digest.digest());
+            if (!hash.equalsIgnoreCase(variant.labelsSha256)) {
+                reject(variant, "labels checksum " + hash + " does not match " + variant.labelsSha256);
+                throw new IOException("Labels of model " + variant.version + " failed verification");
+            }
+        }
+        return readLabels(file);
+    }
+
+    /**
+     * Stop using an installed version for the rest of the process
+     */
+    static synchronized void reject(Variant variant, String reason) {
+        if (variant.isInstalled() && rejected.add(variant.version)) {
+            Log.e(TAG, "Rejected model " + variant.version + ": " + reason);
+        }
+    }
+
+    private static List<String> readLabels(File file) throws IOException {
+        List<String> labels = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                labels.add(line.trim());
+            }
+        } finally {
+            reader.close();
+        }
+        if (labels.size() != YamnetSession.NUM_CLASSES) {
+            throw new IOException(file.getName() + " has " + labels.size() + " labels, expected " + YamnetSession.NUM_CLASSES);
+        }
+        return Collections.unmodifiableList(labels);
+    }
+
+    /**
+     * Copy a file and return the SHA-256 of what was written
+     */
+    private static String copy(File source, File target) throws IOException {
+        MessageDigest digest = sha256();
+        InputStream in = new FileInputStream(source);
+        try {
+            FileOutputStream out = new FileOutputStream(target);
+            try {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, read);
+                    digest.update(buffer, 0, read);
+                }
+                out.flush();
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        return hex(digest.digest());
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static MessageDigest sha256() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 unavailable");
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format(Locale.US, "%02x", b & 0xFF));
+        }
+        return hex.toString();
+    }
+
+    private static File modelsDirectory(Context context) {
+        return new File(context.getFilesDir(), MODELS_DIRECTORY);
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static synchronized void warnOnce(String key, String message) {
+        if (warned.add(key)) Log.w(TAG, message);
+    }
+
+    private static synchronized Set<String> listAssets(Context context) {
+        if (assets == null) {
+            assets = new HashSet<>();
+            try {
+                String[] names = context.getAssets().list("");
+                if (names != null) assets.addAll(Arrays.asList(names));
+            } catch (IOException e) {
+                Log.e(TAG, "Could not list assets: " + e.getMessage());
+            }
+        }
+        return assets;
+    }
+}
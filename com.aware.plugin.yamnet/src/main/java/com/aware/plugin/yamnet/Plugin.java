@@ -4,6 +4,7 @@ import android.Manifest;
 import android.accounts.Account;
 import android.content.ContentResolver;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.Intent;
 import android.content.SyncRequest;
 import android.os.Build;
@@ -25,6 +26,7 @@ public class Plugin extends Aware_Plugin {
 
     public static final String SCHEDULER_PLUGIN_YAMNET = "SCHEDULER_PLUGIN_YAMNET";
     public static final String SCHEDULER_MIGRATION = "SCHEDULER_MIGRATION";
+    private static final long MIGRATION_INTERVAL_MINUTES = 60;
     private static String TAG = "AWARE::YAMNet";
     private static final int PERMISSION_REQUEST_CODE = 123;
     private static final String PLUGIN_PACKAGE_NAME = "com.aware.plugin.yamnet";
@@ -70,7 +72,12 @@ public class Plugin extends Aware_Plugin {
 
             initializeSettings();
 
-            setupScheduler();
+            if (Aware.getSetting(this, Settings.CONTINUOUS_PLUGIN_YAMNET).equals("true")) {
+                startContinuousMode();
+            } else {
+                stopContinuousMode();
+                setupScheduler();
+            }
             
             setupMigrationScheduler();
 
@@ -86,6 +93,9 @@ public class Plugin extends Aware_Plugin {
         if (Aware.getSetting(getApplicationContext(), Settings.STATUS_PLUGIN_YAMNET).isEmpty()) {
             Aware.setSetting(getApplicationContext(), Settings.STATUS_PLUGIN_YAMNET, true);
         }
+
+        // Load the model in the background so the first sample finds a warm interpreter
+        YamnetSession.getInstance(getApplicationContext()).warmUpAsync();
     }
 
     private void initializeSettings() {
@@ -95,32 +105,78 @@ public class Plugin extends Aware_Plugin {
     }
 
     private void setupScheduler() {
-        try {
-            Scheduler.Schedule audioSampler = Scheduler.getSchedule(this, SCHEDULER_PLUGIN_YAMNET);
-            if (audioSampler == null || audioSampler.getInterval() != Long.parseLong(Aware.getSetting(this, Settings.FREQUENCY_PLUGIN_YAMNET))) {
-                audioSampler = new Scheduler.Schedule(SCHEDULER_PLUGIN_YAMNET)
-                        .setInterval(Long.parseLong(Aware.getSetting(this, Settings.FREQUENCY_PLUGIN_YAMNET)))
-                        .setActionType(Scheduler.ACTION_TYPE_SERVICE)
-                        .setActionClass(getPackageName() + "/" + AudioAnalyser.class.getName());
-                Scheduler.saveSchedule(this, audioSampler);
+        long frequency = Long.parseLong(Aware.getSetting(this, Settings.FREQUENCY_PLUGIN_YAMNET));
+        long interval = getSamplerInterval(this);
+
+        if (AdaptiveScheduler.isEnabled(this)) {
+            // AdaptiveScheduler moves the interval after every sample; only start it, or pull it back within bounds
+            long[] bounds = AdaptiveScheduler.bounds(this);
+            if (interval < bounds[0] || interval > bounds[1]) {
+                saveSamplerSchedule(this, Math.min(bounds[1], Math.max(bounds[0], frequency)));
             }
+        } else if (interval != frequency) {
+            saveSamplerSchedule(this, frequency);
+        }
+    }
+
+    /**
+     * Current interval of the periodic sampler in minutes, 0 if it is not scheduled
+     */
+    static long getSamplerInterval(Context context) {
+        try {
+            Scheduler.Schedule audioSampler = Scheduler.getSchedule(context, SCHEDULER_PLUGIN_YAMNET);
+            return audioSampler != null ? audioSampler.getInterval() : 0;
+        } catch (JSONException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * (Re)schedule the periodic sampler every interval minutes
+     */
+    static void saveSamplerSchedule(Context context, long interval) {
+        try {
+            Scheduler.Schedule audioSampler = new Scheduler.Schedule(SCHEDULER_PLUGIN_YAMNET)
+                    .setInterval(interval)
+                    .setActionType(Scheduler.ACTION_TYPE_SERVICE)
+                    .setActionClass(context.getPackageName() + "/" + AudioAnalyser.class.getName());
+            Scheduler.saveSchedule(context, audioSampler);
         } catch (JSONException e) {
             if (DEBUG) Log.e(TAG, "Error setting up scheduler: " + e.getMessage());
         }
     }
 
+    /**
+     * Continuous mode replaces the periodic sampler with a foreground streaming service
+     */
+    private void startContinuousMode() {
+        Scheduler.removeSchedule(this, SCHEDULER_PLUGIN_YAMNET);
+
+        Intent continuous = new Intent(this, ContinuousAnalyser.class);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            startForegroundService(continuous);
+        } else {
+            startService(continuous);
+        }
+        Log.d(TAG, "Continuous mode enabled");
+    }
+
+    private void stopContinuousMode() {
+        stopService(new Intent(this, ContinuousAnalyser.class));
+    }
+
     private void setupMigrationScheduler() {
         try {
-            // Set up daily migration service (runs every 24 hours)
+            // Audio retention runs every hour, also while no new audio is saved
             Scheduler.Schedule migrationSchedule = Scheduler.getSchedule(this, SCHEDULER_MIGRATION);
-            if (migrationSchedule == null) {
+            if (migrationSchedule == null || migrationSchedule.getInterval() != MIGRATION_INTERVAL_MINUTES) {
                 migrationSchedule = new Scheduler.Schedule(SCHEDULER_MIGRATION)
-                        .setInterval(24 * 60) // 24 hours in minutes
+                        .setInterval(MIGRATION_INTERVAL_MINUTES)
                         .setActionType(Scheduler.ACTION_TYPE_SERVICE)
                         .setActionClass(getPackageName() + "/" + AudioMigrationService.class.getName());
                 Scheduler.saveSchedule(this, migrationSchedule);
                 
-                Log.d(TAG, "Audio migration scheduler set up (24h interval)");
+                Log.d(TAG, "Audio retention scheduler set up (" + MIGRATION_INTERVAL_MINUTES + " min interval)");
             }
         } catch (JSONException e) {
             if (DEBUG) Log.e(TAG, "Error setting up migration scheduler: " + e.getMessage());
@@ -173,6 +229,12 @@ public class Plugin extends Aware_Plugin {
 
             Scheduler.removeSchedule(this, SCHEDULER_PLUGIN_YAMNET);
             Scheduler.removeSchedule(this, SCHEDULER_MIGRATION);
+            stopContinuousMode();
+
+            // Join the pipeline first: its last batch may still write segment audio and use the model
+            AnalysisPipeline.release();
+            AudioSegmentStore.getInstance(this).close();
+            YamnetSession.release();
             super.onDestroy();
         } catch (Exception e) {
             if (DEBUG) Log.e(TAG, "Error during plugin cleanup: " + e.getMessage());
@@ -2,27 +2,50 @@ package com.aware.plugin.yamnet;
 
 import android.annotation.SuppressLint;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
+import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.DatabaseUtils;
+import android.database.MergeCursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
 import android.provider.BaseColumns;
 import android.util.Log;
 
 import com.aware.Aware;
 import com.aware.utils.DatabaseHelper;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
+import java.util.Set;
 
 public class Provider extends ContentProvider {
 
-	public static final int DATABASE_VERSION = 3; // 버전 증가 (컬럼 추가)
+	public static final int DATABASE_VERSION = 12; // 동기화되는 timestamp 컬럼을 bigint로 (서버의 32비트 INT 방지)
 
 	/**
 	 * Provider authority: com.aware.plugin.yamnet.provider.yamnet
@@ -33,30 +56,95 @@ public class Provider extends ContentProvider {
 	private static final int YAMNET_ID = 2;
 	private static final int YAMNET_AUDIO = 3;
 	private static final int YAMNET_AUDIO_ID = 4;
+	private static final int YAMNET_PREDICTIONS = 5;
+	private static final int YAMNET_PREDICTIONS_ID = 6;
 
 	public static final String DATABASE_NAME = "plugin_yamnet.db";
 
 	public static final String[] DATABASE_TABLES = {
 			"plugin_yamnet",
-			"plugin_yamnet_audio"  // 다시 추가
+			"plugin_yamnet_audio",  // 다시 추가
+			"plugin_yamnet_predictions"
 	};
 
 	public static final String[] TABLES_FIELDS = {
 			// 메인 테이블 (동기화됨)
 			YAMNet_Data._ID + " integer primary key autoincrement," +
-					YAMNet_Data.TIMESTAMP + " real default 0," +
+					YAMNet_Data.TIMESTAMP + " bigint default 0," +
 					YAMNet_Data.DEVICE_ID + " text default ''," +
 					YAMNet_Data.DURATION + " integer default 0," +
-					YAMNet_Data.ANALYSIS_RESULTS + " text",
+					YAMNet_Data.ANALYSIS_RESULTS + " text," +
+					YAMNet_Data.SCORES_BLOB + " blob," +
+					YAMNet_Data.BUDGET_TIER + " text default ''," +
+					YAMNet_Data.MODEL_VERSION + " text default ''",
 
 			// 오디오 테이블 (로컬 전용)
 			YAMNet_Audio._ID + " integer primary key autoincrement," +
-					YAMNet_Audio.TIMESTAMP + " real default 0," +
+					YAMNet_Audio.TIMESTAMP + " integer default 0," +
 					YAMNet_Audio.DEVICE_ID + " text default ''," +
 					YAMNet_Audio.DURATION + " integer default 0," +
-					YAMNet_Audio.RAW_AUDIO + " blob"
+					YAMNet_Audio.RAW_AUDIO + " blob," +
+					YAMNet_Audio.SEGMENT + " integer," +
+					YAMNet_Audio.SEGMENT_OFFSET + " integer default 0," +
+					YAMNet_Audio.SEGMENT_LENGTH + " integer default 0",
+
+			// 예측 테이블 (동기화됨, 샘플당 top K 행); plugin_yamnet 행과는 (device_id, timestamp)로 조인
+			YAMNet_Predictions._ID + " integer primary key autoincrement," +
+					YAMNet_Predictions.TIMESTAMP + " bigint default 0," +
+					YAMNet_Predictions.DEVICE_ID + " text default ''," +
+					YAMNet_Predictions.CLASS_INDEX + " integer default 0," +
+					YAMNet_Predictions.LABEL + " text default ''," +
+					YAMNet_Predictions.SCORE + " real default 0," +
+					YAMNet_Predictions.RANK + " integer default 0"
+	};
+
+	/**
+	 * Secondary indexes, created if missing whenever the database is opened
+	 * (DatabaseHelper rebuilds the tables on a version change, which drops their indexes)
+	 */
+	private static final String[] INDEXES = {
+			"CREATE INDEX IF NOT EXISTS plugin_yamnet_time ON plugin_yamnet ("
+					+ YAMNet_Data.TIMESTAMP + ")",
+			"CREATE INDEX IF NOT EXISTS plugin_yamnet_device_time ON plugin_yamnet ("
+					+ YAMNet_Data.DEVICE_ID + ", " + YAMNet_Data.TIMESTAMP + ")",
+			"CREATE INDEX IF NOT EXISTS plugin_yamnet_audio_time ON plugin_yamnet_audio ("
+					+ YAMNet_Audio.TIMESTAMP + ")",
+			"CREATE INDEX IF NOT EXISTS plugin_yamnet_audio_device_time ON plugin_yamnet_audio ("
+					+ YAMNet_Audio.DEVICE_ID + ", " + YAMNet_Audio.TIMESTAMP + ")",
+			"CREATE INDEX IF NOT EXISTS plugin_yamnet_audio_segment ON plugin_yamnet_audio ("
+					+ YAMNet_Audio.SEGMENT + ")",
+			"CREATE INDEX IF NOT EXISTS plugin_yamnet_predictions_class_time ON plugin_yamnet_predictions ("
+					+ YAMNet_Predictions.CLASS_INDEX + ", " + YAMNet_Predictions.TIMESTAMP + ")",
+			"CREATE INDEX IF NOT EXISTS plugin_yamnet_predictions_device_time ON plugin_yamnet_predictions ("
+					+ YAMNet_Predictions.DEVICE_ID + ", " + YAMNet_Predictions.TIMESTAMP + ")"
+	};
+
+	/**
+	 * Data migrations, applied once each and in order after DatabaseHelper has brought the
+	 * tables up to TABLES_FIELDS. Applied versions are recorded in SCHEMA_TABLE, which lives
+	 * in the same file, so a recreated database replays them from the start.
+	 */
+	private static final Migration[] MIGRATIONS = {
+			// Timestamps are integer milliseconds; the table rebuild converts whole-number reals,
+			// this catches the fractional ones
+			new Migration(6,
+					"UPDATE plugin_yamnet SET timestamp = CAST(timestamp AS INTEGER) WHERE typeof(timestamp) = 'real'",
+					"UPDATE plugin_yamnet_audio SET timestamp = CAST(timestamp AS INTEGER) WHERE typeof(timestamp) = 'real'",
+					"UPDATE plugin_yamnet_predictions SET timestamp = CAST(timestamp AS INTEGER) WHERE typeof(timestamp) = 'real'")
 	};
 
+	private static final String SCHEMA_TABLE = "plugin_yamnet_schema";
+
+	private static final class Migration {
+		final int version;
+		final String[] statements;
+
+		Migration(int version, String... statements) {
+			this.version = version;
+			this.statements = statements;
+		}
+	}
+
 	// 메인 데이터 테이블 (동기화용)
 	public static final class YAMNet_Data implements BaseColumns {
 		private YAMNet_Data(){};
@@ -70,6 +158,9 @@ public class Provider extends ContentProvider {
 		public static final String DEVICE_ID = "device_id";
 		public static final String DURATION = "duration";  // 수집 시간 (밀리초)
 		public static final String ANALYSIS_RESULTS = "analysis_results";
+		public static final String SCORES_BLOB = "scores_blob";  // 전체 521개 점수, ScoreCodec 형식 (선택); _blob 접미사로 AwareSyncAdapter가 getBlob으로 읽음
+		public static final String BUDGET_TIER = "budget_tier";  // BudgetController 등급: full, saver, critical
+		public static final String MODEL_VERSION = "model_version";  // 분석에 사용된 모델 버전 (무음 샘플은 빈 값)
 	}
 
 	// 오디오 데이터 테이블 (로컬 전용)
@@ -84,12 +175,50 @@ public class Provider extends ContentProvider {
 		public static final String TIMESTAMP = "timestamp";
 		public static final String DEVICE_ID = "device_id";
 		public static final String DURATION = "duration";  // 수집 시간 (밀리초)
-		public static final String RAW_AUDIO = "raw_audio";
+		public static final String RAW_AUDIO = "raw_audio";  // 세그먼트 저장소 이전에 기록된 행만
+		public static final String SEGMENT = "segment";  // AudioSegmentStore 세그먼트 id
+		public static final String SEGMENT_OFFSET = "segment_offset";  // 바이트
+		public static final String SEGMENT_LENGTH = "segment_length";  // 바이트
+
+		// openInputStream(plugin_yamnet_audio/#) 로 읽는 클립 형식
+		public static final String STREAM_TYPE = "audio/wav";
+
+		// Query parameters (unix ms, to exclusive) that also limit which day shards are read
+		public static final String PARAM_FROM = "from";
+		public static final String PARAM_TO = "to";
+	}
+
+	// 예측 테이블 (동기화됨)
+	// Query parameters avoid parsing analysis_results JSON, e.g.
+	// plugin_yamnet_predictions?label=Speech&min_score=0.5&from=<ms>&to=<ms>
+	public static final class YAMNet_Predictions implements BaseColumns {
+		private YAMNet_Predictions(){};
+
+		public static final Uri CONTENT_URI = Uri.parse("content://"+AUTHORITY+"/plugin_yamnet_predictions");
+		public static final String CONTENT_TYPE = "vnd.android.cursor.dir/vnd.aware.plugin.yamnet.predictions";
+		public static final String CONTENT_ITEM_TYPE = "vnd.android.cursor.item/vnd.aware.plugin.yamnet.predictions";
+
+		public static final String _ID = "_id";
+		public static final String TIMESTAMP = "timestamp";
+		public static final String DEVICE_ID = "device_id";
+		public static final String CLASS_INDEX = "class_index";
+		public static final String LABEL = "label";
+		public static final String SCORE = "score";
+		public static final String RANK = "rank";  // 0 = 가장 높은 점수
+
+		// Query parameters
+		public static final String PARAM_LABEL = "label";
+		public static final String PARAM_CLASS_INDEX = "class_index";
+		public static final String PARAM_MIN_SCORE = "min_score";
+		public static final String PARAM_FROM = "from";
+		public static final String PARAM_TO = "to";
 	}
 
 	private static UriMatcher URIMatcher;
 	private static HashMap<String, String> databaseMap;
 	private static HashMap<String, String> audioMap;
+	private static HashMap<String, String> predictionsMap;
+	private static HashMap<String, Integer> labelIndex;
 
 	/**
 	 * Returns the provider authority that is dynamic
@@ -110,6 +239,8 @@ public class Provider extends ContentProvider {
 		URIMatcher.addURI(AUTHORITY, DATABASE_TABLES[0]+"/#", YAMNET_ID);
 		URIMatcher.addURI(AUTHORITY, DATABASE_TABLES[1], YAMNET_AUDIO);
 		URIMatcher.addURI(AUTHORITY, DATABASE_TABLES[1]+"/#", YAMNET_AUDIO_ID);
+		URIMatcher.addURI(AUTHORITY, DATABASE_TABLES[2], YAMNET_PREDICTIONS);
+		URIMatcher.addURI(AUTHORITY, DATABASE_TABLES[2]+"/#", YAMNET_PREDICTIONS_ID);
 
 		// 메인 테이블 맵
 		databaseMap = new HashMap<>();
@@ -118,6 +249,9 @@ public class Provider extends ContentProvider {
 		databaseMap.put(YAMNet_Data.DEVICE_ID, YAMNet_Data.DEVICE_ID);
 		databaseMap.put(YAMNet_Data.DURATION, YAMNet_Data.DURATION);
 		databaseMap.put(YAMNet_Data.ANALYSIS_RESULTS, YAMNet_Data.ANALYSIS_RESULTS);
+		databaseMap.put(YAMNet_Data.SCORES_BLOB, YAMNet_Data.SCORES_BLOB);
+		databaseMap.put(YAMNet_Data.BUDGET_TIER, YAMNet_Data.BUDGET_TIER);
+		databaseMap.put(YAMNet_Data.MODEL_VERSION, YAMNet_Data.MODEL_VERSION);
 
 		// 오디오 테이블 맵
 		audioMap = new HashMap<>();
@@ -126,33 +260,140 @@ public class Provider extends ContentProvider {
 		audioMap.put(YAMNet_Audio.DEVICE_ID, YAMNet_Audio.DEVICE_ID);
 		audioMap.put(YAMNet_Audio.DURATION, YAMNet_Audio.DURATION);
 		audioMap.put(YAMNet_Audio.RAW_AUDIO, YAMNet_Audio.RAW_AUDIO);
+		audioMap.put(YAMNet_Audio.SEGMENT, YAMNet_Audio.SEGMENT);
+		audioMap.put(YAMNet_Audio.SEGMENT_OFFSET, YAMNet_Audio.SEGMENT_OFFSET);
+		audioMap.put(YAMNet_Audio.SEGMENT_LENGTH, YAMNet_Audio.SEGMENT_LENGTH);
+
+		// 예측 테이블 맵
+		predictionsMap = new HashMap<>();
+		predictionsMap.put(YAMNet_Predictions._ID, YAMNet_Predictions._ID);
+		predictionsMap.put(YAMNet_Predictions.TIMESTAMP, YAMNet_Predictions.TIMESTAMP);
+		predictionsMap.put(YAMNet_Predictions.DEVICE_ID, YAMNet_Predictions.DEVICE_ID);
+		predictionsMap.put(YAMNet_Predictions.CLASS_INDEX, YAMNet_Predictions.CLASS_INDEX);
+		predictionsMap.put(YAMNet_Predictions.LABEL, YAMNet_Predictions.LABEL);
+		predictionsMap.put(YAMNet_Predictions.SCORE, YAMNet_Predictions.SCORE);
+		predictionsMap.put(YAMNet_Predictions.RANK, YAMNet_Predictions.RANK);
 
 		return true;
 	}
 
 	private DatabaseHelper dbHelper;
-	private static SQLiteDatabase database;
+	private static volatile SQLiteDatabase database;
+
+	// plugin_yamnet_audio rows live in per-day shard files; the table in DATABASE_NAME only
+	// holds rows written before sharding, until the migration service has moved them
+	private static volatile AudioShards audioShards;
+	private static volatile boolean legacyAudio;
 
+	// Set while bulkInsert or applyBatch runs on this thread: row notifications are collected
+	// per table and sent once after the batch commits
+	private final ThreadLocal<Set<Uri>> pendingNotifications = new ThreadLocal<>();
+	// Audio shards written by the running batch, each in its own transaction until the batch ends
+	private final ThreadLocal<Set<SQLiteDatabase>> batchShards = new ThreadLocal<>();
+
+	/**
+	 * Opens the database once, in write-ahead-logging mode: readers get their own pooled
+	 * connections and never wait for a writer, and writers only wait for each other.
+	 * Concurrency is left to SQLiteDatabase, so the provider methods are not synchronized.
+	 */
 	private void initialiseDatabase() {
-		if (dbHelper == null)
-			dbHelper = new DatabaseHelper(getContext(), DATABASE_NAME, null, DATABASE_VERSION, DATABASE_TABLES, TABLES_FIELDS);
-		if (database == null)
-			database = dbHelper.getWritableDatabase();
+		if (database != null) return;
+
+		synchronized (Provider.class) {
+			if (database != null) return;
+
+			if (dbHelper == null)
+				dbHelper = new DatabaseHelper(getContext(), DATABASE_NAME, null, DATABASE_VERSION, DATABASE_TABLES, TABLES_FIELDS);
+			SQLiteDatabase db = dbHelper.getWritableDatabase();
+			if (!db.enableWriteAheadLogging()) {
+				Log.w(Aware.TAG, "Write-ahead logging unavailable for " + DATABASE_NAME);
+			}
+			migrate(db);
+			createIndexes(db);
+			audioShards = new AudioShards(getContext());
+			legacyAudio = DatabaseUtils.queryNumEntries(db, DATABASE_TABLES[1]) > 0;
+			database = db;
+		}
+	}
+
+	/**
+	 * Apply the migrations this database has not seen yet, one transaction each
+	 */
+	static void migrate(SQLiteDatabase db) {
+		db.execSQL("CREATE TABLE IF NOT EXISTS " + SCHEMA_TABLE + " (version integer primary key)");
+
+		int applied = 0;
+		Cursor c = db.rawQuery("SELECT max(version) FROM " + SCHEMA_TABLE, null);
+		if (c != null) {
+			if (c.moveToFirst() && !c.isNull(0)) applied = c.getInt(0);
+			c.close();
+		}
+
+		for (Migration migration : MIGRATIONS) {
+			if (migration.version <= applied) continue;
+
+			long start = System.currentTimeMillis();
+			db.beginTransaction();
+			try {
+				for (String statement : migration.statements) {
+					db.execSQL(statement);
+				}
+				db.execSQL("INSERT INTO " + SCHEMA_TABLE + " (version) VALUES (" + migration.version + ")");
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+			Log.d(Aware.TAG, DATABASE_NAME + " migrated to " + migration.version + " in " + (System.currentTimeMillis() - start) + " ms");
+		}
+	}
+
+	static void createIndexes(SQLiteDatabase db) {
+		for (String index : INDEXES) {
+			db.execSQL(index);
+		}
+	}
+
+	/**
+	 * Create the indexes of one table, e.g. in an audio shard
+	 */
+	static void createIndexes(SQLiteDatabase db, String table) {
+		for (String index : INDEXES) {
+			if (index.contains(" ON " + table + " (")) db.execSQL(index);
+		}
 	}
 
 	@Override
-	public synchronized int delete(Uri uri, String selection, String[] selectionArgs) {
+	public int delete(Uri uri, String selection, String[] selectionArgs) {
 		initialiseDatabase();
 
-		database.beginTransaction();
+		if (URIMatcher.match(uri) == YAMNET_AUDIO) {
+			List<String> args = new ArrayList<>();
+			if (selectionArgs != null) Collections.addAll(args, selectionArgs);
+			String where = appendAudioFilters(uri, selection, args);
+			String[] whereArgs = args.toArray(new String[0]);
+
+			int count = 0;
+			List<SQLiteDatabase> databases = audioDatabases(uri);
+			try {
+				for (SQLiteDatabase db : databases) {
+					count += joinBatch(db).delete(DATABASE_TABLES[1], where, whereArgs);
+				}
+			} finally {
+				audioShards.release(databases);
+			}
+			notifyChange(uri, uri);
+			return count;
+		}
+
+		database.beginTransactionNonExclusive();
 
 		int count;
 		switch (URIMatcher.match(uri)) {
 			case YAMNET:
 				count = database.delete(DATABASE_TABLES[0], selection, selectionArgs);
 				break;
-			case YAMNET_AUDIO:
-				count = database.delete(DATABASE_TABLES[1], selection, selectionArgs);
+			case YAMNET_PREDICTIONS:
+				count = database.delete(DATABASE_TABLES[2], selection, selectionArgs);
 				break;
 			default:
 				database.endTransaction();
@@ -162,7 +403,7 @@ public class Provider extends ContentProvider {
 		database.setTransactionSuccessful();
 		database.endTransaction();
 
-		getContext().getContentResolver().notifyChange(uri, null, false);
+		notifyChange(uri, uri);
 		return count;
 	}
 
@@ -177,19 +418,43 @@ public class Provider extends ContentProvider {
 				return YAMNet_Audio.CONTENT_TYPE;
 			case YAMNET_AUDIO_ID:
 				return YAMNet_Audio.CONTENT_ITEM_TYPE;
+			case YAMNET_PREDICTIONS:
+				return YAMNet_Predictions.CONTENT_TYPE;
+			case YAMNET_PREDICTIONS_ID:
+				return YAMNet_Predictions.CONTENT_ITEM_TYPE;
 			default:
 				throw new IllegalArgumentException("Unknown URI " + uri);
 		}
 	}
 
 	@Override
-	public synchronized Uri insert(Uri uri, ContentValues initialValues) {
+	public Uri insert(Uri uri, ContentValues initialValues) {
 		initialiseDatabase();
 
 		ContentValues values = (initialValues != null) ? new ContentValues(
 				initialValues) : new ContentValues();
 
-		database.beginTransaction();
+		if (URIMatcher.match(uri) == YAMNET_AUDIO) {
+			Long timestamp = values.getAsLong(YAMNet_Audio.TIMESTAMP);
+			SQLiteDatabase shard = audioShards.forDay(AudioShards.dayOf(timestamp != null ? timestamp : 0));
+			long audio_id;
+			try {
+				audio_id = joinBatch(shard).insertWithOnConflict(DATABASE_TABLES[1], YAMNet_Audio.DEVICE_ID, values, SQLiteDatabase.CONFLICT_IGNORE);
+			} finally {
+				audioShards.release(shard);
+			}
+
+			if (audio_id > 0) {
+				Uri new_uri = ContentUris.withAppendedId(
+						YAMNet_Audio.CONTENT_URI,
+						audio_id);
+				notifyChange(new_uri, YAMNet_Audio.CONTENT_URI);
+				return new_uri;
+			}
+			throw new SQLException("Failed to insert row into " + uri);
+		}
+
+		database.beginTransactionNonExclusive();
 
 		switch (URIMatcher.match(uri)) {
 			case YAMNET:
@@ -199,7 +464,7 @@ public class Provider extends ContentProvider {
 					Uri new_uri = ContentUris.withAppendedId(
 							YAMNet_Data.CONTENT_URI,
 							yamnet_id);
-					Objects.requireNonNull(getContext()).getContentResolver().notifyChange(new_uri, null, false);
+					notifyChange(new_uri, YAMNet_Data.CONTENT_URI);
 					database.setTransactionSuccessful();
 					database.endTransaction();
 					return new_uri;
@@ -207,14 +472,14 @@ public class Provider extends ContentProvider {
 				database.endTransaction();
 				throw new SQLException("Failed to insert row into " + uri);
 
-			case YAMNET_AUDIO:
-				long audio_id = database.insertWithOnConflict(DATABASE_TABLES[1], YAMNet_Audio.DEVICE_ID, values, SQLiteDatabase.CONFLICT_IGNORE);
+			case YAMNET_PREDICTIONS:
+				long prediction_id = database.insertWithOnConflict(DATABASE_TABLES[2], YAMNet_Predictions.DEVICE_ID, values, SQLiteDatabase.CONFLICT_IGNORE);
 
-				if (audio_id > 0) {
+				if (prediction_id > 0) {
 					Uri new_uri = ContentUris.withAppendedId(
-							YAMNet_Audio.CONTENT_URI,
-							audio_id);
-					Objects.requireNonNull(getContext()).getContentResolver().notifyChange(new_uri, null, false);
+							YAMNet_Predictions.CONTENT_URI,
+							prediction_id);
+					notifyChange(new_uri, YAMNet_Predictions.CONTENT_URI);
 					database.setTransactionSuccessful();
 					database.endTransaction();
 					return new_uri;
@@ -228,6 +493,179 @@ public class Provider extends ContentProvider {
 		}
 	}
 
+	/**
+	 * Insert all rows in one transaction, with one change notification
+	 */
+	@Override
+	public int bulkInsert(Uri uri, ContentValues[] values) {
+		initialiseDatabase();
+
+		Set<Uri> pending = beginBatch();
+		boolean committed = false;
+		try {
+			for (ContentValues row : values) {
+				insert(uri, row);
+			}
+			database.setTransactionSuccessful();
+			committed = true;
+		} finally {
+			endBatch(pending, committed);
+		}
+		return values.length;
+	}
+
+	/**
+	 * Apply all operations in one transaction, with one change notification per table.
+	 * Back references let a batch insert a plugin_yamnet row and the rows that point to it.
+	 */
+	@Override
+	public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations) throws OperationApplicationException {
+		initialiseDatabase();
+
+		Set<Uri> pending = beginBatch();
+		boolean committed = false;
+		try {
+			ContentProviderResult[] results = super.applyBatch(operations);
+			database.setTransactionSuccessful();
+			committed = true;
+			return results;
+		} finally {
+			endBatch(pending, committed);
+		}
+	}
+
+	private Set<Uri> beginBatch() {
+		Set<Uri> pending = new HashSet<>();
+		pendingNotifications.set(pending);
+		batchShards.set(new HashSet<SQLiteDatabase>());
+		database.beginTransactionNonExclusive();
+		return pending;
+	}
+
+	private void endBatch(Set<Uri> pending, boolean committed) {
+		try {
+			for (SQLiteDatabase shard : batchShards.get()) {
+				try {
+					if (committed) shard.setTransactionSuccessful();
+					shard.endTransaction();
+				} finally {
+					audioShards.release(shard);
+				}
+			}
+		} finally {
+			batchShards.remove();
+			database.endTransaction();
+			pendingNotifications.remove();
+		}
+		if (committed) {
+			for (Uri uri : pending) {
+				Objects.requireNonNull(getContext()).getContentResolver().notifyChange(uri, null, false);
+			}
+		}
+	}
+
+	/**
+	 * Put a write to an audio shard into the running batch's transaction on that shard, if any.
+	 * The batch holds its own reference on the shard until it ends.
+	 */
+	private SQLiteDatabase joinBatch(SQLiteDatabase db) {
+		Set<SQLiteDatabase> shards = batchShards.get();
+		if (shards != null && db != database && shards.add(db)) {
+			audioShards.retain(db);
+			db.beginTransactionNonExclusive();
+		}
+		return db;
+	}
+
+	/**
+	 * The databases that can hold plugin_yamnet_audio rows matching the uri: the day shards
+	 * overlapping its from / to parameters (a day either side, in case the time zone changed),
+	 * oldest first, after the pre-sharding table while it still has rows. The shards are held
+	 * until audioShards.release().
+	 */
+	private List<SQLiteDatabase> audioDatabases(Uri uri) {
+		long fromDay = Long.MIN_VALUE;
+		long toDay = Long.MAX_VALUE;
+		String from = uri.getQueryParameter(YAMNet_Audio.PARAM_FROM);
+		if (from != null) fromDay = AudioShards.dayOf(Long.parseLong(from)) - 1;
+		String to = uri.getQueryParameter(YAMNet_Audio.PARAM_TO);
+		if (to != null) toDay = AudioShards.dayOf(Long.parseLong(to)) + 1;
+
+		List<SQLiteDatabase> databases = new ArrayList<>();
+		if (legacyAudio) databases.add(database);
+		databases.addAll(audioShards.between(fromDay, toDay));
+		return databases;
+	}
+
+	/**
+	 * Query every shard in range and concatenate the results in day order (newest day first
+	 * for a timestamp DESC sort), so a sort on timestamp holds across shards
+	 */
+	private Cursor queryAudio(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+		List<String> args = new ArrayList<>();
+		if (selectionArgs != null) Collections.addAll(args, selectionArgs);
+		String where = appendAudioFilters(uri, selection, args);
+		String[] whereArgs = args.toArray(new String[0]);
+
+		List<SQLiteDatabase> databases = audioDatabases(uri);
+		if (databases.isEmpty()) databases.add(database); // an empty cursor with the right columns
+		if (sortOrder != null && sortOrder.trim().toLowerCase(Locale.US).startsWith(YAMNet_Audio.TIMESTAMP + " desc")) {
+			Collections.reverse(databases);
+		}
+
+		SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
+		qb.setTables(DATABASE_TABLES[1]);
+		qb.setProjectionMap(audioMap);
+		Cursor[] cursors = new Cursor[databases.size()];
+		try {
+			for (int i = 0; i < cursors.length; i++) {
+				cursors[i] = qb.query(databases.get(i), projection, where, whereArgs, null, null, sortOrder);
+			}
+		} catch (RuntimeException e) {
+			for (Cursor c : cursors) {
+				if (c != null) c.close();
+			}
+			audioShards.release(databases);
+			throw e;
+		}
+		return new ShardCursor(cursors.length == 1 ? cursors[0] : new MergeCursor(cursors), databases);
+	}
+
+	/**
+	 * Audio cursor that holds its shards open until it is closed, so retention cannot delete a
+	 * day that is still being read
+	 */
+	private static final class ShardCursor extends CursorWrapper {
+		private List<SQLiteDatabase> shards;
+
+		ShardCursor(Cursor cursor, List<SQLiteDatabase> shards) {
+			super(cursor);
+			this.shards = shards;
+		}
+
+		@Override
+		public void close() {
+			super.close();
+			synchronized (this) {
+				if (shards == null) return;
+				audioShards.release(shards);
+				shards = null;
+			}
+		}
+	}
+
+	/**
+	 * Notify observers of a change, or defer it to the end of the running batch
+	 */
+	private void notifyChange(Uri uri, Uri tableUri) {
+		Set<Uri> pending = pendingNotifications.get();
+		if (pending != null) {
+			pending.add(tableUri);
+		} else {
+			Objects.requireNonNull(getContext()).getContentResolver().notifyChange(uri, null, false);
+		}
+	}
+
 	@Override
 	public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
 
@@ -240,15 +678,23 @@ public class Provider extends ContentProvider {
 				qb.setProjectionMap(databaseMap);
 				break;
 			case YAMNET_AUDIO:
-				qb.setTables(DATABASE_TABLES[1]);
-				qb.setProjectionMap(audioMap);
+				// Spread over shards, see queryAudio
+				break;
+			case YAMNET_PREDICTIONS:
+				qb.setTables(DATABASE_TABLES[2]);
+				qb.setProjectionMap(predictionsMap);
+				List<String> args = new ArrayList<>();
+				if (selectionArgs != null) Collections.addAll(args, selectionArgs);
+				selection = appendPredictionFilters(uri, selection, args);
+				selectionArgs = args.toArray(new String[0]);
 				break;
 			default:
 				throw new IllegalArgumentException("Unknown URI " + uri);
 		}
 		try {
-			Cursor c = qb.query(database, projection, selection, selectionArgs,
-					null, null, sortOrder);
+			Cursor c = URIMatcher.match(uri) == YAMNET_AUDIO
+					? queryAudio(uri, projection, selection, selectionArgs, sortOrder)
+					: qb.query(database, projection, selection, selectionArgs, null, null, sortOrder);
 			c.setNotificationUri(Objects.requireNonNull(getContext()).getContentResolver(), uri);
 			return c;
 		} catch (IllegalStateException e) {
@@ -260,11 +706,30 @@ public class Provider extends ContentProvider {
 	}
 
 	@Override
-	public synchronized int update(Uri uri, ContentValues values, String selection,
+	public int update(Uri uri, ContentValues values, String selection,
 								   String[] selectionArgs) {
 		initialiseDatabase();
 
-		database.beginTransaction();
+		if (URIMatcher.match(uri) == YAMNET_AUDIO) {
+			List<String> args = new ArrayList<>();
+			if (selectionArgs != null) Collections.addAll(args, selectionArgs);
+			String where = appendAudioFilters(uri, selection, args);
+			String[] whereArgs = args.toArray(new String[0]);
+
+			int count = 0;
+			List<SQLiteDatabase> databases = audioDatabases(uri);
+			try {
+				for (SQLiteDatabase db : databases) {
+					count += joinBatch(db).update(DATABASE_TABLES[1], values, where, whereArgs);
+				}
+			} finally {
+				audioShards.release(databases);
+			}
+			notifyChange(uri, uri);
+			return count;
+		}
+
+		database.beginTransactionNonExclusive();
 
 		int count;
 		switch (URIMatcher.match(uri)) {
@@ -272,8 +737,8 @@ public class Provider extends ContentProvider {
 				count = database.update(DATABASE_TABLES[0], values, selection,
 						selectionArgs);
 				break;
-			case YAMNET_AUDIO:
-				count = database.update(DATABASE_TABLES[1], values, selection,
+			case YAMNET_PREDICTIONS:
+				count = database.update(DATABASE_TABLES[2], values, selection,
 						selectionArgs);
 				break;
 			default:
@@ -284,7 +749,413 @@ public class Provider extends ContentProvider {
 		database.setTransactionSuccessful();
 		database.endTransaction();
 
-		getContext().getContentResolver().notifyChange(uri, null, false);
+		notifyChange(uri, uri);
 		return count;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Provider.call() method that gives free database pages back to the file system; the result
+	 * holds RECLAIMED_BYTES
+	 */
+	public static final String METHOD_RECLAIM_SPACE = "reclaim_space";
+	public static final String RECLAIMED_BYTES = "reclaimed_bytes";
+
+	/**
+	 * Provider.call() method that deletes the audio shard of every day before the day of the
+	 * cutoff passed as arg (unix ms); the result holds DROPPED_BYTES
+	 */
+	public static final String METHOD_DROP_AUDIO_DAYS = "drop_audio_days";
+	public static final String DROPPED_BYTES = "dropped_bytes";
+
+	/**
+	 * Provider.call() method that moves up to LEGACY_AUDIO_BATCH audio rows with a segment from
+	 * plugin_yamnet.db into their day shards, newest first; the result holds MOVED_ROWS, 0 once
+	 * there is nothing left to move
+	 */
+	public static final String METHOD_SHARD_LEGACY_AUDIO = "shard_legacy_audio";
+	public static final String MOVED_ROWS = "moved_rows";
+
+	/**
+	 * Provider.call() method that installs a model through ModelRegistry.install(); arg is the
+	 * version, extras hold MODEL_PATH, LABELS_PATH and MODEL_SHA256. The result holds
+	 * INSTALLED_VERSION, or INSTALL_ERROR if the model was refused. Callers need WRITE_CONTEXT_DATA.
+	 */
+	public static final String METHOD_INSTALL_MODEL = "install_model";
+	public static final String MODEL_PATH = "model_path";
+	public static final String LABELS_PATH = "labels_path";
+	public static final String MODEL_SHA256 = "model_sha256";
+	public static final String INSTALLED_VERSION = "installed_version";
+	public static final String INSTALL_ERROR = "install_error";
+
+	private static final int VACUUM_STEP_PAGES = 256;
+	private static final int LEGACY_AUDIO_BATCH = 500;
+
+	@Override
+	public Bundle call(String method, String arg, Bundle extras) {
+		Bundle result = new Bundle();
+		if (METHOD_RECLAIM_SPACE.equals(method)) {
+			initialiseDatabase();
+			long reclaimed = reclaimSpace(database, DATABASE_NAME);
+			List<SQLiteDatabase> shards = audioShards.all();
+			try {
+				for (SQLiteDatabase shard : shards) {
+					reclaimed += reclaimSpace(shard, shard.getPath());
+				}
+			} finally {
+				audioShards.release(shards);
+			}
+			result.putLong(RECLAIMED_BYTES, reclaimed);
+		} else if (METHOD_DROP_AUDIO_DAYS.equals(method)) {
+			initialiseDatabase();
+			result.putLong(DROPPED_BYTES, audioShards.dropBefore(Long.parseLong(arg)));
+			Objects.requireNonNull(getContext()).getContentResolver().notifyChange(YAMNet_Audio.CONTENT_URI, null, false);
+		} else if (METHOD_SHARD_LEGACY_AUDIO.equals(method)) {
+			initialiseDatabase();
+			result.putInt(MOVED_ROWS, shardLegacyAudio());
+		} else if (METHOD_INSTALL_MODEL.equals(method)) {
+			Context context = Objects.requireNonNull(getContext());
+			// call() is not covered by the provider's read/write permissions
+			context.enforceCallingOrSelfPermission("com.aware.WRITE_CONTEXT_DATA", METHOD_INSTALL_MODEL);
+			if (arg == null || extras == null || extras.getString(MODEL_PATH) == null
+					|| extras.getString(LABELS_PATH) == null || extras.getString(MODEL_SHA256) == null) {
+				result.putString(INSTALL_ERROR, "Version, " + MODEL_PATH + ", " + LABELS_PATH + " and " + MODEL_SHA256 + " are required");
+				return result;
+			}
+			try {
+				ModelRegistry.Variant model = ModelRegistry.install(context, new File(extras.getString(MODEL_PATH)),
+						new File(extras.getString(LABELS_PATH)), arg, extras.getString(MODEL_SHA256));
+				result.putString(INSTALLED_VERSION, model.version);
+			} catch (IOException e) {
+				Log.e(Aware.TAG, "Model " + arg + " not installed: " + e.getMessage());
+				result.putString(INSTALL_ERROR, e.getMessage());
+			}
+		} else {
+			return super.call(method, arg, extras);
+		}
+		return result;
+	}
+
+	/**
+	 * Move a batch of pre-sharding rows into their shards. Newest rows go first, so the rows
+	 * still waiting are older than any shard row and queryAudio's day order stays sorted. The
+	 * shards commit before the rows are deleted here: an interrupted move duplicates, never loses.
+	 */
+	private int shardLegacyAudio() {
+		if (!legacyAudio) return 0;
+
+		Cursor c = database.query(DATABASE_TABLES[1],
+				new String[]{YAMNet_Audio._ID, YAMNet_Audio.TIMESTAMP, YAMNet_Audio.DEVICE_ID, YAMNet_Audio.DURATION,
+						YAMNet_Audio.SEGMENT, YAMNet_Audio.SEGMENT_OFFSET, YAMNet_Audio.SEGMENT_LENGTH},
+				YAMNet_Audio.SEGMENT + " IS NOT NULL", null, null, null,
+				YAMNet_Audio.TIMESTAMP + " DESC", String.valueOf(LEGACY_AUDIO_BATCH));
+		if (c == null) return 0;
+
+		StringBuilder ids = new StringBuilder();
+		Set<SQLiteDatabase> shards = new HashSet<>();
+		boolean committed = false;
+		try {
+			while (c.moveToNext()) {
+				ContentValues values = new ContentValues();
+				values.put(YAMNet_Audio.TIMESTAMP, c.getLong(1));
+				values.put(YAMNet_Audio.DEVICE_ID, c.getString(2));
+				values.put(YAMNet_Audio.DURATION, c.getInt(3));
+				values.put(YAMNet_Audio.SEGMENT, c.getLong(4));
+				values.put(YAMNet_Audio.SEGMENT_OFFSET, c.getLong(5));
+				values.put(YAMNet_Audio.SEGMENT_LENGTH, c.getInt(6));
+
+				// One reference per shard, released once its transaction ends
+				SQLiteDatabase shard = audioShards.forDay(AudioShards.dayOf(c.getLong(1)));
+				if (shards.add(shard)) {
+					shard.beginTransactionNonExclusive();
+				} else {
+					audioShards.release(shard);
+				}
+				shard.insertOrThrow(DATABASE_TABLES[1], YAMNet_Audio.DEVICE_ID, values);
+
+				if (ids.length() > 0) ids.append(',');
+				ids.append(c.getLong(0));
+			}
+			committed = true;
+		} finally {
+			c.close();
+			for (SQLiteDatabase shard : shards) {
+				try {
+					if (committed) shard.setTransactionSuccessful();
+					shard.endTransaction();
+				} finally {
+					audioShards.release(shard);
+				}
+			}
+		}
+
+		int moved = 0;
+		if (ids.length() > 0) {
+			moved = database.delete(DATABASE_TABLES[1], YAMNet_Audio._ID + " IN (" + ids + ")", null);
+		}
+		if (moved == 0 && DatabaseUtils.queryNumEntries(database, DATABASE_TABLES[1]) == 0) {
+			legacyAudio = false;
+			Log.d(Aware.TAG, "All audio rows are in day shards");
+		}
+		return moved;
+	}
+
+	/**
+	 * Shrink a database file by the pages deletes have freed, VACUUM_STEP_PAGES at a time so
+	 * each step is a short write that capture-path inserts can interleave with. A database
+	 * created without incremental auto-vacuum is converted first, which takes one full VACUUM.
+	 *
+	 * @return bytes the database file shrank by
+	 */
+	private static long reclaimSpace(SQLiteDatabase db, String name) {
+		long pageSize = pragma(db, "page_size");
+		long pagesBefore = pragma(db, "page_count");
+
+		try {
+			if (pragma(db, "auto_vacuum") != 2) {
+				long start = System.currentTimeMillis();
+				db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+				db.execSQL("VACUUM");
+				Log.d(Aware.TAG, name + " switched to incremental vacuum in " + (System.currentTimeMillis() - start) + " ms");
+			}
+
+			long free = pragma(db, "freelist_count");
+			while (free > 0) {
+				drain(db.rawQuery("PRAGMA incremental_vacuum(" + Math.min(free, VACUUM_STEP_PAGES) + ")", null));
+				long left = pragma(db, "freelist_count");
+				if (left >= free) break;
+				free = left;
+			}
+
+			// Truncation only reaches the main file once the log is checkpointed
+			drain(db.rawQuery("PRAGMA wal_checkpoint(TRUNCATE)", null));
+		} catch (SQLException e) {
+			// e.g. busy with a long read; the next run picks up where this one stopped
+			Log.w(Aware.TAG, "Could not reclaim space in " + name + ": " + e.getMessage());
+		}
+
+		return Math.max(0, pagesBefore - pragma(db, "page_count")) * pageSize;
+	}
+
+	private static long pragma(SQLiteDatabase db, String name) {
+		Cursor c = db.rawQuery("PRAGMA " + name, null);
+		try {
+			return c.moveToFirst() ? c.getLong(0) : 0;
+		} finally {
+			c.close();
+		}
+	}
+
+	private static void drain(Cursor c) {
+		if (c == null) return;
+		while (c.moveToNext()) {
+			// incremental_vacuum frees one page per step
+		}
+		c.close();
+	}
+
+	/**
+	 * plugin_yamnet_audio/# opened for reading streams the clip as a WAV file through a pipe, so
+	 * callers never pull audio through a CursorWindow
+	 */
+	@Override
+	public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+		if (URIMatcher.match(uri) != YAMNET_AUDIO_ID) {
+			throw new FileNotFoundException("No stream for " + uri);
+		}
+		if (!"r".equals(mode)) {
+			throw new FileNotFoundException("Audio is read-only: " + uri);
+		}
+
+		StreamedClip clip = openClip(ContentUris.parseId(uri));
+		try {
+			return openPipeHelper(uri, YAMNet_Audio.STREAM_TYPE, null, clip, new WavPipeWriter());
+		} catch (FileNotFoundException e) {
+			clip.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public AssetFileDescriptor openTypedAssetFile(Uri uri, String mimeTypeFilter, Bundle opts) throws FileNotFoundException {
+		if (URIMatcher.match(uri) == YAMNET_AUDIO_ID && acceptsStreamType(mimeTypeFilter)) {
+			return new AssetFileDescriptor(openFile(uri, "r"), 0, AssetFileDescriptor.UNKNOWN_LENGTH);
+		}
+		return super.openTypedAssetFile(uri, mimeTypeFilter, opts);
+	}
+
+	@Override
+	public String[] getStreamTypes(Uri uri, String mimeTypeFilter) {
+		if (URIMatcher.match(uri) == YAMNET_AUDIO_ID && acceptsStreamType(mimeTypeFilter)) {
+			return new String[]{YAMNet_Audio.STREAM_TYPE};
+		}
+		return null;
+	}
+
+	private static boolean acceptsStreamType(String mimeTypeFilter) {
+		return mimeTypeFilter == null || "*/*".equals(mimeTypeFilter) || "audio/*".equals(mimeTypeFilter)
+				|| YAMNet_Audio.STREAM_TYPE.equals(mimeTypeFilter) || "audio/x-wav".equals(mimeTypeFilter);
+	}
+
+	/**
+	 * Look up a clip and open its segment now, so a missing clip fails the open call and a
+	 * segment deleted by retention while streaming stays readable until the stream ends
+	 */
+	private StreamedClip openClip(long id) throws FileNotFoundException {
+		initialiseDatabase();
+
+		long day = AudioShards.dayOfId(id);
+		SQLiteDatabase db = day == 0 ? database : audioShards.get(day);
+		if (db == null) {
+			throw new FileNotFoundException("No audio row " + id);
+		}
+
+		Cursor c = null;
+		try {
+			c = db.query(DATABASE_TABLES[1],
+					new String[]{YAMNet_Audio.SEGMENT, YAMNet_Audio.SEGMENT_OFFSET, YAMNet_Audio.SEGMENT_LENGTH, YAMNet_Audio.RAW_AUDIO},
+					YAMNet_Audio._ID + " = ?", new String[]{String.valueOf(id)}, null, null, null);
+			if (c == null || !c.moveToFirst()) {
+				throw new FileNotFoundException("No audio row " + id);
+			}
+
+			StreamedClip clip = new StreamedClip();
+			if (!c.isNull(0)) {
+				clip.segment = new FileInputStream(AudioSegmentStore.getInstance(getContext()).segmentFile(c.getLong(0)));
+				clip.offset = c.getLong(1);
+				clip.length = c.getInt(2);
+			} else if (!c.isNull(3)) {
+				// Rows written before the segment store; small enough for a CursorWindow
+				clip.blob = c.getBlob(3);
+				clip.length = clip.blob.length;
+			} else {
+				throw new FileNotFoundException("Audio row " + id + " has no audio");
+			}
+			return clip;
+		} finally {
+			if (c != null) c.close();
+			audioShards.release(db);
+		}
+	}
+
+	/**
+	 * Where a streamed clip's PCM comes from
+	 */
+	private static final class StreamedClip {
+		FileInputStream segment;
+		long offset;
+		int length;
+		byte[] blob;
+
+		void close() {
+			if (segment == null) return;
+			try {
+				segment.close();
+			} catch (IOException ignored) {}
+		}
+	}
+
+	/**
+	 * Writes the WAV header, then hands the clip's region of the segment file to the pipe with
+	 * FileChannel.transferTo, so the PCM is copied by the kernel rather than through the heap
+	 */
+	private static final class WavPipeWriter implements PipeDataWriter<StreamedClip> {
+		@Override
+		public void writeDataToPipe(ParcelFileDescriptor output, Uri uri, String mimeType, Bundle opts, StreamedClip clip) {
+			// The pipe descriptor belongs to openPipeHelper, which closes it when this returns
+			FileOutputStream out = new FileOutputStream(output.getFileDescriptor());
+			try {
+				ByteBuffer header = ByteBuffer.allocate(WavWriter.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				WavWriter.fillHeader(header, YamnetSession.SAMPLE_RATE, clip.length);
+				FileChannel pipe = out.getChannel();
+				while (header.hasRemaining()) {
+					pipe.write(header);
+				}
+
+				if (clip.blob != null) {
+					out.write(clip.blob);
+				} else {
+					FileChannel source = clip.segment.getChannel();
+					long position = clip.offset;
+					long end = clip.offset + clip.length;
+					while (position < end) {
+						long sent = source.transferTo(position, end - position, pipe);
+						if (sent <= 0) break; // segment shorter than the row says
+						position += sent;
+					}
+				}
+				out.flush();
+			} catch (IOException e) {
+				// Usually the reader closed its end early
+				if (Aware.DEBUG) Log.d(Aware.TAG, "Audio stream " + uri + " ended: " + e.getMessage());
+			} finally {
+				clip.close();
+			}
+		}
+	}
+
+	/**
+	 * Turn label / class_index / min_score / from / to query parameters into where clauses
+	 * served by the (class_index, timestamp) index
+	 */
+	private String appendPredictionFilters(Uri uri, String selection, List<String> args) {
+		StringBuilder where = new StringBuilder(selection != null && !selection.isEmpty() ? "(" + selection + ")" : "");
+
+		String classIndex = uri.getQueryParameter(YAMNet_Predictions.PARAM_CLASS_INDEX);
+		String label = uri.getQueryParameter(YAMNet_Predictions.PARAM_LABEL);
+		if (classIndex == null && label != null) {
+			Integer index = getLabelIndex().get(label);
+			if (index != null) {
+				classIndex = String.valueOf(index);
+			} else {
+				appendWhere(where, YAMNet_Predictions.LABEL + " = ?", args, label);
+			}
+		}
+		if (classIndex != null) appendWhere(where, YAMNet_Predictions.CLASS_INDEX + " = ?", args, classIndex);
+
+		String minScore = uri.getQueryParameter(YAMNet_Predictions.PARAM_MIN_SCORE);
+		if (minScore != null) appendWhere(where, YAMNet_Predictions.SCORE + " >= ?", args, minScore);
+
+		String from = uri.getQueryParameter(YAMNet_Predictions.PARAM_FROM);
+		if (from != null) appendWhere(where, YAMNet_Predictions.TIMESTAMP + " >= ?", args, from);
+
+		String to = uri.getQueryParameter(YAMNet_Predictions.PARAM_TO);
+		if (to != null) appendWhere(where, YAMNet_Predictions.TIMESTAMP + " < ?", args, to);
+
+		return where.length() > 0 ? where.toString() : null;
+	}
+
+	/**
+	 * Turn from / to query parameters on plugin_yamnet_audio into where clauses
+	 */
+	private static String appendAudioFilters(Uri uri, String selection, List<String> args) {
+		StringBuilder where = new StringBuilder(selection != null && !selection.isEmpty() ? "(" + selection + ")" : "");
+
+		String from = uri.getQueryParameter(YAMNet_Audio.PARAM_FROM);
+		if (from != null) appendWhere(where, YAMNet_Audio.TIMESTAMP + " >= ?", args, from);
+
+		String to = uri.getQueryParameter(YAMNet_Audio.PARAM_TO);
+		if (to != null) appendWhere(where, YAMNet_Audio.TIMESTAMP + " < ?", args, to);
+
+		return where.length() > 0 ? where.toString() : null;
+	}
+
+	private static void appendWhere(StringBuilder where, String clause, List<String> args, String arg) {
+		if (where.length() > 0) where.append(" AND ");
+		where.append(clause);
+		args.add(arg);
+	}
+
+	/**
+	 * Label to class index, from the bundled label file
+	 */
+	private synchronized HashMap<String, Integer> getLabelIndex() {
+		if (labelIndex == null) {
+			labelIndex = new HashMap<>();
+			List<String> labels = YamnetSession.loadLabels(getContext());
+			for (int i = 0; i < labels.size(); i++) {
+				labelIndex.put(labels.get(i), i);
+			}
+		}
+		return labelIndex;
+	}
+}
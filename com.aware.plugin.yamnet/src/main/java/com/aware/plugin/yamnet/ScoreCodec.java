@@ -0,0 +1,197 @@
+package com.aware.plugin.yamnet;
+
+/**
+ * Compact binary codec for the full YAMNet score vector (plugin_yamnet.scores_blob)
+ *
+ * Layout, little-endian:
+ * <pre>
+ * byte 0      format (FORMAT_UINT8 or FORMAT_FLOAT16)
+ * bytes 1-2   number of classes
+ * uint8:      bytes 3-6 scale (float32), then one byte per class, score = q * scale
+ * float16:    two bytes (IEEE 754 half precision) per class
+ * </pre>
+ * A 521-class vector takes 528 bytes as uint8 and 1045 bytes as float16, against roughly
+ * 10 KB as JSON. Decoding is a single pass with no allocation, and decodeScore() reads one
+ * class without decoding the rest, so scanning a month of samples stays cheap.
+ */
+public final class ScoreCodec {
+
+    public static final byte FORMAT_UINT8 = 1;
+    public static final byte FORMAT_FLOAT16 = 2;
+
+    /**
+     * Setting values for store_scores_plugin_yamnet
+     */
+    public static final String NONE = "none";
+    public static final String UINT8 = "uint8";
+    public static final String FLOAT16 = "float16";
+
+    private static final int HEADER_SIZE = 3;
+
+    private ScoreCodec() {}
+
+    /**
+     * Format for a store_scores_plugin_yamnet value, or 0 when scores are not stored
+     */
+    public static byte formatOf(String setting) {
+        if (UINT8.equals(setting)) return FORMAT_UINT8;
+        if (FLOAT16.equals(setting)) return FORMAT_FLOAT16;
+        return 0;
+    }
+
+    /**
+     * Size in bytes of an encoded vector
+     */
+    public static int encodedSize(byte format, int count) {
+        return format == FORMAT_UINT8 ? HEADER_SIZE + 4 + count : HEADER_SIZE + 2 * count;
+    }
+
+    /**
+     * Encode scores[0, count) into out, which must be at least encodedSize(format, count) long
+     */
+    public static void encode(float[] scores, int count, byte format, byte[] out) {
+        out[0] = format;
+        out[1] = (byte) count;
+        out[2] = (byte) (count >> 8);
+
+        if (format == FORMAT_UINT8) {
+            // Scale by the largest score so the top classes keep full 8-bit resolution
+            float max = 0f;
+            for (int i = 0; i < count; i++) {
+                if (scores[i] > max) max = scores[i];
+            }
+            float scale = max > 0f ? max / 255f : 1f;
+            putFloat(out, HEADER_SIZE, scale);
+
+            float inverse = 1f / scale;
+            for (int i = 0; i < count; i++) {
+                int q = Math.round(Math.max(scores[i], 0f) * inverse);
+                out[HEADER_SIZE + 4 + i] = (byte) Math.min(q, 255);
+            }
+        } else if (format == FORMAT_FLOAT16) {
+            for (int i = 0; i < count; i++) {
+                short half = toHalf(scores[i]);
+                out[HEADER_SIZE + 2 * i] = (byte) half;
+                out[HEADER_SIZE + 2 * i + 1] = (byte) (half >> 8);
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown score format " + format);
+        }
+    }
+
+    /**
+     * Number of classes in an encoded vector
+     */
+    public static int count(byte[] blob) {
+        return (blob[1] & 0xFF) | ((blob[2] & 0xFF) << 8);
+    }
+
+    /**
+     * Decode a whole vector into out
+     *
+     * @return number of classes decoded
+     */
+    public static int decode(byte[] blob, float[] out) {
+        int count = Math.min(count(blob), out.length);
+
+        if (blob[0] == FORMAT_UINT8) {
+            float scale = getFloat(blob, HEADER_SIZE);
+            for (int i = 0; i < count; i++) {
+                out[i] = (blob[HEADER_SIZE + 4 + i] & 0xFF) * scale;
+            }
+        } else if (blob[0] == FORMAT_FLOAT16) {
+            for (int i = 0; i < count; i++) {
+                out[i] = fromHalf(readHalf(blob, i));
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown score format " + blob[0]);
+        }
+        return count;
+    }
+
+    /**
+     * Decode the score of a single class
+     */
+    public static float decodeScore(byte[] blob, int classIndex) {
+        if (blob[0] == FORMAT_UINT8) {
+            return (blob[HEADER_SIZE + 4 + classIndex] & 0xFF) * getFloat(blob, HEADER_SIZE);
+        }
+        if (blob[0] == FORMAT_FLOAT16) {
+            return fromHalf(readHalf(blob, classIndex));
+        }
+        throw new IllegalArgumentException("Unknown score format " + blob[0]);
+    }
+
+    private static short readHalf(byte[] blob, int i) {
+        return (short) ((blob[HEADER_SIZE + 2 * i] & 0xFF) | ((blob[HEADER_SIZE + 2 * i + 1] & 0xFF) << 8));
+    }
+
+    private static void putFloat(byte[] out, int offset, float value) {
+        int bits = Float.floatToIntBits(value);
+        out[offset] = (byte) bits;
+        out[offset + 1] = (byte) (bits >> 8);
+        out[offset + 2] = (byte) (bits >> 16);
+        out[offset + 3] = (byte) (bits >> 24);
+    }
+
+    private static float getFloat(byte[] in, int offset) {
+        int bits = (in[offset] & 0xFF) | ((in[offset + 1] & 0xFF) << 8)
+                | ((in[offset + 2] & 0xFF) << 16) | ((in[offset + 3] & 0xFF) << 24);
+        return Float.intBitsToFloat(bits);
+    }
+
+    /**
+     * float32 to IEEE 754 half precision, round to nearest even
+     */
+    static short toHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xFF) - 127 + 15;
+        int mantissa = bits & 0x7FFFFF;
+
+        if (((bits >>> 23) & 0xFF) == 0xFF) {
+            // NaN or infinity
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        if (exponent >= 0x1F) {
+            return (short) (sign | 0x7C00); // overflow to infinity
+        }
+        if (exponent <= 0) {
+            if (exponent < -10) return (short) sign; // underflow to zero
+            // Subnormal half
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            int half = mantissa >> shift;
+            int remainder = mantissa & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (remainder > halfway || (remainder == halfway && (half & 1) != 0)) half++;
+            return (short) (sign | half);
+        }
+
+        int half = (exponent << 10) | (mantissa >> 13);
+        int remainder = mantissa & 0x1FFF;
+        if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) half++;
+        return (short) (sign | half);
+    }
+
+    /**
+     * IEEE 754 half precision to float32
+     */
+    static float fromHalf(short half) {
+        int bits = half & 0xFFFF;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1F;
+        int mantissa = bits & 0x3FF;
+
+        if (exponent == 0) {
+            if (mantissa == 0) return Float.intBitsToFloat(sign);
+            // Subnormal: value = mantissa * 2^-24
+            float value = mantissa * 5.9604645e-8f;
+            return sign != 0 ? -value : value;
+        }
+        if (exponent == 0x1F) {
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+    }
+}
@@ -0,0 +1,47 @@
+package com.aware.plugin.yamnet;
+
+/**
+ * Pools frame-major YAMNet scores (one row per 0.48s frame) into a single clip-level score vector
+ */
+public final class ScorePooling {
+
+    /**
+     * Average each class over all frames (default)
+     */
+    public static final String MEAN = "mean";
+
+    /**
+     * Keep the highest score of each class over all frames
+     */
+    public static final String MAX = "max";
+
+    private ScorePooling() {}
+
+    /**
+     * Pool frameCount rows of numClasses scores into out[0, numClasses)
+     */
+    public static void pool(float[] frames, int frameCount, int numClasses, String mode, float[] out) {
+        boolean max = MAX.equals(mode);
+        System.arraycopy(frames, 0, out, 0, numClasses);
+
+        for (int f = 1; f < frameCount; f++) {
+            int row = f * numClasses;
+            if (max) {
+                for (int c = 0; c < numClasses; c++) {
+                    if (frames[row + c] > out[c]) out[c] = frames[row + c];
+                }
+            } else {
+                for (int c = 0; c < numClasses; c++) {
+                    out[c] += frames[row + c];
+                }
+            }
+        }
+
+        if (!max && frameCount > 1) {
+            float scale = 1f / frameCount;
+            for (int c = 0; c < numClasses; c++) {
+                out[c] *= scale;
+            }
+        }
+    }
+}
@@ -5,6 +5,7 @@ import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.os.Bundle;
 import android.preference.CheckBoxPreference;
 import android.preference.EditTextPreference;
+import android.preference.ListPreference;
 import android.preference.Preference;
 import android.preference.PreferenceManager;
 import android.util.Log;
@@ -24,6 +25,22 @@ public class Settings extends AppCompatPreferenceActivity implements OnSharedPre
      */
     public static final String FREQUENCY_PLUGIN_YAMNET = "frequency_plugin_yamnet";
 
+    /**
+     * Adapt the sampling interval to how much the results change, between the minimum and
+     * maximum below, starting from frequency_plugin_yamnet (default = false)
+     */
+    public static final String ADAPTIVE_SAMPLING_PLUGIN_YAMNET = "adaptive_sampling_plugin_yamnet";
+
+    /**
+     * Shortest adaptive sampling interval (default = 1) in minutes
+     */
+    public static final String FREQUENCY_MIN_PLUGIN_YAMNET = "frequency_min_plugin_yamnet";
+
+    /**
+     * Longest adaptive sampling interval (default = 30) in minutes
+     */
+    public static final String FREQUENCY_MAX_PLUGIN_YAMNET = "frequency_max_plugin_yamnet";
+
     /**
      * Audio recording duration (default = 1000) in milliseconds
      */
@@ -39,8 +56,149 @@ public class Settings extends AppCompatPreferenceActivity implements OnSharedPre
      */
     public static final String SAVE_AUDIO_FILES = "save_audio_files";
 
-    private static CheckBoxPreference active, saveAudioFiles;
-    private static EditTextPreference frequency, duration;
+    /**
+     * Format of saved audio files: flac or wav (default = flac)
+     */
+    public static final String AUDIO_FORMAT_PLUGIN_YAMNET = "audio_format_plugin_yamnet";
+
+    /**
+     * FLAC compression level, 0 (fastest) to 8 (smallest) (default = 5)
+     */
+    public static final String FLAC_LEVEL_PLUGIN_YAMNET = "flac_level_plugin_yamnet";
+
+    /**
+     * Hours stored raw audio is kept for (default = 24)
+     */
+    public static final String AUDIO_RETENTION_HOURS_PLUGIN_YAMNET = "audio_retention_hours_plugin_yamnet";
+
+    /**
+     * Most megabytes of raw audio kept; the oldest audio goes first, 0 = no limit (default = 500)
+     */
+    public static final String AUDIO_MAX_MB_PLUGIN_YAMNET = "audio_max_mb_plugin_yamnet";
+
+    /**
+     * Most megabytes of saved recordings kept; the oldest days go first, 0 = no limit (default = 1024)
+     */
+    public static final String AUDIO_FILES_MAX_MB_PLUGIN_YAMNET = "audio_files_max_mb_plugin_yamnet";
+
+    /**
+     * Days saved recordings are kept for, 0 = no limit (default = 30)
+     */
+    public static final String AUDIO_FILES_MAX_DAYS_PLUGIN_YAMNET = "audio_files_max_days_plugin_yamnet";
+
+    /**
+     * Number of top predictions kept per sample (default = 5)
+     */
+    public static final String TOP_K_PLUGIN_YAMNET = "top_k_plugin_yamnet";
+
+    /**
+     * Minimum score for a prediction to be kept (default = 0)
+     */
+    public static final String MIN_SCORE_PLUGIN_YAMNET = "min_score_plugin_yamnet";
+
+    /**
+     * How per-frame scores are pooled into clip-level scores: mean or max (default = mean)
+     */
+    public static final String POOLING_PLUGIN_YAMNET = "pooling_plugin_yamnet";
+
+    /**
+     * Store time-resolved predictions for every 0.48s frame (default = false)
+     */
+    public static final String FRAME_OUTPUT_PLUGIN_YAMNET = "frame_output_plugin_yamnet";
+
+    /**
+     * YAMNet model variant: float32, int8_dynamic or int8_full (default = float32); variants
+     * that are not packaged with the app fall back to float32
+     */
+    public static final String MODEL_VARIANT_PLUGIN_YAMNET = "model_variant_plugin_yamnet";
+
+    /**
+     * Version of a model installed in app storage through ModelRegistry.install (default = empty,
+     * use the bundled model_variant_plugin_yamnet); a missing or unverified version falls back to it
+     */
+    public static final String MODEL_VERSION_PLUGIN_YAMNET = "model_version_plugin_yamnet";
+
+    /**
+     * Number of inference threads (default = 0, let TensorFlow Lite decide)
+     */
+    public static final String THREADS_PLUGIN_YAMNET = "threads_plugin_yamnet";
+
+    /**
+     * Run inference through the XNNPACK CPU delegate (default = true)
+     */
+    public static final String XNNPACK_PLUGIN_YAMNET = "xnnpack_plugin_yamnet";
+
+    /**
+     * Skip inference on clips quieter than silence_threshold_plugin_yamnet and store a silence row instead (default = false)
+     */
+    public static final String SILENCE_GATE_PLUGIN_YAMNET = "silence_gate_plugin_yamnet";
+
+    /**
+     * RMS level below which the silence gate skips a clip, in dBFS (default = -60)
+     */
+    public static final String SILENCE_THRESHOLD_PLUGIN_YAMNET = "silence_threshold_plugin_yamnet";
+
+    /**
+     * Continuous streaming mode: keep the microphone open in a foreground service and classify
+     * overlapping windows instead of sampling every frequency_plugin_yamnet minutes (default = false)
+     */
+    public static final String CONTINUOUS_PLUGIN_YAMNET = "continuous_plugin_yamnet";
+
+    /**
+     * Hop between analysed windows in continuous mode (default = 480) in milliseconds
+     */
+    public static final String HOP_PLUGIN_YAMNET = "hop_plugin_yamnet";
+
+    /**
+     * Store the full 521-class score vector in plugin_yamnet.scores_blob: none, uint8 or float16 (default = none)
+     */
+    public static final String STORE_SCORES_PLUGIN_YAMNET = "store_scores_plugin_yamnet";
+
+    /**
+     * In continuous mode, group-commit analysis rows every N samples (default = 1, write each sample)
+     */
+    public static final String WRITE_BATCH_SIZE_PLUGIN_YAMNET = "write_batch_size_plugin_yamnet";
+
+    /**
+     * In continuous mode, longest time analysis rows wait for a group commit (default = 5000) in
+     * milliseconds; 0 = no time limit, only write_batch_size_plugin_yamnet
+     */
+    public static final String WRITE_BATCH_MS_PLUGIN_YAMNET = "write_batch_ms_plugin_yamnet";
+
+    /**
+     * Pick threads, recording duration, gating and write deferral for each sample from the battery
+     * and thermal state (default = false)
+     */
+    public static final String BUDGET_CONTROLLER_PLUGIN_YAMNET = "budget_controller_plugin_yamnet";
+
+    /**
+     * Battery level, in percent, at or below which an unplugged device samples in the saver tier (default = 30)
+     */
+    public static final String BUDGET_SAVER_BATTERY_PLUGIN_YAMNET = "budget_saver_battery_plugin_yamnet";
+
+    /**
+     * Battery level, in percent, at or below which an unplugged device samples in the critical tier (default = 15)
+     */
+    public static final String BUDGET_CRITICAL_BATTERY_PLUGIN_YAMNET = "budget_critical_battery_plugin_yamnet";
+
+    /**
+     * Battery temperature, in degrees Celsius, from which samples are taken in the saver tier (default = 40)
+     */
+    public static final String BUDGET_MAX_TEMPERATURE_PLUGIN_YAMNET = "budget_max_temperature_plugin_yamnet";
+
+    /**
+     * Longest recording in the saver tier (default = 1000) in milliseconds
+     */
+    public static final String BUDGET_SAVER_DURATION_PLUGIN_YAMNET = "budget_saver_duration_plugin_yamnet";
+
+    /**
+     * In the saver and critical tiers, write analysis rows every N samples (default = 10)
+     */
+    public static final String BUDGET_DEFER_SAMPLES_PLUGIN_YAMNET = "budget_defer_samples_plugin_yamnet";
+
+    private static CheckBoxPreference active, saveAudioFiles, frameOutput, xnnpack, continuous, silenceGate, adaptiveSampling, budgetController;
+    private static EditTextPreference frequency, frequencyMin, frequencyMax, duration, topK, minScore, threads, hop, writeBatchSize, writeBatchMs, flacLevel, audioRetentionHours, audioMaxMb, audioFilesMaxMb, audioFilesMaxDays, silenceThreshold, budgetSaverBattery, budgetCriticalBattery, budgetMaxTemperature, budgetSaverDuration, budgetDeferSamples, modelVersion;
+    private static ListPreference pooling, storeScores, audioFormat, modelVariant;
     private static final String TAG = "yamnet";
 
     @Override
@@ -63,6 +221,18 @@ public class Settings extends AppCompatPreferenceActivity implements OnSharedPre
             Aware.setSetting(getApplicationContext(), FREQUENCY_PLUGIN_YAMNET, 5);
         }
 
+        if (Aware.getSetting(getApplicationContext(), ADAPTIVE_SAMPLING_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), ADAPTIVE_SAMPLING_PLUGIN_YAMNET, false);
+        }
+
+        if (Aware.getSetting(getApplicationContext(), FREQUENCY_MIN_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), FREQUENCY_MIN_PLUGIN_YAMNET, 1);
+        }
+
+        if (Aware.getSetting(getApplicationContext(), FREQUENCY_MAX_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), FREQUENCY_MAX_PLUGIN_YAMNET, 30);
+        }
+
         if (Aware.getSetting(getApplicationContext(), DURATION_PLUGIN_YAMNET).length() == 0) {
             Aware.setSetting(getApplicationContext(), DURATION_PLUGIN_YAMNET, 1000);
         }
@@ -70,6 +240,110 @@ public class Settings extends AppCompatPreferenceActivity implements OnSharedPre
         if (Aware.getSetting(getApplicationContext(), SAVE_AUDIO_FILES).length() == 0) {
             Aware.setSetting(getApplicationContext(), SAVE_AUDIO_FILES, false);
         }
+
+        if (Aware.getSetting(getApplicationContext(), AUDIO_FORMAT_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), AUDIO_FORMAT_PLUGIN_YAMNET, "flac");
+        }
+
+        if (Aware.getSetting(getApplicationContext(), FLAC_LEVEL_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), FLAC_LEVEL_PLUGIN_YAMNET, 5);
+        }
+
+        if (Aware.getSetting(getApplicationContext(), AUDIO_RETENTION_HOURS_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), AUDIO_RETENTION_HOURS_PLUGIN_YAMNET, 24);
+        }
+
+        if (Aware.getSetting(getApplicationContext(), AUDIO_MAX_MB_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), AUDIO_MAX_MB_PLUGIN_YAMNET, 500);
+        }
+
+        if (Aware.getSetting(getApplicationContext(), AUDIO_FILES_MAX_MB_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), AUDIO_FILES_MAX_MB_PLUGIN_YAMNET, 1024);
+        }
+
+        if (Aware.getSetting(getApplicationContext(), AUDIO_FILES_MAX_DAYS_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), AUDIO_FILES_MAX_DAYS_PLUGIN_YAMNET, 30);
+        }
+
+        if (Aware.getSetting(getApplicationContext(), TOP_K_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), TOP_K_PLUGIN_YAMNET, 5);
+        }
+
+        if (Aware.getSetting(getApplicationContext(), MIN_SCORE_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), MIN_SCORE_PLUGIN_YAMNET, 0);
+        }
+
+        if (Aware.getSetting(getApplicationContext(), POOLING_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), POOLING_PLUGIN_YAMNET, "mean");
+        }
+
+        if (Aware.getSetting(getApplicationContext(), FRAME_OUTPUT_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), FRAME_OUTPUT_PLUGIN_YAMNET, false);
+        }
+
+        if (Aware.getSetting(getApplicationContext(), MODEL_VARIANT_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), MODEL_VARIANT_PLUGIN_YAMNET, ModelRegistry.FLOAT32);
+        }
+
+        if (Aware.getSetting(getApplicationContext(), THREADS_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), THREADS_PLUGIN_YAMNET, 0);
+        }
+
+        if (Aware.getSetting(getApplicationContext(), XNNPACK_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), XNNPACK_PLUGIN_YAMNET, true);
+        }
+
+        if (Aware.getSetting(getApplicationContext(), SILENCE_GATE_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), SILENCE_GATE_PLUGIN_YAMNET, false);
+        }
+
+        if (Aware.getSetting(getApplicationContext(), SILENCE_THRESHOLD_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), SILENCE_THRESHOLD_PLUGIN_YAMNET, -60);
+        }
+
+        if (Aware.getSetting(getApplicationContext(), CONTINUOUS_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), CONTINUOUS_PLUGIN_YAMNET, false);
+        }
+
+        if (Aware.getSetting(getApplicationContext(), HOP_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), HOP_PLUGIN_YAMNET, 480);
+        }
+
+        if (Aware.getSetting(getApplicationContext(), STORE_SCORES_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), STORE_SCORES_PLUGIN_YAMNET, "none");
+        }
+
+        if (Aware.getSetting(getApplicationContext(), WRITE_BATCH_SIZE_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), WRITE_BATCH_SIZE_PLUGIN_YAMNET, 1);
+        }
+
+        if (Aware.getSetting(getApplicationContext(), WRITE_BATCH_MS_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), WRITE_BATCH_MS_PLUGIN_YAMNET, 5000);
+        }
+
+        if (Aware.getSetting(getApplicationContext(), BUDGET_CONTROLLER_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), BUDGET_CONTROLLER_PLUGIN_YAMNET, false);
+        }
+
+        if (Aware.getSetting(getApplicationContext(), BUDGET_SAVER_BATTERY_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), BUDGET_SAVER_BATTERY_PLUGIN_YAMNET, 30);
+        }
+
+        if (Aware.getSetting(getApplicationContext(), BUDGET_CRITICAL_BATTERY_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), BUDGET_CRITICAL_BATTERY_PLUGIN_YAMNET, 15);
+        }
+
+        if (Aware.getSetting(getApplicationContext(), BUDGET_MAX_TEMPERATURE_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), BUDGET_MAX_TEMPERATURE_PLUGIN_YAMNET, 40);
+        }
+
+        if (Aware.getSetting(getApplicationContext(), BUDGET_SAVER_DURATION_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), BUDGET_SAVER_DURATION_PLUGIN_YAMNET, 1000);
+        }
+
+        if (Aware.getSetting(getApplicationContext(), BUDGET_DEFER_SAMPLES_PLUGIN_YAMNET).length() == 0) {
+            Aware.setSetting(getApplicationContext(), BUDGET_DEFER_SAMPLES_PLUGIN_YAMNET, 10);
+        }
     }
 
     private void updatePreferencesState() {
@@ -77,8 +351,38 @@ public class Settings extends AppCompatPreferenceActivity implements OnSharedPre
 
         active.setEnabled(configUpdateEnabled);
         frequency.setEnabled(configUpdateEnabled);
+        adaptiveSampling.setEnabled(configUpdateEnabled);
+        frequencyMin.setEnabled(configUpdateEnabled);
+        frequencyMax.setEnabled(configUpdateEnabled);
         duration.setEnabled(configUpdateEnabled);
         saveAudioFiles.setEnabled(configUpdateEnabled);
+        audioFormat.setEnabled(configUpdateEnabled);
+        flacLevel.setEnabled(configUpdateEnabled);
+        audioRetentionHours.setEnabled(configUpdateEnabled);
+        audioMaxMb.setEnabled(configUpdateEnabled);
+        audioFilesMaxMb.setEnabled(configUpdateEnabled);
+        audioFilesMaxDays.setEnabled(configUpdateEnabled);
+        topK.setEnabled(configUpdateEnabled);
+        minScore.setEnabled(configUpdateEnabled);
+        pooling.setEnabled(configUpdateEnabled);
+        frameOutput.setEnabled(configUpdateEnabled);
+        modelVariant.setEnabled(configUpdateEnabled);
+        modelVersion.setEnabled(configUpdateEnabled);
+        threads.setEnabled(configUpdateEnabled);
+        xnnpack.setEnabled(configUpdateEnabled);
+        silenceGate.setEnabled(configUpdateEnabled);
+        silenceThreshold.setEnabled(configUpdateEnabled);
+        continuous.setEnabled(configUpdateEnabled);
+        hop.setEnabled(configUpdateEnabled);
+        storeScores.setEnabled(configUpdateEnabled);
+        writeBatchSize.setEnabled(configUpdateEnabled);
+        writeBatchMs.setEnabled(configUpdateEnabled);
+        budgetController.setEnabled(configUpdateEnabled);
+        budgetSaverBattery.setEnabled(configUpdateEnabled);
+        budgetCriticalBattery.setEnabled(configUpdateEnabled);
+        budgetMaxTemperature.setEnabled(configUpdateEnabled);
+        budgetSaverDuration.setEnabled(configUpdateEnabled);
+        budgetDeferSamples.setEnabled(configUpdateEnabled);
     }
 
     @Override
@@ -102,6 +406,31 @@ public class Settings extends AppCompatPreferenceActivity implements OnSharedPre
         frequency.setText(freqValue);
         frequency.setSummary("Every " + freqValue + " minutes");
 
+        // Adaptive sampling
+        adaptiveSampling = (CheckBoxPreference) findPreference(ADAPTIVE_SAMPLING_PLUGIN_YAMNET);
+        boolean isAdaptive = Aware.getSetting(getApplicationContext(), ADAPTIVE_SAMPLING_PLUGIN_YAMNET).equals("true");
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putBoolean(ADAPTIVE_SAMPLING_PLUGIN_YAMNET, isAdaptive)
+                .apply();
+        adaptiveSampling.setChecked(isAdaptive);
+
+        // Adaptive interval bounds
+        frequencyMin = (EditTextPreference) findPreference(FREQUENCY_MIN_PLUGIN_YAMNET);
+        String freqMinValue = Aware.getSetting(getApplicationContext(), FREQUENCY_MIN_PLUGIN_YAMNET);
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(FREQUENCY_MIN_PLUGIN_YAMNET, freqMinValue)
+                .apply();
+        frequencyMin.setText(freqMinValue);
+        frequencyMin.setSummary("At most every " + freqMinValue + " minutes");
+
+        frequencyMax = (EditTextPreference) findPreference(FREQUENCY_MAX_PLUGIN_YAMNET);
+        String freqMaxValue = Aware.getSetting(getApplicationContext(), FREQUENCY_MAX_PLUGIN_YAMNET);
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(FREQUENCY_MAX_PLUGIN_YAMNET, freqMaxValue)
+                .apply();
+        frequencyMax.setText(freqMaxValue);
+        frequencyMax.setSummary("At least every " + freqMaxValue + " minutes");
+
         // Duration
         duration = (EditTextPreference) findPreference(DURATION_PLUGIN_YAMNET);
         String durValue = Aware.getSetting(getApplicationContext(), DURATION_PLUGIN_YAMNET);
@@ -120,6 +449,243 @@ public class Settings extends AppCompatPreferenceActivity implements OnSharedPre
                 .apply();
         saveAudioFiles.setChecked(isSaveAudioEnabled);
 
+        // Saved audio format
+        audioFormat = (ListPreference) findPreference(AUDIO_FORMAT_PLUGIN_YAMNET);
+        String audioFormatValue = Aware.getSetting(getApplicationContext(), AUDIO_FORMAT_PLUGIN_YAMNET);
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(AUDIO_FORMAT_PLUGIN_YAMNET, audioFormatValue)
+                .apply();
+        audioFormat.setValue(audioFormatValue);
+        audioFormat.setSummary("Save recordings as " + audioFormatValue);
+
+        // FLAC compression level
+        flacLevel = (EditTextPreference) findPreference(FLAC_LEVEL_PLUGIN_YAMNET);
+        String flacLevelValue = Aware.getSetting(getApplicationContext(), FLAC_LEVEL_PLUGIN_YAMNET);
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(FLAC_LEVEL_PLUGIN_YAMNET, flacLevelValue)
+                .apply();
+        flacLevel.setText(flacLevelValue);
+        flacLevel.setSummary("Compression level " + flacLevelValue);
+
+        // Raw audio retention
+        audioRetentionHours = (EditTextPreference) findPreference(AUDIO_RETENTION_HOURS_PLUGIN_YAMNET);
+        String audioRetentionHoursValue = Aware.getSetting(getApplicationContext(), AUDIO_RETENTION_HOURS_PLUGIN_YAMNET);
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(AUDIO_RETENTION_HOURS_PLUGIN_YAMNET, audioRetentionHoursValue)
+                .apply();
+        audioRetentionHours.setText(audioRetentionHoursValue);
+        audioRetentionHours.setSummary("Keep audio for " + audioRetentionHoursValue + " hours");
+
+        // Raw audio size limit
+        audioMaxMb = (EditTextPreference) findPreference(AUDIO_MAX_MB_PLUGIN_YAMNET);
+        String audioMaxMbValue = Aware.getSetting(getApplicationContext(), AUDIO_MAX_MB_PLUGIN_YAMNET);
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(AUDIO_MAX_MB_PLUGIN_YAMNET, audioMaxMbValue)
+                .apply();
+        audioMaxMb.setText(audioMaxMbValue);
+        audioMaxMb.setSummary("Keep up to " + audioMaxMbValue + " MB of audio (0 = no limit)");
+
+        // Saved recordings size limit
+        audioFilesMaxMb = (EditTextPreference) findPreference(AUDIO_FILES_MAX_MB_PLUGIN_YAMNET);
+        String audioFilesMaxMbValue = Aware.getSetting(getApplicationContext(), AUDIO_FILES_MAX_MB_PLUGIN_YAMNET);
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(AUDIO_FILES_MAX_MB_PLUGIN_YAMNET, audioFilesMaxMbValue)
+                .apply();
+        audioFilesMaxMb.setText(audioFilesMaxMbValue);
+        audioFilesMaxMb.setSummary("Keep up to " + audioFilesMaxMbValue + " MB of recordings (0 = no limit)");
+
+        // Saved recordings age limit
+        audioFilesMaxDays = (EditTextPreference) findPreference(AUDIO_FILES_MAX_DAYS_PLUGIN_YAMNET);
+        String audioFilesMaxDaysValue = Aware.getSetting(getApplicationContext(), AUDIO_FILES_MAX_DAYS_PLUGIN_YAMNET);
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(AUDIO_FILES_MAX_DAYS_PLUGIN_YAMNET, audioFilesMaxDaysValue)
+                .apply();
+        audioFilesMaxDays.setText(audioFilesMaxDaysValue);
+        audioFilesMaxDays.setSummary("Keep recordings for " + audioFilesMaxDaysValue + " days (0 = no limit)");
+
+        // Top K
+        topK = (EditTextPreference) findPreference(TOP_K_PLUGIN_YAMNET);
+        String topKValue = Aware.getSetting(getApplicationContext(), TOP_K_PLUGIN_YAMNET);
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(TOP_K_PLUGIN_YAMNET, topKValue)
+                .apply();
+        topK.setText(topKValue);
+        topK.setSummary("Keep top " + topKValue + " predictions");
+
+        // Minimum score
+        minScore = (EditTextPreference) findPreference(MIN_SCORE_PLUGIN_YAMNET);
+        String minScoreValue = Aware.getSetting(getApplicationContext(), MIN_SCORE_PLUGIN_YAMNET);
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(MIN_SCORE_PLUGIN_YAMNET, minScoreValue)
+                .apply();
+        minScore.setText(minScoreValue);
+        minScore.setSummary("Keep predictions scoring at least " + minScoreValue);
+
+        // Pooling
+        pooling = (ListPreference) findPreference(POOLING_PLUGIN_YAMNET);
+        String poolingValue = Aware.getSetting(getApplicationContext(), POOLING_PLUGIN_YAMNET);
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(POOLING_PLUGIN_YAMNET, poolingValue)
+                .apply();
+        pooling.setValue(poolingValue);
+        pooling.setSummary("Pool frame scores by " + poolingValue);
+
+        // Per-frame output
+        frameOutput = (CheckBoxPreference) findPreference(FRAME_OUTPUT_PLUGIN_YAMNET);
+        boolean isFrameOutputEnabled = Aware.getSetting(getApplicationContext(), FRAME_OUTPUT_PLUGIN_YAMNET).equals("true");
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putBoolean(FRAME_OUTPUT_PLUGIN_YAMNET, isFrameOutputEnabled)
+                .apply();
+        frameOutput.setChecked(isFrameOutputEnabled);
+
+        // Model variant
+        modelVariant = (ListPreference) findPreference(MODEL_VARIANT_PLUGIN_YAMNET);
+        String modelVariantValue = Aware.getSetting(getApplicationContext(), MODEL_VARIANT_PLUGIN_YAMNET);
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(MODEL_VARIANT_PLUGIN_YAMNET, modelVariantValue)
+                .apply();
+        modelVariant.setValue(modelVariantValue);
+        modelVariant.setSummary(modelVariantSummary(modelVariantValue));
+
+        // Installed model version
+        modelVersion = (EditTextPreference) findPreference(MODEL_VERSION_PLUGIN_YAMNET);
+        String modelVersionValue = Aware.getSetting(getApplicationContext(), MODEL_VERSION_PLUGIN_YAMNET);
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(MODEL_VERSION_PLUGIN_YAMNET, modelVersionValue)
+                .apply();
+        modelVersion.setText(modelVersionValue);
+        modelVersion.setSummary(modelVersionSummary(modelVersionValue));
+
+        // Inference threads
+        threads = (EditTextPreference) findPreference(THREADS_PLUGIN_YAMNET);
+        String threadsValue = Aware.getSetting(getApplicationContext(), THREADS_PLUGIN_YAMNET);
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(THREADS_PLUGIN_YAMNET, threadsValue)
+                .apply();
+        threads.setText(threadsValue);
+        threads.setSummary(threadsSummary(threadsValue));
+
+        // XNNPACK
+        xnnpack = (CheckBoxPreference) findPreference(XNNPACK_PLUGIN_YAMNET);
+        boolean isXnnpackEnabled = Aware.getSetting(getApplicationContext(), XNNPACK_PLUGIN_YAMNET).equals("true");
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putBoolean(XNNPACK_PLUGIN_YAMNET, isXnnpackEnabled)
+                .apply();
+        xnnpack.setChecked(isXnnpackEnabled);
+
+        // Silence gate
+        silenceGate = (CheckBoxPreference) findPreference(SILENCE_GATE_PLUGIN_YAMNET);
+        boolean isSilenceGateEnabled = Aware.getSetting(getApplicationContext(), SILENCE_GATE_PLUGIN_YAMNET).equals("true");
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putBoolean(SILENCE_GATE_PLUGIN_YAMNET, isSilenceGateEnabled)
+                .apply();
+        silenceGate.setChecked(isSilenceGateEnabled);
+
+        // Silence threshold
+        silenceThreshold = (EditTextPreference) findPreference(SILENCE_THRESHOLD_PLUGIN_YAMNET);
+        String silenceThresholdValue = Aware.getSetting(getApplicationContext(), SILENCE_THRESHOLD_PLUGIN_YAMNET);
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(SILENCE_THRESHOLD_PLUGIN_YAMNET, silenceThresholdValue)
+                .apply();
+        silenceThreshold.setText(silenceThresholdValue);
+        silenceThreshold.setSummary("Skip clips below " + silenceThresholdValue + " dBFS");
+
+        // Continuous mode
+        continuous = (CheckBoxPreference) findPreference(CONTINUOUS_PLUGIN_YAMNET);
+        boolean isContinuous = Aware.getSetting(getApplicationContext(), CONTINUOUS_PLUGIN_YAMNET).equals("true");
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putBoolean(CONTINUOUS_PLUGIN_YAMNET, isContinuous)
+                .apply();
+        continuous.setChecked(isContinuous);
+
+        // Hop
+        hop = (EditTextPreference) findPreference(HOP_PLUGIN_YAMNET);
+        String hopValue = Aware.getSetting(getApplicationContext(), HOP_PLUGIN_YAMNET);
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(HOP_PLUGIN_YAMNET, hopValue)
+                .apply();
+        hop.setText(hopValue);
+        hop.setSummary("Analyse a window every " + hopValue + " milliseconds");
+
+        // Full score vector storage
+        storeScores = (ListPreference) findPreference(STORE_SCORES_PLUGIN_YAMNET);
+        String storeScoresValue = Aware.getSetting(getApplicationContext(), STORE_SCORES_PLUGIN_YAMNET);
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(STORE_SCORES_PLUGIN_YAMNET, storeScoresValue)
+                .apply();
+        storeScores.setValue(storeScoresValue);
+        storeScores.setSummary("Store full scores as " + storeScoresValue);
+
+        // Write batch size
+        writeBatchSize = (EditTextPreference) findPreference(WRITE_BATCH_SIZE_PLUGIN_YAMNET);
+        String writeBatchSizeValue = Aware.getSetting(getApplicationContext(), WRITE_BATCH_SIZE_PLUGIN_YAMNET);
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(WRITE_BATCH_SIZE_PLUGIN_YAMNET, writeBatchSizeValue)
+                .apply();
+        writeBatchSize.setText(writeBatchSizeValue);
+        writeBatchSize.setSummary("Write every " + writeBatchSizeValue + " samples");
+
+        // Write batch time
+        writeBatchMs = (EditTextPreference) findPreference(WRITE_BATCH_MS_PLUGIN_YAMNET);
+        String writeBatchMsValue = Aware.getSetting(getApplicationContext(), WRITE_BATCH_MS_PLUGIN_YAMNET);
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(WRITE_BATCH_MS_PLUGIN_YAMNET, writeBatchMsValue)
+                .apply();
+        writeBatchMs.setText(writeBatchMsValue);
+        writeBatchMs.setSummary("Write at least every " + writeBatchMsValue + " milliseconds");
+
+        // Budget controller
+        budgetController = (CheckBoxPreference) findPreference(BUDGET_CONTROLLER_PLUGIN_YAMNET);
+        boolean isBudgetEnabled = Aware.getSetting(getApplicationContext(), BUDGET_CONTROLLER_PLUGIN_YAMNET).equals("true");
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putBoolean(BUDGET_CONTROLLER_PLUGIN_YAMNET, isBudgetEnabled)
+                .apply();
+        budgetController.setChecked(isBudgetEnabled);
+
+        // Budget battery levels
+        budgetSaverBattery = (EditTextPreference) findPreference(BUDGET_SAVER_BATTERY_PLUGIN_YAMNET);
+        String budgetSaverBatteryValue = Aware.getSetting(getApplicationContext(), BUDGET_SAVER_BATTERY_PLUGIN_YAMNET);
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(BUDGET_SAVER_BATTERY_PLUGIN_YAMNET, budgetSaverBatteryValue)
+                .apply();
+        budgetSaverBattery.setText(budgetSaverBatteryValue);
+        budgetSaverBattery.setSummary("Save power at " + budgetSaverBatteryValue + "% battery");
+
+        budgetCriticalBattery = (EditTextPreference) findPreference(BUDGET_CRITICAL_BATTERY_PLUGIN_YAMNET);
+        String budgetCriticalBatteryValue = Aware.getSetting(getApplicationContext(), BUDGET_CRITICAL_BATTERY_PLUGIN_YAMNET);
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(BUDGET_CRITICAL_BATTERY_PLUGIN_YAMNET, budgetCriticalBatteryValue)
+                .apply();
+        budgetCriticalBattery.setText(budgetCriticalBatteryValue);
+        budgetCriticalBattery.setSummary("Minimal sampling at " + budgetCriticalBatteryValue + "% battery");
+
+        // Budget temperature
+        budgetMaxTemperature = (EditTextPreference) findPreference(BUDGET_MAX_TEMPERATURE_PLUGIN_YAMNET);
+        String budgetMaxTemperatureValue = Aware.getSetting(getApplicationContext(), BUDGET_MAX_TEMPERATURE_PLUGIN_YAMNET);
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(BUDGET_MAX_TEMPERATURE_PLUGIN_YAMNET, budgetMaxTemperatureValue)
+                .apply();
+        budgetMaxTemperature.setText(budgetMaxTemperatureValue);
+        budgetMaxTemperature.setSummary("Save power from " + budgetMaxTemperatureValue + " °C");
+
+        // Budget saver duration
+        budgetSaverDuration = (EditTextPreference) findPreference(BUDGET_SAVER_DURATION_PLUGIN_YAMNET);
+        String budgetSaverDurationValue = Aware.getSetting(getApplicationContext(), BUDGET_SAVER_DURATION_PLUGIN_YAMNET);
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(BUDGET_SAVER_DURATION_PLUGIN_YAMNET, budgetSaverDurationValue)
+                .apply();
+        budgetSaverDuration.setText(budgetSaverDurationValue);
+        budgetSaverDuration.setSummary("Record at most " + budgetSaverDurationValue + " milliseconds");
+
+        // Budget write deferral
+        budgetDeferSamples = (EditTextPreference) findPreference(BUDGET_DEFER_SAMPLES_PLUGIN_YAMNET);
+        String budgetDeferSamplesValue = Aware.getSetting(getApplicationContext(), BUDGET_DEFER_SAMPLES_PLUGIN_YAMNET);
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(BUDGET_DEFER_SAMPLES_PLUGIN_YAMNET, budgetDeferSamplesValue)
+                .apply();
+        budgetDeferSamples.setText(budgetDeferSamplesValue);
+        budgetDeferSamples.setSummary("Write every " + budgetDeferSamplesValue + " samples");
+
         // Update preferences state based on enable_config_update
         updatePreferencesState();
     }
@@ -150,6 +716,26 @@ public class Settings extends AppCompatPreferenceActivity implements OnSharedPre
             Aware.setSetting(getApplicationContext(), key, value);
             frequency.setSummary("Every " + value + " minutes");
         }
+        else if (preference.getKey().equals(ADAPTIVE_SAMPLING_PLUGIN_YAMNET)) {
+            boolean isChecked = sharedPreferences.getBoolean(key, false);
+            Aware.setSetting(getApplicationContext(), key, isChecked);
+            adaptiveSampling.setChecked(isChecked);
+
+            // Restart the plugin so the sampler switches between the fixed and the adaptive interval
+            if (Aware.getSetting(getApplicationContext(), STATUS_PLUGIN_YAMNET).equals("true")) {
+                Aware.startPlugin(getApplicationContext(), "com.aware.plugin.yamnet");
+            }
+        }
+        else if (preference.getKey().equals(FREQUENCY_MIN_PLUGIN_YAMNET)) {
+            String value = sharedPreferences.getString(key, "1");
+            Aware.setSetting(getApplicationContext(), key, value);
+            frequencyMin.setSummary("At most every " + value + " minutes");
+        }
+        else if (preference.getKey().equals(FREQUENCY_MAX_PLUGIN_YAMNET)) {
+            String value = sharedPreferences.getString(key, "30");
+            Aware.setSetting(getApplicationContext(), key, value);
+            frequencyMax.setSummary("At least every " + value + " minutes");
+        }
         else if (preference.getKey().equals(DURATION_PLUGIN_YAMNET)) {
             String value = sharedPreferences.getString(key, "1000");
             Aware.setSetting(getApplicationContext(), key, value);
@@ -160,5 +746,165 @@ public class Settings extends AppCompatPreferenceActivity implements OnSharedPre
             Aware.setSetting(getApplicationContext(), key, isChecked);
             saveAudioFiles.setChecked(isChecked);
         }
+        else if (preference.getKey().equals(AUDIO_FORMAT_PLUGIN_YAMNET)) {
+            String value = sharedPreferences.getString(key, "flac");
+            Aware.setSetting(getApplicationContext(), key, value);
+            audioFormat.setSummary("Save recordings as " + value);
+        }
+        else if (preference.getKey().equals(FLAC_LEVEL_PLUGIN_YAMNET)) {
+            String value = sharedPreferences.getString(key, "5");
+            Aware.setSetting(getApplicationContext(), key, value);
+            flacLevel.setSummary("Compression level " + value);
+        }
+        else if (preference.getKey().equals(AUDIO_RETENTION_HOURS_PLUGIN_YAMNET)) {
+            String value = sharedPreferences.getString(key, "24");
+            Aware.setSetting(getApplicationContext(), key, value);
+            audioRetentionHours.setSummary("Keep audio for " + value + " hours");
+        }
+        else if (preference.getKey().equals(AUDIO_MAX_MB_PLUGIN_YAMNET)) {
+            String value = sharedPreferences.getString(key, "500");
+            Aware.setSetting(getApplicationContext(), key, value);
+            audioMaxMb.setSummary("Keep up to " + value + " MB of audio (0 = no limit)");
+        }
+        else if (preference.getKey().equals(AUDIO_FILES_MAX_MB_PLUGIN_YAMNET)) {
+            String value = sharedPreferences.getString(key, "1024");
+            Aware.setSetting(getApplicationContext(), key, value);
+            audioFilesMaxMb.setSummary("Keep up to " + value + " MB of recordings (0 = no limit)");
+        }
+        else if (preference.getKey().equals(AUDIO_FILES_MAX_DAYS_PLUGIN_YAMNET)) {
+            String value = sharedPreferences.getString(key, "30");
+            Aware.setSetting(getApplicationContext(), key, value);
+            audioFilesMaxDays.setSummary("Keep recordings for " + value + " days (0 = no limit)");
+        }
+        else if (preference.getKey().equals(TOP_K_PLUGIN_YAMNET)) {
+            String value = sharedPreferences.getString(key, "5");
+            Aware.setSetting(getApplicationContext(), key, value);
+            topK.setSummary("Keep top " + value + " predictions");
+        }
+        else if (preference.getKey().equals(MIN_SCORE_PLUGIN_YAMNET)) {
+            String value = sharedPreferences.getString(key, "0");
+            Aware.setSetting(getApplicationContext(), key, value);
+            minScore.setSummary("Keep predictions scoring at least " + value);
+        }
+        else if (preference.getKey().equals(POOLING_PLUGIN_YAMNET)) {
+            String value = sharedPreferences.getString(key, "mean");
+            Aware.setSetting(getApplicationContext(), key, value);
+            pooling.setSummary("Pool frame scores by " + value);
+        }
+        else if (preference.getKey().equals(FRAME_OUTPUT_PLUGIN_YAMNET)) {
+            boolean isChecked = sharedPreferences.getBoolean(key, false);
+            Aware.setSetting(getApplicationContext(), key, isChecked);
+            frameOutput.setChecked(isChecked);
+        }
+        else if (preference.getKey().equals(MODEL_VARIANT_PLUGIN_YAMNET)) {
+            String value = sharedPreferences.getString(key, ModelRegistry.FLOAT32);
+            Aware.setSetting(getApplicationContext(), key, value);
+            modelVariant.setSummary(modelVariantSummary(value));
+        }
+        else if (preference.getKey().equals(MODEL_VERSION_PLUGIN_YAMNET)) {
+            String value = sharedPreferences.getString(key, "").trim();
+            Aware.setSetting(getApplicationContext(), key, value);
+            modelVersion.setSummary(modelVersionSummary(value));
+        }
+        else if (preference.getKey().equals(THREADS_PLUGIN_YAMNET)) {
+            String value = sharedPreferences.getString(key, "0");
+            Aware.setSetting(getApplicationContext(), key, value);
+            threads.setSummary(threadsSummary(value));
+        }
+        else if (preference.getKey().equals(XNNPACK_PLUGIN_YAMNET)) {
+            boolean isChecked = sharedPreferences.getBoolean(key, true);
+            Aware.setSetting(getApplicationContext(), key, isChecked);
+            xnnpack.setChecked(isChecked);
+        }
+        else if (preference.getKey().equals(SILENCE_GATE_PLUGIN_YAMNET)) {
+            boolean isChecked = sharedPreferences.getBoolean(key, false);
+            Aware.setSetting(getApplicationContext(), key, isChecked);
+            silenceGate.setChecked(isChecked);
+        }
+        else if (preference.getKey().equals(SILENCE_THRESHOLD_PLUGIN_YAMNET)) {
+            String value = sharedPreferences.getString(key, "-60");
+            Aware.setSetting(getApplicationContext(), key, value);
+            silenceThreshold.setSummary("Skip clips below " + value + " dBFS");
+        }
+        else if (preference.getKey().equals(CONTINUOUS_PLUGIN_YAMNET)) {
+            boolean isChecked = sharedPreferences.getBoolean(key, false);
+            Aware.setSetting(getApplicationContext(), key, isChecked);
+            continuous.setChecked(isChecked);
+
+            // Restart the plugin so it switches between scheduled and continuous capture
+            if (Aware.getSetting(getApplicationContext(), STATUS_PLUGIN_YAMNET).equals("true")) {
+                Aware.startPlugin(getApplicationContext(), "com.aware.plugin.yamnet");
+            }
+        }
+        else if (preference.getKey().equals(HOP_PLUGIN_YAMNET)) {
+            String value = sharedPreferences.getString(key, "480");
+            Aware.setSetting(getApplicationContext(), key, value);
+            hop.setSummary("Analyse a window every " + value + " milliseconds");
+        }
+        else if (preference.getKey().equals(STORE_SCORES_PLUGIN_YAMNET)) {
+            String value = sharedPreferences.getString(key, "none");
+            Aware.setSetting(getApplicationContext(), key, value);
+            storeScores.setSummary("Store full scores as " + value);
+        }
+        else if (preference.getKey().equals(WRITE_BATCH_SIZE_PLUGIN_YAMNET)) {
+            String value = sharedPreferences.getString(key, "1");
+            Aware.setSetting(getApplicationContext(), key, value);
+            writeBatchSize.setSummary("Write every " + value + " samples");
+        }
+        else if (preference.getKey().equals(WRITE_BATCH_MS_PLUGIN_YAMNET)) {
+            String value = sharedPreferences.getString(key, "5000");
+            Aware.setSetting(getApplicationContext(), key, value);
+            writeBatchMs.setSummary("Write at least every " + value + " milliseconds");
+        }
+        else if (preference.getKey().equals(BUDGET_CONTROLLER_PLUGIN_YAMNET)) {
+            boolean isChecked = sharedPreferences.getBoolean(key, false);
+            Aware.setSetting(getApplicationContext(), key, isChecked);
+            budgetController.setChecked(isChecked);
+        }
+        else if (preference.getKey().equals(BUDGET_SAVER_BATTERY_PLUGIN_YAMNET)) {
+            String value = sharedPreferences.getString(key, "30");
+            Aware.setSetting(getApplicationContext(), key, value);
+            budgetSaverBattery.setSummary("Save power at " + value + "% battery");
+        }
+        else if (preference.getKey().equals(BUDGET_CRITICAL_BATTERY_PLUGIN_YAMNET)) {
+            String value = sharedPreferences.getString(key, "15");
+            Aware.setSetting(getApplicationContext(), key, value);
+            budgetCriticalBattery.setSummary("Minimal sampling at " + value + "% battery");
+        }
+        else if (preference.getKey().equals(BUDGET_MAX_TEMPERATURE_PLUGIN_YAMNET)) {
+            String value = sharedPreferences.getString(key, "40");
+            Aware.setSetting(getApplicationContext(), key, value);
+            budgetMaxTemperature.setSummary("Save power from " + value + " °C");
+        }
+        else if (preference.getKey().equals(BUDGET_SAVER_DURATION_PLUGIN_YAMNET)) {
+            String value = sharedPreferences.getString(key, "1000");
+            Aware.setSetting(getApplicationContext(), key, value);
+            budgetSaverDuration.setSummary("Record at most " + value + " milliseconds");
+        }
+        else if (preference.getKey().equals(BUDGET_DEFER_SAMPLES_PLUGIN_YAMNET)) {
+            String value = sharedPreferences.getString(key, "10");
+            Aware.setSetting(getApplicationContext(), key, value);
+            budgetDeferSamples.setSummary("Write every " + value + " samples");
+        }
+    }
+
+    private String modelVariantSummary(String value) {
+        ModelRegistry.Variant variant = ModelRegistry.get(value);
+        if (variant == null) return "Unknown model " + value;
+        return ModelRegistry.isAvailable(getApplicationContext(), variant)
+                ? "Run the " + variant.name + " model"
+                : variant.asset + " is not packaged, using " + ModelRegistry.FLOAT32;
+    }
+
+    private String modelVersionSummary(String value) {
+        if (value.isEmpty()) return "Bundled model";
+        ModelRegistry.Variant model = ModelRegistry.getInstalled(getApplicationContext(), value);
+        return model != null && ModelRegistry.isAvailable(getApplicationContext(), model)
+                ? "Run installed model " + value
+                : "Model " + value + " is not installed, using the bundled model";
+    }
+
+    private static String threadsSummary(String value) {
+        return "0".equals(value) || value.isEmpty() ? "TensorFlow Lite default" : "Run inference on " + value + " threads";
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,90 @@
+package com.aware.plugin.yamnet;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.aware.Aware;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Pre-inference gate for near-silent clips
+ * The preprocess stage accumulates the clip's energy and zero crossings in the pass that already
+ * converts its PCM for storage; a clip whose RMS level is below the threshold is written as a
+ * "silence" result and never reaches the interpreter.
+ */
+public class SilenceGate {
+    private static final String TAG = "AWARE::YAMNet::Silence";
+
+    public static final float DEFAULT_THRESHOLD_DBFS = -60f;
+
+    // Reported for digital silence, where the level is minus infinity
+    private static final float FLOOR_DBFS = -120f;
+
+    private boolean enabled;
+    private float thresholdDbfs = DEFAULT_THRESHOLD_DBFS;
+
+    /**
+     * Read the gate switch and threshold from the plugin settings
+     */
+    public void loadSettings(Context context) {
+        enabled = Aware.getSetting(context, Settings.SILENCE_GATE_PLUGIN_YAMNET).equals("true");
+
+        thresholdDbfs = DEFAULT_THRESHOLD_DBFS;
+        try {
+            String value = Aware.getSetting(context, Settings.SILENCE_THRESHOLD_PLUGIN_YAMNET);
+            if (!value.isEmpty()) thresholdDbfs = Float.parseFloat(value);
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Invalid silence threshold, using default: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Fill in the sample's level and zero-crossing rate and decide whether inference is skipped.
+     * A budget that forces the gate closes it even when it is switched off, at its own threshold
+     * if that is higher.
+     *
+     * @param sumSquares sum of the squared 16-bit samples
+     * @param crossings  number of sign changes between consecutive samples
+     */
+    public void measure(AudioSample sample, long sumSquares, int crossings) {
+        sample.rmsDbfs = dbfs(sumSquares, sample.length);
+        sample.zeroCrossingRate = sample.length > 1 ? (float) crossings / (sample.length - 1) : 0f;
+        sample.silent = (enabled || sample.budget.gate) && sample.length > 0 && sample.rmsDbfs < threshold(sample);
+    }
+
+    /**
+     * Result JSON of a gated clip, in place of the model's predictions
+     */
+    public String describe(AudioSample sample) {
+        try {
+            JSONObject result = new JSONObject();
+            result.put("status", "silence");
+            result.put("timestamp", System.currentTimeMillis());
+            result.put("rms_dbfs", round(sample.rmsDbfs));
+            result.put("zero_crossing_rate", round(sample.zeroCrossingRate));
+            result.put("threshold_dbfs", threshold(sample));
+            return result.toString();
+        } catch (JSONException e) {
+            return "{\"status\":\"silence\"}";
+        }
+    }
+
+    private float threshold(AudioSample sample) {
+        return sample.budget.gate ? Math.max(thresholdDbfs, sample.budget.gateThresholdDbfs) : thresholdDbfs;
+    }
+
+    /**
+     * RMS level in dB relative to 16-bit full scale (a constant 32768 is 0 dBFS)
+     */
+    static float dbfs(long sumSquares, int length) {
+        if (length <= 0 || sumSquares == 0) return FLOOR_DBFS;
+        double rms = Math.sqrt((double) sumSquares / length) / 32768.0;
+        return (float) Math.max(FLOOR_DBFS, 20 * Math.log10(rms));
+    }
+
+    private static double round(float value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+}
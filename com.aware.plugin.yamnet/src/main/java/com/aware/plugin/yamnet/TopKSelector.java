@@ -0,0 +1,125 @@
+package com.aware.plugin.yamnet;
+
+/**
+ * Allocation-free top-K selection over a primitive score vector
+ * Keeps a fixed-size min-heap in reusable int[]/float[] buffers, so selecting the best
+ * classes out of the 521 YAMNet scores produces no garbage per inference
+ */
+public class TopKSelector {
+    private final int[] indices;
+    private final float[] scores;
+    private int size;
+
+    /**
+     * @param capacity largest K this selector will be asked for
+     */
+    public TopKSelector(int capacity) {
+        indices = new int[capacity];
+        scores = new float[capacity];
+    }
+
+    /**
+     * Select the K highest scores of scores[offset, offset + length) that are >= minScore.
+     * Results are sorted by descending score (ties by ascending class index).
+     *
+     * @return number of selected classes, at most min(k, capacity)
+     */
+    public int select(float[] values, int offset, int length, int k, float minScore) {
+        k = Math.min(k, indices.length);
+        size = 0;
+        if (k <= 0) return 0;
+
+        for (int i = 0; i < length; i++) {
+            float score = values[offset + i];
+            if (score < minScore || Float.isNaN(score)) continue;
+
+            if (size < k) {
+                // Heap not full yet, append and sift up
+                indices[size] = i;
+                scores[size] = score;
+                siftUp(size++);
+            } else if (isWorse(0, i, score)) {
+                // Replace the current worst (heap root)
+                indices[0] = i;
+                scores[0] = score;
+                siftDown(0, size);
+            }
+        }
+
+        // Heap sort in place: repeatedly move the worst element to the end
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        return size;
+    }
+
+    /**
+     * Select over a whole score vector
+     */
+    public int select(float[] values, int k, float minScore) {
+        return select(values, 0, values.length, k, minScore);
+    }
+
+    /**
+     * Number of classes selected by the last call
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Class index at the given rank (0 = best) of the last selection
+     */
+    public int indexAt(int rank) {
+        return indices[rank];
+    }
+
+    /**
+     * Score at the given rank (0 = best) of the last selection
+     */
+    public float scoreAt(int rank) {
+        return scores[rank];
+    }
+
+    /**
+     * True if heap slot a ranks below the candidate (index, score)
+     */
+    private boolean isWorse(int a, int index, float score) {
+        return scores[a] < score || (scores[a] == score && indices[a] > index);
+    }
+
+    private boolean isWorse(int a, int b) {
+        return isWorse(a, indices[b], scores[b]);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!isWorse(i, parent)) break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int n) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= n) break;
+            int right = left + 1;
+            int worst = (right < n && isWorse(right, left)) ? right : left;
+            if (!isWorse(worst, i)) break;
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int index = indices[a];
+        indices[a] = indices[b];
+        indices[b] = index;
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
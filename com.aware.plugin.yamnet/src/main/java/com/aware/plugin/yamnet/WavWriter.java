@@ -0,0 +1,210 @@
+package com.aware.plugin.yamnet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Buffered writer for 16-bit mono PCM WAV files
+ * The 44-byte header lives in one reusable buffer: it goes out together with the first samples
+ * in a single gathering write, and is rewritten in place with the final sizes on close. Samples
+ * can be streamed in any number of writes, and an existing file can be appended to, so a
+ * recording never has to be held in memory as a whole.
+ */
+public class WavWriter implements AudioFileWriter {
+
+    public static final int HEADER_SIZE = 44;
+
+    private static final int BITS_PER_SAMPLE = 16;
+    private static final int CHANNELS = 1;
+    private static final long MAX_DATA_SIZE = 0xFFFFFFFFL - (HEADER_SIZE - 8);
+
+    private final File file;
+    private final int sampleRate;
+    private final RandomAccessFile output;
+    private final FileChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer[] gather = new ByteBuffer[2];
+    private ByteBuffer samples = ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN);
+    private boolean headerWritten;
+    private long dataSize;
+
+    /**
+     * Start a new file, replacing any existing one
+     */
+    public WavWriter(File file, int sampleRate) throws IOException {
+        this(file, sampleRate, false);
+    }
+
+    /**
+     * @param append continue an existing WAV file with the same format instead of replacing it;
+     *               a missing or unreadable file is started from scratch
+     */
+    public WavWriter(File file, int sampleRate, boolean append) throws IOException {
+        this.file = file;
+        this.sampleRate = sampleRate;
+        this.output = new RandomAccessFile(file, "rw");
+        this.channel = output.getChannel();
+
+        try {
+            if (append && readHeader()) {
+                // Trust the file length over the header, which is stale if the last writer died
+                dataSize = Math.min(channel.size() - HEADER_SIZE, MAX_DATA_SIZE) & ~1L;
+                headerWritten = true;
+                channel.position(HEADER_SIZE + dataSize);
+            } else {
+                channel.truncate(0);
+            }
+        } catch (IOException e) {
+            output.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Write a whole clip of little-endian PCM bytes in one go
+     */
+    public static void write(File file, int sampleRate, byte[] pcm) throws IOException {
+        write(file, sampleRate, ByteBuffer.wrap(pcm));
+    }
+
+    /**
+     * Write a whole clip from a buffer, e.g. a region mapped from an AudioSegmentStore segment
+     */
+    public static void write(File file, int sampleRate, ByteBuffer pcm) throws IOException {
+        WavWriter writer = new WavWriter(file, sampleRate);
+        try {
+            writer.write(pcm);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Append little-endian PCM bytes
+     */
+    public void write(byte[] pcm, int offset, int length) throws IOException {
+        write(ByteBuffer.wrap(pcm, offset, length));
+    }
+
+    /**
+     * Append samples; they are converted through a buffer that is reused between calls
+     */
+    @Override
+    public void write(short[] pcm, int offset, int length) throws IOException {
+        if (samples.capacity() < length * 2) {
+            samples = ByteBuffer.allocate(length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        samples.clear();
+        samples.asShortBuffer().put(pcm, offset, length);
+        samples.limit(length * 2);
+        write(samples);
+    }
+
+    /**
+     * Append the remaining bytes of a buffer
+     */
+    public void write(ByteBuffer pcm) throws IOException {
+        if (dataSize + pcm.remaining() > MAX_DATA_SIZE) {
+            throw new IOException(file.getName() + " would exceed the 4 GB WAV limit");
+        }
+        dataSize += pcm.remaining();
+
+        if (!headerWritten) {
+            // Sizes are provisional until close(); a reader of an unfinished file sees the data so far
+            fillHeader();
+            gather[0] = header;
+            gather[1] = pcm;
+            while (header.hasRemaining() || pcm.hasRemaining()) {
+                channel.write(gather);
+            }
+            gather[1] = null;
+            headerWritten = true;
+        } else {
+            while (pcm.hasRemaining()) {
+                channel.write(pcm);
+            }
+        }
+    }
+
+    /**
+     * Patch the RIFF and data sizes and close the file, even when the patch fails
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            fillHeader();
+            long position = 0;
+            while (header.hasRemaining()) {
+                position += channel.write(header, position);
+            }
+            headerWritten = true;
+        } finally {
+            output.close();
+        }
+    }
+
+    @Override
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Bytes of PCM written so far, including any appended to
+     */
+    public long getDataSize() {
+        return dataSize;
+    }
+
+    private void fillHeader() {
+        fillHeader(header, sampleRate, dataSize);
+    }
+
+    /**
+     * Put the 44-byte header for dataSize bytes of PCM into a little-endian buffer, ready to be written
+     */
+    static void fillHeader(ByteBuffer header, int sampleRate, long dataSize) {
+        header.clear();
+        header.put((byte) 'R').put((byte) 'I').put((byte) 'F').put((byte) 'F');
+        header.putInt((int) (dataSize + HEADER_SIZE - 8));
+        header.put((byte) 'W').put((byte) 'A').put((byte) 'V').put((byte) 'E');
+
+        // fmt subchunk
+        header.put((byte) 'f').put((byte) 'm').put((byte) 't').put((byte) ' ');
+        header.putInt(16); // Subchunk1Size (16 for PCM)
+        header.putShort((short) 1); // AudioFormat (1 for PCM)
+        header.putShort((short) CHANNELS);
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * CHANNELS * BITS_PER_SAMPLE / 8); // ByteRate
+        header.putShort((short) (CHANNELS * BITS_PER_SAMPLE / 8)); // BlockAlign
+        header.putShort((short) BITS_PER_SAMPLE);
+
+        // data subchunk
+        header.put((byte) 'd').put((byte) 'a').put((byte) 't').put((byte) 'a');
+        header.putInt((int) dataSize);
+        header.flip();
+    }
+
+    /**
+     * Whether the file starts with a canonical 44-byte header in this writer's format
+     */
+    private boolean readHeader() throws IOException {
+        if (channel.size() < HEADER_SIZE) return false;
+
+        header.clear();
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) return false;
+        }
+        return header.getInt(0) == 0x46464952 // "RIFF"
+                && header.getInt(8) == 0x45564157 // "WAVE"
+                && header.getInt(12) == 0x20746d66 // "fmt "
+                && header.getShort(20) == 1
+                && header.getShort(22) == CHANNELS
+                && header.getInt(24) == sampleRate
+                && header.getShort(34) == BITS_PER_SAMPLE
+                && header.getInt(36) == 0x61746164; // "data"
+    }
+}
@@ -0,0 +1,166 @@
+package com.aware.plugin.yamnet;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.aware.Aware;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.List;
+
+/**
+ * Runs a clip through the shared YamnetSession and builds the analysis_results JSON
+ * Holds its own reusable top-K and pooling buffers, so each capture path keeps one instance
+ * and calls it from a single thread
+ */
+public class YamnetAnalysis {
+    private static final String TAG = "AWARE::YAMNet";
+
+    private final TopKSelector topK = new TopKSelector(YamnetSession.NUM_CLASSES);
+    private final float[] pooledScores = new float[YamnetSession.NUM_CLASSES];
+    // Copy of the session's frame scores for per-frame output, grown to the longest clip
+    private float[] frameScores = new float[YamnetSession.NUM_CLASSES];
+
+    private int k = 5;
+    private float minScore = 0f;
+    private String pooling = ScorePooling.MEAN;
+    private boolean frameOutput = false;
+    private byte scoreFormat = 0;
+
+    /**
+     * Read top K, minimum score, pooling, per-frame output and score storage from the plugin settings
+     */
+    public void loadSettings(Context context) {
+        k = 5;
+        try {
+            String value = Aware.getSetting(context, Settings.TOP_K_PLUGIN_YAMNET);
+            if (!value.isEmpty()) k = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Invalid top K setting, using default: " + e.getMessage());
+        }
+
+        minScore = 0f;
+        try {
+            String value = Aware.getSetting(context, Settings.MIN_SCORE_PLUGIN_YAMNET);
+            if (!value.isEmpty()) minScore = Float.parseFloat(value);
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Invalid minimum score setting, using default: " + e.getMessage());
+        }
+
+        String poolingValue = Aware.getSetting(context, Settings.POOLING_PLUGIN_YAMNET);
+        pooling = ScorePooling.MAX.equals(poolingValue) ? ScorePooling.MAX : ScorePooling.MEAN;
+
+        frameOutput = Aware.getSetting(context, Settings.FRAME_OUTPUT_PLUGIN_YAMNET).equals("true");
+
+        scoreFormat = ScoreCodec.formatOf(Aware.getSetting(context, Settings.STORE_SCORES_PLUGIN_YAMNET));
+    }
+
+    /**
+     * Perform YAMNet analysis on the sample's PCM and fill in its JSON result and top K predictions
+     */
+    public void analyse(YamnetSession session, AudioSample sample) {
+        sample.predictionCount = 0;
+        sample.storeScores = false;
+        sample.analysisResults = buildResults(session, sample);
+    }
+
+    private String buildResults(YamnetSession session, AudioSample sample) {
+        try {
+            int frameCount;
+            long inferenceMs;
+            List<String> labels;
+            // Hold the session across the run and the reads of its results, so another run
+            // (warm-up, or a model swap) cannot overwrite the scores or change the model in between
+            synchronized (session) {
+                // Run inference; samples are normalized straight into the interpreter input buffer
+                frameCount = session.run(sample.pcm, 0, sample.length);
+                inferenceMs = session.getLastInferenceMs();
+
+                // Pool the per-frame scores into one clip-level score vector
+                float[] scores = session.getFrameScores();
+                ScorePooling.pool(scores, frameCount, YamnetSession.NUM_CLASSES, pooling, pooledScores);
+                if (frameOutput) {
+                    int length = frameCount * YamnetSession.NUM_CLASSES;
+                    if (frameScores.length < length) frameScores = new float[length];
+                    System.arraycopy(scores, 0, frameScores, 0, length);
+                }
+
+                // Labels and version of the model that ran
+                labels = session.getLabels();
+                sample.modelVersion = session.getModelVersion();
+            }
+
+            // Create JSON result
+            JSONObject result = new JSONObject();
+            result.put("status", "success");
+            result.put("timestamp", System.currentTimeMillis());
+            result.put("inference_ms", inferenceMs);
+            result.put("frames", frameCount);
+            result.put("hop_ms", YamnetSession.HOP_MS);
+            result.put("pooling", pooling);
+            result.put("model_version", sample.modelVersion);
+
+            // Find top K predictions above the minimum score
+            int count = topK.select(pooledScores, 0, YamnetSession.NUM_CLASSES, k, minScore);
+            result.put("predictions", toJSON(labels));
+
+            // Keep the pooled top K as structured predictions for the predictions table
+            sample.ensurePredictionCapacity(count);
+            for (int rank = 0; rank < count; rank++) {
+                int index = topK.indexAt(rank);
+                sample.predictionIndices[rank] = index;
+                sample.predictionScores[rank] = topK.scoreAt(rank);
+                sample.predictionLabels[rank] = index < labels.size() ? labels.get(index) : "Class " + index;
+            }
+            sample.predictionCount = count;
+
+            // Full pooled score vector for offline re-analysis
+            if (scoreFormat != 0) {
+                // A new array per sample: it ends up in the row's ContentValues handed to observers
+                sample.scoresBlob = new byte[ScoreCodec.encodedSize(scoreFormat, YamnetSession.NUM_CLASSES)];
+                ScoreCodec.encode(pooledScores, YamnetSession.NUM_CLASSES, scoreFormat, sample.scoresBlob);
+                sample.storeScores = true;
+            }
+
+            // Time-resolved results, one entry per 0.48s frame
+            if (frameOutput) {
+                JSONArray framesArray = new JSONArray();
+                for (int f = 0; f < frameCount; f++) {
+                    topK.select(frameScores, f * YamnetSession.NUM_CLASSES, YamnetSession.NUM_CLASSES, k, minScore);
+                    JSONObject frameObj = new JSONObject();
+                    frameObj.put("frame", f);
+                    frameObj.put("offset_ms", f * YamnetSession.HOP_MS);
+                    frameObj.put("predictions", toJSON(labels));
+                    framesArray.put(frameObj);
+                }
+                result.put("frame_predictions", framesArray);
+            }
+
+            return result.toString();
+
+        } catch (Exception e) {
+            Log.e(TAG, "Error performing YAMNet analysis: " + e.getMessage());
+            e.printStackTrace();
+            return "{\"status\":\"error\",\"message\":\"" + e.getMessage() + "\"}";
+        }
+    }
+
+    /**
+     * Convert the last top K selection to a JSON array of label, score and index
+     */
+    private JSONArray toJSON(List<String> labels) throws JSONException {
+        JSONArray predictionsArray = new JSONArray();
+        for (int rank = 0; rank < topK.size(); rank++) {
+            int index = topK.indexAt(rank);
+            JSONObject predObj = new JSONObject();
+            predObj.put("label", index < labels.size() ? labels.get(index) : "Class " + index);
+            predObj.put("score", topK.scoreAt(rank));
+            predObj.put("index", index);
+            predictionsArray.put(predObj);
+        }
+        return predictionsArray;
+    }
+}
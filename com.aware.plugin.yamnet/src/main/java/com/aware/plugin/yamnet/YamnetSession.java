@@ -0,0 +1,559 @@
+package com.aware.plugin.yamnet;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.aware.Aware;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Process-wide YAMNet model session
+ * Loads the TFLite model and labels once and keeps a warm Interpreter across samples,
+ * so that scheduled samples only pay for inference and not for model setup.
+ * The model is the ModelRegistry variant selected in the settings; int8 input and output
+ * tensors of full-integer variants are quantized and dequantized here, so callers always
+ * pass 16-bit PCM and read float scores. When the model or options change while a model is
+ * loaded, the new one is loaded and verified on a background thread while the current one keeps
+ * serving, and is swapped in at the start of the next run, so no sample waits for a reload.
+ */
+public class YamnetSession {
+    private static final String TAG = "AWARE::YAMNet::Session";
+
+    public static final String MODEL_FILE = "yamnet.tflite";
+    public static final String LABELS_FILE = "yamnet_labels.txt";
+    public static final int NUM_CLASSES = 521; // YAMNet has 521 classes
+    public static final int SAMPLE_RATE = 16000; // YAMNet requires 16kHz
+    public static final int PATCH_SAMPLES = 15600; // 0.975s at 16kHz, one YAMNet patch
+    public static final int HOP_SAMPLES = 7680; // 0.48s between score frames
+    public static final int HOP_MS = HOP_SAMPLES * 1000 / SAMPLE_RATE;
+
+    private static YamnetSession instance;
+
+    /**
+     * A loaded interpreter with the labels versioned with its model and the options it was built with
+     */
+    private static final class Model {
+        final ModelRegistry.Variant variant;
+        final int threads;
+        final boolean xnnpack;
+        final Interpreter interpreter;
+        final List<String> labels;
+
+        Model(ModelRegistry.Variant variant, int threads, boolean xnnpack, Interpreter interpreter, List<String> labels) {
+            this.variant = variant;
+            this.threads = threads;
+            this.xnnpack = xnnpack;
+            this.interpreter = interpreter;
+            this.labels = labels;
+        }
+    }
+
+    private final Context context;
+    private Interpreter interpreter;
+    private List<String> labels;
+    private ModelRegistry.Variant loadedVariant;
+    private int loadedThreads;
+    private boolean loadedXnnpack;
+    // Model variant, interpreter threads (0 = interpreter default) and XNNPACK delegate the next
+    // run should use; a change is loaded in the background and swapped in by a later run
+    private ModelRegistry.Variant variant = ModelRegistry.getDefault();
+    private int numThreads = 0;
+    private boolean useXnnpack = true;
+    // Model loaded in the background, waiting for the next run; the loader thread is running while loading is set
+    private Model pending;
+    private boolean loading;
+
+    // Direct input buffer bound to the interpreter input tensor, reallocated only when the clip length changes
+    private ByteBuffer inputBytes;
+    private FloatBuffer input;
+    private int inputSamples = -1;
+    // Quantization of an int8 / uint8 input tensor; scale 0 = float input
+    private float inputScale;
+    private int inputZeroPoint;
+    private int inputMin;
+    private int inputMax;
+
+    // Score output: one row of NUM_CLASSES scores per 0.48s frame
+    private ByteBuffer outputBytes;
+    // Quantization of an int8 / uint8 output tensor; scale 0 = float output
+    private float outputScale;
+    private int outputZeroPoint;
+    private boolean outputUnsigned;
+    private float[] frameScores = new float[NUM_CLASSES];
+    private int frameCount = 0;
+
+    // Latency statistics
+    private long coldStartMs = -1;
+    private long inferenceCount = 0;
+    private long lastInferenceMs = 0;
+    private long totalInferenceMs = 0;
+
+    /**
+     * A session of its own, outside the shared one, e.g. to compare model variants side by side
+     */
+    YamnetSession(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Returns the shared session, creating it (unloaded) if needed
+     */
+    public static synchronized YamnetSession getInstance(Context context) {
+        if (instance == null) {
+            instance = new YamnetSession(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Closes the shared session, if any. A later getInstance() loads the model again.
+     */
+    public static synchronized void release() {
+        if (instance != null) {
+            instance.close();
+            instance = null;
+        }
+    }
+
+    /**
+     * Load the model and run one dummy inference on a background thread,
+     * so the first real sample finds the interpreter warm
+     */
+    public void warmUpAsync() {
+        Thread warmUp = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    loadSettings(0);
+                    YamnetSession.this.run(new short[PATCH_SAMPLES], 0, PATCH_SAMPLES);
+                    Log.d(TAG, "Warm-up completed");
+                } catch (Exception e) {
+                    Log.e(TAG, "Error warming up YAMNet session: " + e.getMessage());
+                }
+            }
+        }, "YAMNet-WarmUp");
+        warmUp.setPriority(Thread.MIN_PRIORITY);
+        warmUp.start();
+    }
+
+    /**
+     * Run inference on 16-bit PCM samples. Samples are normalized to [-1, 1] directly into
+     * the interpreter's direct input buffer, without intermediate byte[] or float[] copies.
+     * The input tensor is resized to the clip length, so a long clip yields all of its
+     * score frames from a single invoke; read them with getFrameScores(). The shared session is
+     * also run by warmUpAsync(), so read the results while holding the session's lock across
+     * the run, e.g. synchronized (session) { run(); getFrameScores(); getLabels(); }.
+     *
+     * @return number of score frames produced
+     */
+    public synchronized int run(short[] pcm, int offset, int length) throws IOException {
+        boolean cold = interpreter == null;
+        long start = SystemClock.elapsedRealtime();
+
+        ensureLoaded();
+        prepareInput(length);
+        if (inputScale == 0) {
+            for (int i = 0; i < length; i++) {
+                input.put(pcm[offset + i] / 32768.0f);
+            }
+        } else {
+            // q = x / scale + zero point, with x the sample normalized to [-1, 1]
+            float factor = 1f / (32768.0f * inputScale);
+            for (int i = 0; i < length; i++) {
+                int q = Math.round(pcm[offset + i] * factor) + inputZeroPoint;
+                inputBytes.put((byte) Math.max(inputMin, Math.min(inputMax, q)));
+            }
+        }
+        inputBytes.rewind();
+        outputBytes.rewind();
+        interpreter.run(inputBytes, outputBytes);
+
+        outputBytes.rewind();
+        int scores = frameCount * NUM_CLASSES;
+        if (outputScale == 0) {
+            outputBytes.asFloatBuffer().get(frameScores, 0, scores);
+        } else {
+            for (int i = 0; i < scores; i++) {
+                int q = outputUnsigned ? outputBytes.get(i) & 0xFF : outputBytes.get(i);
+                frameScores[i] = (q - outputZeroPoint) * outputScale;
+            }
+        }
+
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        if (cold) {
+            coldStartMs = elapsed;
+            Log.d(TAG, "Cold start (load + first inference): " + coldStartMs + " ms");
+        } else {
+            inferenceCount++;
+            lastInferenceMs = elapsed;
+            totalInferenceMs += elapsed;
+            Log.d(TAG, "Warm inference: " + lastInferenceMs + " ms for " + frameCount + " frames (avg " + getAverageInferenceMs() + " ms over " + inferenceCount + ")");
+        }
+        return frameCount;
+    }
+
+    /**
+     * Scores of the last run, frame-major: frame f, class c is at f * NUM_CLASSES + c.
+     * The array is reused by the next run and must not be kept, nor read without holding the
+     * session's lock since the run.
+     */
+    public synchronized float[] getFrameScores() {
+        return frameScores;
+    }
+
+    /**
+     * Number of score frames produced by the last run
+     */
+    public synchronized int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Number of score frames YAMNet emits for a clip: clips are padded to one full patch,
+     * then one more frame per started hop
+     */
+    public static int expectedFrames(int samples) {
+        if (samples <= PATCH_SAMPLES) return 1;
+        return 1 + (samples - PATCH_SAMPLES + HOP_SAMPLES - 1) / HOP_SAMPLES;
+    }
+
+    /**
+     * Labels of the loaded model, in class index order. They come with the model, so read them
+     * before the next run, which may swap in another model.
+     */
+    public synchronized List<String> getLabels() throws IOException {
+        if (interpreter == null) ensureLoaded();
+        return labels;
+    }
+
+    /**
+     * Version of the model that produced the last run: the bundled variant's name or the installed
+     * model's version; empty before the first run
+     */
+    public synchronized String getModelVersion() {
+        return loadedVariant != null ? loadedVariant.version : "";
+    }
+
+    /**
+     * Cold start latency in milliseconds, or -1 if the model has not been loaded yet
+     */
+    public synchronized long getColdStartMs() {
+        return coldStartMs;
+    }
+
+    public synchronized long getLastInferenceMs() {
+        return lastInferenceMs;
+    }
+
+    public synchronized long getAverageInferenceMs() {
+        return inferenceCount == 0 ? 0 : totalInferenceMs / inferenceCount;
+    }
+
+    /**
+     * Apply threads_plugin_yamnet and xnnpack_plugin_yamnet, with at most maxThreads threads
+     * (0 = no limit). The interpreter is closed when the options change and reloaded with the
+     * new options by the next run.
+     */
+    public synchronized void loadSettings(int maxThreads) {
+        ModelRegistry.Variant selected = ModelRegistry.selected(context);
+
+        int threads = 0;
+        try {
+            String value = Aware.getSetting(context, Settings.THREADS_PLUGIN_YAMNET);
+            if (!value.isEmpty()) threads = Math.max(0, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Invalid threads setting, using default: " + e.getMessage());
+        }
+        if (maxThreads > 0 && (threads == 0 || threads > maxThreads)) {
+            threads = maxThreads;
+        }
+        boolean xnnpack = !Aware.getSetting(context, Settings.XNNPACK_PLUGIN_YAMNET).equals("false");
+
+        configure(selected, threads, xnnpack);
+    }
+
+    /**
+     * Use this model variant and interpreter options. Without a loaded model they apply to the
+     * next run; otherwise the model is reloaded in the background and swapped in once ready.
+     */
+    synchronized void configure(ModelRegistry.Variant variant, int threads, boolean xnnpack) {
+        if (variant.version.equals(this.variant.version) && threads == numThreads && xnnpack == useXnnpack) return;
+        this.variant = variant;
+        numThreads = threads;
+        useXnnpack = xnnpack;
+        if (interpreter != null && !loading && !matchesLoaded()) {
+            Log.d(TAG, "Loading model " + variant + " with " + describeOptions(threads, xnnpack) + " in the background");
+            loading = true;
+            Thread loader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    loadInBackground();
+                }
+            }, "YAMNet-ModelSwap");
+            loader.setPriority(Thread.MIN_PRIORITY);
+            loader.start();
+        }
+    }
+
+    public synchronized ModelRegistry.Variant getVariant() {
+        return variant;
+    }
+
+    /**
+     * Interpreter options for a thread count (0 = interpreter default) and the XNNPACK CPU delegate
+     */
+    static Interpreter.Options options(int threads, boolean xnnpack) {
+        Interpreter.Options options = new Interpreter.Options();
+        if (threads > 0) options.setNumThreads(threads);
+        options.setUseXNNPACK(xnnpack);
+        return options;
+    }
+
+    static String describeOptions(int threads, boolean xnnpack) {
+        return (threads > 0 ? threads + " threads" : "default threads") + ", XNNPACK " + (xnnpack ? "on" : "off");
+    }
+
+    public synchronized void close() {
+        if (pending != null) {
+            pending.interpreter.close();
+            pending = null;
+        }
+        if (interpreter != null) {
+            interpreter.close();
+            interpreter = null;
+            loadedVariant = null;
+            inputSamples = -1;
+            Log.d(TAG, "YAMNet session closed after " + inferenceCount + " warm inferences");
+        }
+    }
+
+    /**
+     * Resize the input tensor to the clip length (only when it changes) and reset the input buffer
+     */
+    private void prepareInput(int samples) {
+        if (samples != inputSamples) {
+            Tensor inputTensor = interpreter.getInputTensor(0);
+            boolean quantizedInput = isQuantized(inputTensor.dataType());
+            inputScale = quantizedInput ? inputTensor.quantizationParams().getScale() : 0;
+            inputZeroPoint = quantizedInput ? inputTensor.quantizationParams().getZeroPoint() : 0;
+            inputMin = inputTensor.dataType() == DataType.UINT8 ? 0 : Byte.MIN_VALUE;
+            inputMax = inputTensor.dataType() == DataType.UINT8 ? 255 : Byte.MAX_VALUE;
+
+            // TFLite requires the buffer capacity to match the tensor size exactly
+            inputBytes = ByteBuffer.allocateDirect(samples * (quantizedInput ? 1 : 4)).order(ByteOrder.nativeOrder());
+            input = inputBytes.asFloatBuffer();
+            interpreter.resizeInput(0, new int[]{samples});
+            interpreter.allocateTensors();
+            inputSamples = samples;
+
+            // Output rows follow the input length, but with dynamic tensors TFLite reports the
+            // stale [1, 521] shape until the first invoke, so size the output from YAMNet's framing
+            Tensor outputTensor = interpreter.getOutputTensor(0);
+            boolean quantizedOutput = isQuantized(outputTensor.dataType());
+            outputScale = quantizedOutput ? outputTensor.quantizationParams().getScale() : 0;
+            outputZeroPoint = quantizedOutput ? outputTensor.quantizationParams().getZeroPoint() : 0;
+            outputUnsigned = outputTensor.dataType() == DataType.UINT8;
+            int bytesPerScore = quantizedOutput ? 1 : 4;
+
+            int frames = expectedFrames(samples);
+            if (outputBytes == null || frames != frameCount || outputBytes.capacity() != frames * NUM_CLASSES * bytesPerScore) {
+                outputBytes = ByteBuffer.allocateDirect(frames * NUM_CLASSES * bytesPerScore).order(ByteOrder.nativeOrder());
+                if (frameScores.length < frames * NUM_CLASSES) {
+                    frameScores = new float[frames * NUM_CLASSES];
+                }
+                frameCount = frames;
+            }
+        }
+        input.clear();
+        inputBytes.clear();
+    }
+
+    private static boolean isQuantized(DataType type) {
+        return type == DataType.INT8 || type == DataType.UINT8;
+    }
+
+    /**
+     * Swap in a model loaded in the background, then load the configured model synchronously if
+     * none is loaded. An installed model that fails to load is rejected and the bundled selection
+     * is loaded instead.
+     */
+    private void ensureLoaded() throws IOException {
+        if (pending != null) {
+            Model model = pending;
+            pending = null;
+            if (matches(model)) {
+                if (interpreter != null) {
+                    Log.d(TAG, "Swapped model " + loadedVariant.version + " for " + model.variant.version);
+                    interpreter.close();
+                }
+                use(model);
+            } else {
+                model.interpreter.close();
+            }
+        }
+        if (interpreter != null) return;
+
+        Model model;
+        try {
+            model = load(variant, numThreads, useXnnpack);
+        } catch (IOException e) {
+            if (!variant.isInstalled()) throw e;
+            ModelRegistry.reject(variant, e.getMessage());
+            variant = ModelRegistry.selectedBundled(context);
+            model = load(variant, numThreads, useXnnpack);
+        }
+        use(model);
+    }
+
+    private void use(Model model) {
+        interpreter = model.interpreter;
+        labels = model.labels;
+        loadedVariant = model.variant;
+        loadedThreads = model.threads;
+        loadedXnnpack = model.xnnpack;
+        inputSamples = -1;
+    }
+
+    private boolean matches(Model model) {
+        return model.variant.version.equals(variant.version) && model.threads == numThreads && model.xnnpack == useXnnpack;
+    }
+
+    private boolean matchesLoaded() {
+        return loadedVariant != null && loadedVariant.version.equals(variant.version)
+                && loadedThreads == numThreads && loadedXnnpack == useXnnpack;
+    }
+
+    /**
+     * Loader thread: load the configured model without holding the session lock and stage it for
+     * the next run. Loads again if the configuration changed meanwhile; a failure keeps the current
+     * model serving and rejects an installed model, so the next selection falls back.
+     */
+    private void loadInBackground() {
+        while (true) {
+            ModelRegistry.Variant target;
+            int threads;
+            boolean xnnpack;
+            synchronized (this) {
+                if (interpreter == null || matchesLoaded()) {
+                    loading = false;
+                    return;
+                }
+                target = variant;
+                threads = numThreads;
+                xnnpack = useXnnpack;
+            }
+
+            Model model = null;
+            try {
+                model = load(target, threads, xnnpack);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not load model " + target + ", keeping " + getModelVersion() + ": " + e.getMessage());
+                ModelRegistry.reject(target, e.getMessage());
+            }
+
+            synchronized (this) {
+                if (model != null && interpreter != null && matches(model)) {
+                    if (pending != null) pending.interpreter.close();
+                    pending = model;
+                    loading = false;
+                    return;
+                }
+                if (model != null) model.interpreter.close();
+                if (model == null || interpreter == null) {
+                    loading = false;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Map and verify the variant's model, build its interpreter and read its labels
+     */
+    private Model load(ModelRegistry.Variant variant, int threads, boolean xnnpack) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        Interpreter interpreter;
+        try {
+            interpreter = new Interpreter(ModelRegistry.map(context, variant), options(threads, xnnpack));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid model " + variant + ": " + e.getMessage());
+        }
+        try {
+            int[] shape = interpreter.getOutputTensor(0).shape();
+            if (shape.length == 0 || shape[shape.length - 1] != NUM_CLASSES) {
+                throw new IOException("Model " + variant + " outputs " + Arrays.toString(shape) + ", expected " + NUM_CLASSES + " classes");
+            }
+            List<String> labels = ModelRegistry.labels(context, variant);
+            Log.d(TAG, "Model " + variant + " loaded in " + (SystemClock.elapsedRealtime() - start) + " ms ("
+                    + describeOptions(threads, xnnpack) + ")");
+            return new Model(variant, threads, xnnpack, interpreter, labels);
+        } catch (IOException e) {
+            interpreter.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Load TFLite model from assets. The descriptor and stream are closed once mapped; the mapping stays valid.
+     */
+    static MappedByteBuffer loadModelFile(Context context, String modelPath) throws IOException {
+        AssetFileDescriptor fileDescriptor = context.getAssets().openFd(modelPath);
+        try {
+            FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
+            try {
+                FileChannel fileChannel = inputStream.getChannel();
+                long startOffset = fileDescriptor.getStartOffset();
+                long declaredLength = fileDescriptor.getDeclaredLength();
+                return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
+            } finally {
+                inputStream.close();
+            }
+        } finally {
+            fileDescriptor.close();
+        }
+    }
+
+    /**
+     * Load the bundled labels from assets
+     */
+    static List<String> loadLabels(Context context) {
+        List<String> labels = new ArrayList<>();
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(context.getAssets().open(LABELS_FILE))
+            );
+            String line;
+            while ((line = reader.readLine()) != null) {
+                labels.add(line.trim());
+            }
+            reader.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading labels: " + e.getMessage());
+            // Return default labels if file not found
+            labels.clear();
+            for (int i = 0; i < NUM_CLASSES; i++) {
+                labels.add("Class " + i);
+            }
+        }
+        return Collections.unmodifiableList(labels);
+    }
+}
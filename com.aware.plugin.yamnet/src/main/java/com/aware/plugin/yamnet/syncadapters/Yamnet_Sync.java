@@ -24,10 +24,11 @@ public class Yamnet_Sync extends Service {
             if (sSyncAdapter == null) {
                 sSyncAdapter = new AwareSyncAdapter(getApplicationContext(), true, true);
                 sSyncAdapter.init(
-                        new String[]{Provider.DATABASE_TABLES[0]},  // 첫 번째 테이블만
-                        new String[]{Provider.TABLES_FIELDS[0]},    // 첫 번째 테이블 필드만
+                        new String[]{Provider.DATABASE_TABLES[0], Provider.DATABASE_TABLES[2]},  // 오디오 테이블 제외
+                        new String[]{Provider.TABLES_FIELDS[0], Provider.TABLES_FIELDS[2]},
                         new Uri[]{
-                                Provider.YAMNet_Data.CONTENT_URI
+                                Provider.YAMNet_Data.CONTENT_URI,
+                                Provider.YAMNet_Predictions.CONTENT_URI
                         }
                 );
             }
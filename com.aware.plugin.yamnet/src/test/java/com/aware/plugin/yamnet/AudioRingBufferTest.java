@@ -0,0 +1,171 @@
+package com.aware.plugin.yamnet;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks absolute positions, wrap-around and lap detection of AudioRingBuffer. Sample values
+ * encode their position, so a read that returns overwritten samples is caught.
+ */
+public class AudioRingBufferTest {
+
+    @Test
+    public void capacityIsAPowerOfTwoHoldingAWindowAndAWrite() {
+        AudioRingBuffer ring = new AudioRingBuffer(15600, 1600);
+        assertEquals(32768, ring.capacity());
+        assertEquals(16, new AudioRingBuffer(8, 8).capacity());
+        assertEquals(32, new AudioRingBuffer(9, 8).capacity());
+        assertEquals(2, new AudioRingBuffer(0, 0).capacity());
+    }
+
+    @Test
+    public void readsAcrossTheWrap() {
+        Random random = new Random(1);
+        int window = 1000;
+        int chunk = 300;
+        AudioRingBuffer ring = new AudioRingBuffer(window, chunk);
+        short[] buffer = new short[chunk];
+        short[] read = new short[window];
+        long position = 0;
+        // Many laps with uneven chunks, so reads start and end all over the buffer
+        while (position < 50L * ring.capacity()) {
+            int length = 1 + random.nextInt(chunk);
+            fill(buffer, position, length);
+            ring.write(buffer, 0, length);
+            position += length;
+            assertEquals(position, ring.getWritePosition());
+
+            if (position >= window) {
+                long start = position - window;
+                assertTrue("window at " + start, ring.read(start, read, 0, window));
+                assertSequence(read, 0, start, window);
+            }
+        }
+    }
+
+    @Test
+    public void readsIntoAnOffset() {
+        AudioRingBuffer ring = new AudioRingBuffer(64, 16);
+        short[] buffer = new short[16];
+        for (long position = 0; position < 200; position += 16) {
+            fill(buffer, position, 16);
+            ring.write(buffer, 0, 16);
+        }
+        short[] read = new short[40];
+        assertTrue(ring.read(170, read, 10, 30));
+        assertSequence(read, 10, 170, 30);
+        assertEquals(0, read[9]);
+    }
+
+    @Test
+    public void unwrittenSamplesAreNotReadable() {
+        AudioRingBuffer ring = new AudioRingBuffer(100, 10);
+        short[] buffer = new short[10];
+        short[] read = new short[20];
+        assertFalse(ring.read(0, read, 0, 1));
+
+        fill(buffer, 0, 10);
+        ring.write(buffer, 0, 10);
+        assertTrue(ring.read(0, read, 0, 10));
+        assertFalse(ring.read(0, read, 0, 11));
+        assertFalse(ring.read(5, read, 0, 10));
+        assertTrue(ring.read(10, read, 0, 0));
+    }
+
+    @Test
+    public void oldestPositionTrailsByCapacityLessOneWrite() {
+        AudioRingBuffer ring = new AudioRingBuffer(100, 10);
+        int capacity = ring.capacity();
+        short[] buffer = new short[10];
+        short[] read = new short[100];
+        assertEquals(0, ring.getOldestPosition());
+
+        long position = 0;
+        while (position < 3L * capacity) {
+            fill(buffer, position, 10);
+            ring.write(buffer, 0, 10);
+            position += 10;
+            long oldest = ring.getOldestPosition();
+            assertEquals(Math.max(0, position + 10 - capacity), oldest);
+
+            // The requested window is always readable; anything before the oldest position is not
+            if (position >= 100) {
+                assertTrue(ring.read(position - 100, read, 0, 100));
+                assertSequence(read, 0, position - 100, 100);
+            }
+            assertTrue(ring.read(oldest, read, 0, 1));
+            if (oldest > 0) {
+                assertFalse("lapped read at " + (oldest - 1), ring.read(oldest - 1, read, 0, 1));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void writeLongerThanDeclaredIsRefused() {
+        new AudioRingBuffer(100, 10).write(new short[11], 0, 11);
+    }
+
+    @Test
+    public void concurrentReadsNeverReturnOverwrittenSamples() throws Exception {
+        // A long window, so on a multi-core device the writer is likely to lap a read while it copies
+        final int window = 1 << 16;
+        final int chunk = 4096;
+        final AudioRingBuffer ring = new AudioRingBuffer(window, chunk);
+        final long total = 200L * ring.capacity();
+        final AtomicBoolean done = new AtomicBoolean(false);
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                short[] buffer = new short[chunk];
+                for (long position = 0; position < total; position += chunk) {
+                    fill(buffer, position, chunk);
+                    ring.write(buffer, 0, chunk);
+                }
+                done.set(true);
+            }
+        });
+        writer.start();
+
+        short[] read = new short[window];
+        boolean oldest = false;
+        while (!done.get()) {
+            // Alternate the newest window with the oldest, which is the most likely to be lapped mid-copy
+            long start = oldest ? ring.getOldestPosition() : ring.getWritePosition() - window;
+            oldest = !oldest;
+            if (start >= 0 && ring.read(start, read, 0, window)) {
+                assertSequence(read, 0, start, window);
+            }
+        }
+        writer.join();
+
+        long start = ring.getWritePosition() - window;
+        assertTrue(ring.read(start, read, 0, window));
+        assertSequence(read, 0, start, window);
+    }
+
+    private static void fill(short[] buffer, long position, int length) {
+        for (int i = 0; i < length; i++) {
+            buffer[i] = sampleAt(position + i);
+        }
+    }
+
+    private static void assertSequence(short[] samples, int offset, long position, int length) {
+        for (int i = 0; i < length; i++) {
+            if (samples[offset + i] != sampleAt(position + i)) {
+                fail("sample at " + (position + i) + " was " + samples[offset + i] + ", expected " + sampleAt(position + i));
+            }
+        }
+    }
+
+    private static short sampleAt(long position) {
+        return (short) (position * 31 + 7);
+    }
+}
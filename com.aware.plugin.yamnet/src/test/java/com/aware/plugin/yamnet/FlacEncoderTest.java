@@ -0,0 +1,413 @@
+package com.aware.plugin.yamnet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round-trips clips through FlacEncoder and a minimal decoder, which checks every STREAMINFO
+ * and frame header field, both CRCs and the MD5 against the samples it decodes
+ */
+public class FlacEncoderTest {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shortClipsRoundTrip() throws Exception {
+        Random random = new Random(1);
+        for (int length : new int[]{1, 2, 5, 17}) {
+            short[] pcm = new short[length];
+            for (int i = 0; i < length; i++) {
+                pcm[i] = (short) random.nextInt(65536);
+            }
+            for (int level = FlacEncoder.MIN_LEVEL; level <= FlacEncoder.MAX_LEVEL; level++) {
+                assertRoundTrip("length " + length + " level " + level, pcm, level);
+            }
+        }
+    }
+
+    @Test
+    public void silenceRoundTrips() throws Exception {
+        for (int length : new int[]{1, 2, 5, 17, 4096, 10000}) {
+            Stream stream = assertRoundTrip("silence " + length, new short[length], FlacEncoder.DEFAULT_LEVEL);
+            // One constant subframe per frame: header, 8-bit type, 16-bit value, CRC-16
+            assertTrue("silence " + length + " frame of " + stream.maxFrameSize + " bytes", stream.maxFrameSize < 16);
+        }
+    }
+
+    @Test
+    public void fullScaleRoundTrips() throws Exception {
+        Random random = new Random(2);
+        short[] square = new short[9000];
+        short[] noise = new short[9000];
+        short[] extremes = new short[9000];
+        for (int i = 0; i < square.length; i++) {
+            square[i] = (i / 7) % 2 == 0 ? Short.MAX_VALUE : Short.MIN_VALUE;
+            noise[i] = (short) random.nextInt(65536);
+            extremes[i] = random.nextBoolean() ? Short.MAX_VALUE : Short.MIN_VALUE;
+        }
+        for (int level = FlacEncoder.MIN_LEVEL; level <= FlacEncoder.MAX_LEVEL; level++) {
+            assertRoundTrip("square level " + level, square, level);
+            assertRoundTrip("noise level " + level, noise, level);
+            assertRoundTrip("extremes level " + level, extremes, level);
+            assertRoundTrip("constant full scale level " + level, constant(5000, Short.MIN_VALUE), level);
+        }
+    }
+
+    @Test
+    public void tonesRoundTripSmallerThanPcm() throws Exception {
+        short[] pcm = tone(SAMPLE_RATE * 2, 440, 12000);
+        for (int level = FlacEncoder.MIN_LEVEL; level <= FlacEncoder.MAX_LEVEL; level++) {
+            Stream stream = assertRoundTrip("tone level " + level, pcm, level);
+            assertTrue("tone level " + level + " is " + stream.length + " bytes", stream.length < 2 * pcm.length);
+        }
+    }
+
+    @Test
+    public void blockBoundariesRoundTrip() throws Exception {
+        for (int level : new int[]{0, 5}) {
+            int blockSize = new FlacEncoder(SAMPLE_RATE, level).getBlockSize();
+            for (int length : new int[]{blockSize - 1, blockSize, blockSize + 1, 3 * blockSize}) {
+                assertRoundTrip("length " + length + " level " + level, tone(length, 1000, 20000), level);
+            }
+        }
+    }
+
+    @Test
+    public void sampleRateWithoutFrameCodeRoundTrips() throws Exception {
+        short[] pcm = tone(3000, 300, 8000);
+        Stream stream = decode(encode(pcm, 11025, FlacEncoder.DEFAULT_LEVEL));
+        assertEquals(11025, stream.sampleRate);
+        assertArrayEquals(pcm, stream.samples);
+    }
+
+    @Test
+    public void emptyStreamHasOnlyStreamInfo() throws Exception {
+        byte[] flac = encode(new short[0], SAMPLE_RATE, FlacEncoder.DEFAULT_LEVEL);
+        assertEquals(4 + 4 + 34, flac.length);
+        Stream stream = decode(flac);
+        assertEquals(0, stream.totalSamples);
+        assertEquals(0, stream.frames);
+    }
+
+    @Test
+    public void byteInputMatchesShortInput() throws Exception {
+        short[] pcm = tone(5000, 700, 15000);
+        byte[] bytes = new byte[pcm.length * 2];
+        for (int i = 0; i < pcm.length; i++) {
+            bytes[2 * i] = (byte) pcm[i];
+            bytes[2 * i + 1] = (byte) (pcm[i] >> 8);
+        }
+        FlacEncoder encoder = new FlacEncoder(SAMPLE_RATE, FlacEncoder.DEFAULT_LEVEL);
+        // Split unevenly, as a capture loop would
+        encoder.write(bytes, 0, 1000);
+        encoder.write(bytes, 1000, bytes.length - 1000);
+        encoder.close();
+        assertArrayEquals(encode(pcm, SAMPLE_RATE, FlacEncoder.DEFAULT_LEVEL), encoder.toByteArray());
+    }
+
+    @Test
+    public void resetEncodesTheNextClipFromScratch() throws Exception {
+        short[] first = tone(7000, 500, 9000);
+        short[] second = tone(3000, 2000, 3000);
+        FlacEncoder encoder = new FlacEncoder(SAMPLE_RATE, FlacEncoder.DEFAULT_LEVEL);
+        encoder.write(first, 0, first.length);
+        encoder.close();
+        encoder.reset();
+        encoder.write(second, 0, second.length);
+        encoder.close();
+        assertArrayEquals(encode(second, SAMPLE_RATE, FlacEncoder.DEFAULT_LEVEL), encoder.toByteArray());
+    }
+
+    @Test
+    public void fileMatchesMemory() throws Exception {
+        short[] pcm = tone(10000, 250, 25000);
+        File file = folder.newFile("clip.flac");
+        FlacEncoder encoder = new FlacEncoder(file, SAMPLE_RATE, FlacEncoder.DEFAULT_LEVEL);
+        encoder.write(pcm, 0, pcm.length);
+        encoder.close();
+        assertArrayEquals(encode(pcm, SAMPLE_RATE, FlacEncoder.DEFAULT_LEVEL), readFile(file));
+    }
+
+    private static Stream assertRoundTrip(String message, short[] pcm, int level) throws Exception {
+        byte[] flac = encode(pcm, SAMPLE_RATE, level);
+        Stream stream = decode(flac);
+        assertEquals(message, SAMPLE_RATE, stream.sampleRate);
+        assertEquals(message, pcm.length, stream.totalSamples);
+        assertArrayEquals(message, pcm, stream.samples);
+        assertArrayEquals(message, md5(pcm), stream.md5);
+        return stream;
+    }
+
+    private static byte[] encode(short[] pcm, int sampleRate, int level) throws IOException {
+        FlacEncoder encoder = new FlacEncoder(sampleRate, level);
+        encoder.write(pcm, 0, pcm.length);
+        encoder.close();
+        return encoder.toByteArray();
+    }
+
+    private static short[] tone(int length, double frequency, double amplitude) {
+        short[] pcm = new short[length];
+        for (int i = 0; i < length; i++) {
+            pcm[i] = (short) Math.round(amplitude * Math.sin(2 * Math.PI * frequency * i / SAMPLE_RATE));
+        }
+        return pcm;
+    }
+
+    private static short[] constant(int length, short value) {
+        short[] pcm = new short[length];
+        for (int i = 0; i < length; i++) {
+            pcm[i] = value;
+        }
+        return pcm;
+    }
+
+    private static byte[] md5(short[] pcm) throws Exception {
+        MessageDigest md5 = MessageDigest.getInstance("MD5");
+        for (short sample : pcm) {
+            md5.update((byte) sample);
+            md5.update((byte) (sample >> 8));
+        }
+        return md5.digest();
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * A decoded stream and the STREAMINFO fields it was checked against
+     */
+    private static final class Stream {
+        int sampleRate;
+        long totalSamples;
+        byte[] md5;
+        short[] samples;
+        int frames;
+        int length;
+        int maxFrameSize;
+    }
+
+    /**
+     * Decode a mono 16-bit stream with one STREAMINFO block and fixed-size blocks, which is
+     * what FlacEncoder writes, failing on anything else
+     */
+    private static Stream decode(byte[] flac) {
+        Bits in = new Bits(flac);
+        assertEquals("fLaC", 0x664C6143, in.read(32));
+        assertEquals("last metadata block, STREAMINFO", 0x80, in.read(8));
+        assertEquals("STREAMINFO length", 34, in.read(24));
+
+        int minBlock = in.read(16);
+        int maxBlock = in.read(16);
+        assertEquals("fixed block size", minBlock, maxBlock);
+        int minFrameSize = in.read(24);
+        int maxFrameSize = in.read(24);
+        Stream stream = new Stream();
+        stream.sampleRate = in.read(20);
+        assertEquals("channels - 1", 0, in.read(3));
+        assertEquals("bits per sample - 1", 15, in.read(5));
+        stream.totalSamples = ((long) in.read(4) << 32) | (in.read(32) & 0xFFFFFFFFL);
+        stream.md5 = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            stream.md5[i] = (byte) in.read(8);
+        }
+        stream.length = flac.length;
+
+        short[] samples = new short[(int) stream.totalSamples];
+        int decoded = 0;
+        int smallest = Integer.MAX_VALUE;
+        while (in.position() < flac.length) {
+            int start = in.position();
+            assertEquals("sync", 0x3FFE, in.read(14));
+            assertEquals("reserved", 0, in.read(1));
+            assertEquals("fixed block size strategy", 0, in.read(1));
+            assertEquals("block size from the 16-bit field", 7, in.read(4));
+            int rateCode = in.read(4);
+            assertEquals("sample rate code", rateCode(stream.sampleRate), rateCode);
+            assertEquals("mono", 0, in.read(4));
+            assertEquals("16 bits per sample", 4, in.read(3));
+            assertEquals("reserved", 0, in.read(1));
+            assertEquals("frame number", stream.frames, in.readUtf8());
+            int n = in.read(16) + 1;
+            assertTrue("block of " + n, n <= maxBlock && (n == maxBlock || decoded + n == stream.totalSamples));
+            int headerCrc = FlacEncoder.Crc.crc8(flac, start, in.position() - start);
+            assertEquals("header CRC-8", headerCrc, in.read(8));
+
+            decodeSubframe(in, samples, decoded, n);
+            in.align();
+            int frameCrc = FlacEncoder.Crc.crc16(flac, start, in.position() - start);
+            assertEquals("frame CRC-16", frameCrc, in.read(16));
+
+            int size = in.position() - start;
+            smallest = Math.min(smallest, size);
+            stream.maxFrameSize = Math.max(stream.maxFrameSize, size);
+            decoded += n;
+            stream.frames++;
+        }
+        assertEquals("samples decoded", stream.totalSamples, decoded);
+        assertEquals("min frame size", stream.frames == 0 ? 0 : smallest, minFrameSize);
+        assertEquals("max frame size", stream.maxFrameSize, maxFrameSize);
+        stream.samples = samples;
+        return stream;
+    }
+
+    private static void decodeSubframe(Bits in, short[] samples, int offset, int n) {
+        assertEquals("subframe padding", 0, in.read(1));
+        int type = in.read(6);
+        assertEquals("wasted bits", 0, in.read(1));
+
+        int[] x = new int[n];
+        if (type == 0) {
+            int value = in.readSigned(16);
+            for (int i = 0; i < n; i++) x[i] = value;
+        } else if (type == 1) {
+            for (int i = 0; i < n; i++) x[i] = in.readSigned(16);
+        } else if (type >= 8 && type <= 12) {
+            int order = type - 8;
+            for (int i = 0; i < order; i++) x[i] = in.readSigned(16);
+            readResidual(in, x, n, order);
+            for (int i = order; i < n; i++) {
+                switch (order) {
+                    case 0: break;
+                    case 1: x[i] += x[i - 1]; break;
+                    case 2: x[i] += 2 * x[i - 1] - x[i - 2]; break;
+                    case 3: x[i] += 3 * x[i - 1] - 3 * x[i - 2] + x[i - 3]; break;
+                    default: x[i] += 4 * x[i - 1] - 6 * x[i - 2] + 4 * x[i - 3] - x[i - 4]; break;
+                }
+            }
+        } else if (type >= 32) {
+            int order = type - 31;
+            for (int i = 0; i < order; i++) x[i] = in.readSigned(16);
+            int precision = in.read(4) + 1;
+            assertTrue("QLP precision", precision < 16);
+            int shift = in.readSigned(5);
+            assertTrue("QLP shift", shift >= 0);
+            int[] coefficients = new int[order];
+            for (int i = 0; i < order; i++) coefficients[i] = in.readSigned(precision);
+            readResidual(in, x, n, order);
+            for (int i = order; i < n; i++) {
+                long sum = 0;
+                for (int j = 0; j < order; j++) sum += (long) coefficients[j] * x[i - 1 - j];
+                x[i] += (int) (sum >> shift);
+            }
+        } else {
+            throw new AssertionError("Reserved subframe type " + type);
+        }
+
+        for (int i = 0; i < n; i++) {
+            assertTrue("sample " + x[i] + " fits 16 bits", x[i] >= Short.MIN_VALUE && x[i] <= Short.MAX_VALUE);
+            samples[offset + i] = (short) x[i];
+        }
+    }
+
+    private static void readResidual(Bits in, int[] x, int n, int order) {
+        assertEquals("Rice coding with 4-bit parameters", 0, in.read(2));
+        int partitionOrder = in.read(4);
+        int partitions = 1 << partitionOrder;
+        assertEquals("partitions divide the block", n, (n >> partitionOrder) << partitionOrder);
+        int i = order;
+        for (int p = 0; p < partitions; p++) {
+            int k = in.read(4);
+            assertTrue("no escape code", k < 15);
+            int end = (p + 1) * (n >> partitionOrder);
+            assertTrue("warm-up fits the first partition", i <= end);
+            for (; i < end; i++) {
+                long folded = ((long) in.readUnary() << k) | (k == 0 ? 0 : in.read(k) & 0xFFFFFFFFL);
+                x[i] = (int) ((folded >>> 1) ^ -(folded & 1));
+            }
+        }
+    }
+
+    private static int rateCode(int rate) {
+        switch (rate) {
+            case 8000: return 4;
+            case 16000: return 5;
+            case 22050: return 6;
+            case 24000: return 7;
+            case 32000: return 8;
+            case 44100: return 9;
+            case 48000: return 10;
+            case 96000: return 11;
+            default: return 0;
+        }
+    }
+
+    /**
+     * MSB-first bit reader
+     */
+    private static final class Bits {
+        private final byte[] data;
+        private long bit = 0;
+
+        Bits(byte[] data) {
+            this.data = data;
+        }
+
+        int position() {
+            assertEquals("byte aligned", 0, bit & 7);
+            return (int) (bit >> 3);
+        }
+
+        int read(int n) {
+            int value = 0;
+            for (int i = 0; i < n; i++) {
+                int index = (int) (bit >> 3);
+                assertTrue("read past the end of the stream", index < data.length);
+                value = (value << 1) | ((data[index] >> (7 - (int) (bit & 7))) & 1);
+                bit++;
+            }
+            return value;
+        }
+
+        int readSigned(int n) {
+            int value = read(n);
+            return n == 32 ? value : (value << (32 - n)) >> (32 - n);
+        }
+
+        int readUnary() {
+            int zeros = 0;
+            while (read(1) == 0) zeros++;
+            return zeros;
+        }
+
+        long readUtf8() {
+            int lead = read(8);
+            int extra = 0;
+            while (extra < 7 && (lead & (0x80 >> extra)) != 0) extra++;
+            if (extra == 0) return lead;
+            assertTrue("UTF-8 lead byte", extra >= 2);
+            long value = lead & (0x7F >> extra);
+            for (int i = 1; i < extra; i++) {
+                int next = read(8);
+                assertEquals("UTF-8 continuation byte", 0x80, next & 0xC0);
+                value = (value << 6) | (next & 0x3F);
+            }
+            return value;
+        }
+
+        void align() {
+            bit = (bit + 7) & ~7L;
+        }
+    }
+}
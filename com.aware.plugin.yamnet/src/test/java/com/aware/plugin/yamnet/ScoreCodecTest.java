@@ -0,0 +1,154 @@
+package com.aware.plugin.yamnet;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the size, error bounds and single-class reads of both score vector formats
+ */
+public class ScoreCodecTest {
+
+    private static final int CLASSES = YamnetSession.NUM_CLASSES;
+
+    @Test
+    public void encodedSizes() {
+        assertEquals(528, ScoreCodec.encodedSize(ScoreCodec.FORMAT_UINT8, CLASSES));
+        assertEquals(1045, ScoreCodec.encodedSize(ScoreCodec.FORMAT_FLOAT16, CLASSES));
+    }
+
+    @Test
+    public void formatOfSetting() {
+        assertEquals(ScoreCodec.FORMAT_UINT8, ScoreCodec.formatOf(ScoreCodec.UINT8));
+        assertEquals(ScoreCodec.FORMAT_FLOAT16, ScoreCodec.formatOf(ScoreCodec.FLOAT16));
+        assertEquals(0, ScoreCodec.formatOf(ScoreCodec.NONE));
+        assertEquals(0, ScoreCodec.formatOf(""));
+    }
+
+    @Test
+    public void uint8ErrorIsWithinHalfAStep() {
+        Random random = new Random(1);
+        float[] scores = new float[CLASSES];
+        float[] decoded = new float[CLASSES];
+        byte[] blob = new byte[ScoreCodec.encodedSize(ScoreCodec.FORMAT_UINT8, CLASSES)];
+        for (int run = 0; run < 100; run++) {
+            float max = 0f;
+            for (int i = 0; i < CLASSES; i++) {
+                // Mostly small scores with a few confident classes, like real YAMNet output
+                scores[i] = random.nextInt(50) == 0 ? random.nextFloat() : random.nextFloat() * 0.01f;
+                max = Math.max(max, scores[i]);
+            }
+            ScoreCodec.encode(scores, CLASSES, ScoreCodec.FORMAT_UINT8, blob);
+            assertEquals(CLASSES, ScoreCodec.count(blob));
+            assertEquals(CLASSES, ScoreCodec.decode(blob, decoded));
+
+            float bound = max / 255f / 2f * 1.0001f;
+            for (int i = 0; i < CLASSES; i++) {
+                assertEquals("run " + run + " class " + i, scores[i], decoded[i], bound);
+                assertEquals(decoded[i], ScoreCodec.decodeScore(blob, i), 0f);
+            }
+            // The top score keeps full resolution
+            int top = argMax(scores);
+            assertEquals(scores[top], decoded[top], max * 1e-6f);
+        }
+    }
+
+    @Test
+    public void uint8ClampsNegativeScoresAndHandlesSilence() {
+        float[] scores = {-0.5f, 0.25f, 0.5f, -0f};
+        float[] decoded = new float[scores.length];
+        byte[] blob = new byte[ScoreCodec.encodedSize(ScoreCodec.FORMAT_UINT8, scores.length)];
+        ScoreCodec.encode(scores, scores.length, ScoreCodec.FORMAT_UINT8, blob);
+        ScoreCodec.decode(blob, decoded);
+        assertEquals(0f, decoded[0], 0f);
+        assertEquals(0.25f, decoded[1], 0.5f / 510f);
+        assertEquals(0.5f, decoded[2], 1e-6f);
+        assertEquals(0f, decoded[3], 0f);
+
+        float[] zeros = new float[CLASSES];
+        blob = new byte[ScoreCodec.encodedSize(ScoreCodec.FORMAT_UINT8, CLASSES)];
+        ScoreCodec.encode(zeros, CLASSES, ScoreCodec.FORMAT_UINT8, blob);
+        decoded = new float[CLASSES];
+        ScoreCodec.decode(blob, decoded);
+        for (int i = 0; i < CLASSES; i++) {
+            assertEquals(0f, decoded[i], 0f);
+        }
+    }
+
+    @Test
+    public void float16ErrorIsWithinHalfAUlp() {
+        Random random = new Random(2);
+        float[] scores = new float[CLASSES];
+        float[] decoded = new float[CLASSES];
+        byte[] blob = new byte[ScoreCodec.encodedSize(ScoreCodec.FORMAT_FLOAT16, CLASSES)];
+        for (int run = 0; run < 100; run++) {
+            for (int i = 0; i < CLASSES; i++) {
+                // Spread over many binades, down into the half-precision subnormals
+                scores[i] = (float) Math.pow(2, -30 * random.nextDouble()) * random.nextFloat();
+            }
+            ScoreCodec.encode(scores, CLASSES, ScoreCodec.FORMAT_FLOAT16, blob);
+            assertEquals(CLASSES, ScoreCodec.decode(blob, decoded));
+            for (int i = 0; i < CLASSES; i++) {
+                // Half a unit in the 11-bit significand, or half the smallest subnormal
+                float bound = Math.max(Math.abs(scores[i]) / 2048f, 0x1p-25f);
+                assertEquals("run " + run + " class " + i, scores[i], decoded[i], bound);
+                assertEquals(decoded[i], ScoreCodec.decodeScore(blob, i), 0f);
+            }
+        }
+    }
+
+    @Test
+    public void halfConversionRoundsToNearestEven() {
+        assertEquals(0x3C00, ScoreCodec.toHalf(1f) & 0xFFFF);
+        assertEquals(0xBC00, ScoreCodec.toHalf(-1f) & 0xFFFF);
+        assertEquals(0x8000, ScoreCodec.toHalf(-0f) & 0xFFFF);
+        assertEquals(0x7BFF, ScoreCodec.toHalf(65504f) & 0xFFFF);
+        assertEquals(0x7C00, ScoreCodec.toHalf(65520f) & 0xFFFF);
+        assertEquals(0x7C00, ScoreCodec.toHalf(Float.POSITIVE_INFINITY) & 0xFFFF);
+        assertTrue(Float.isNaN(ScoreCodec.fromHalf(ScoreCodec.toHalf(Float.NaN))));
+        assertEquals(0x0001, ScoreCodec.toHalf(0x1p-24f) & 0xFFFF);
+        assertEquals(0x0000, ScoreCodec.toHalf(0x1p-26f) & 0xFFFF);
+        assertEquals(0x0400, ScoreCodec.toHalf(0x1p-14f) & 0xFFFF);
+
+        // Halfway between two halves goes to the even one
+        assertEquals(0x3C00, ScoreCodec.toHalf(1f + 0x1p-11f) & 0xFFFF);
+        assertEquals(0x3C02, ScoreCodec.toHalf(1f + 0x3p-11f) & 0xFFFF);
+        assertEquals(0x3C01, ScoreCodec.toHalf(1f + 0x1p-11f + 0x1p-20f) & 0xFFFF);
+        // Rounding up out of the subnormals carries into the exponent
+        assertEquals(0x0400, ScoreCodec.toHalf(0x1p-14f - 0x1p-26f) & 0xFFFF);
+    }
+
+    @Test
+    public void everyHalfRoundTrips() {
+        for (int bits = 0; bits <= 0xFFFF; bits++) {
+            float value = ScoreCodec.fromHalf((short) bits);
+            if (Float.isNaN(value)) continue;
+            assertEquals("half 0x" + Integer.toHexString(bits), bits, ScoreCodec.toHalf(value) & 0xFFFF);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownFormatIsRefused() {
+        byte[] blob = new byte[16];
+        ScoreCodec.encode(new float[4], 4, (byte) 3, blob);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownBlobIsRefused() {
+        byte[] blob = new byte[16];
+        blob[0] = 7;
+        blob[1] = 4;
+        ScoreCodec.decode(blob, new float[4]);
+    }
+
+    private static int argMax(float[] scores) {
+        int best = 0;
+        for (int i = 1; i < scores.length; i++) {
+            if (scores[i] > scores[best]) best = i;
+        }
+        return best;
+    }
+}
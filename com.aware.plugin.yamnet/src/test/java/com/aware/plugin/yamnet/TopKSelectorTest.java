@@ -0,0 +1,140 @@
+package com.aware.plugin.yamnet;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks TopKSelector against a full sort by descending score, then ascending class index
+ */
+public class TopKSelectorTest {
+
+    @Test
+    public void matchesFullSort() {
+        Random random = new Random(1);
+        TopKSelector selector = new TopKSelector(YamnetSession.NUM_CLASSES);
+        float[] scores = new float[YamnetSession.NUM_CLASSES];
+        for (int run = 0; run < 200; run++) {
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = random.nextFloat();
+            }
+            for (int k : new int[]{1, 5, 10, 100, YamnetSession.NUM_CLASSES}) {
+                assertSelection("run " + run + " k " + k, selector, scores, 0, scores.length, k, 0f);
+            }
+        }
+    }
+
+    @Test
+    public void tiesRankByClassIndex() {
+        Random random = new Random(2);
+        TopKSelector selector = new TopKSelector(YamnetSession.NUM_CLASSES);
+        float[] scores = new float[YamnetSession.NUM_CLASSES];
+        for (int run = 0; run < 200; run++) {
+            // Few distinct values, so most candidates tie with the heap root
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = random.nextInt(4) / 4f;
+            }
+            for (int k : new int[]{1, 3, 7, 50}) {
+                assertSelection("run " + run + " k " + k, selector, scores, 0, scores.length, k, 0f);
+            }
+        }
+
+        float[] equal = new float[10];
+        for (int i = 0; i < equal.length; i++) {
+            equal[i] = 0.5f;
+        }
+        assertEquals(3, selector.select(equal, 3, 0f));
+        assertEquals(0, selector.indexAt(0));
+        assertEquals(1, selector.indexAt(1));
+        assertEquals(2, selector.indexAt(2));
+    }
+
+    @Test
+    public void minScoreFiltersCandidates() {
+        Random random = new Random(3);
+        TopKSelector selector = new TopKSelector(YamnetSession.NUM_CLASSES);
+        float[] scores = new float[YamnetSession.NUM_CLASSES];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = random.nextInt(20) / 20f;
+        }
+        for (float minScore : new float[]{0f, 0.25f, 0.5f, 0.9f, 0.95f, 1f}) {
+            for (int k : new int[]{1, 5, 200}) {
+                assertSelection("minScore " + minScore + " k " + k, selector, scores, 0, scores.length, k, minScore);
+            }
+        }
+
+        // A score equal to minScore is kept
+        assertEquals(1, selector.select(new float[]{0.1f, 0.3f, 0.2f}, 5, 0.3f));
+        assertEquals(1, selector.indexAt(0));
+    }
+
+    @Test
+    public void selectsWithinAFrame() {
+        Random random = new Random(4);
+        int frames = 4;
+        TopKSelector selector = new TopKSelector(YamnetSession.NUM_CLASSES);
+        float[] scores = new float[frames * YamnetSession.NUM_CLASSES];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = random.nextFloat();
+        }
+        for (int f = 0; f < frames; f++) {
+            assertSelection("frame " + f, selector, scores, f * YamnetSession.NUM_CLASSES, YamnetSession.NUM_CLASSES, 5, 0.1f);
+        }
+    }
+
+    @Test
+    public void skipsNaNAndKeepsNegativeScores() {
+        TopKSelector selector = new TopKSelector(4);
+        float[] scores = {Float.NaN, -2f, 0.5f, Float.NaN, -1f};
+        assertEquals(3, selector.select(scores, 4, Float.NEGATIVE_INFINITY));
+        assertEquals(2, selector.indexAt(0));
+        assertEquals(4, selector.indexAt(1));
+        assertEquals(1, selector.indexAt(2));
+    }
+
+    @Test
+    public void kIsBoundedByCapacity() {
+        TopKSelector selector = new TopKSelector(3);
+        float[] scores = {0.1f, 0.9f, 0.4f, 0.7f, 0.3f};
+        assertEquals(3, selector.select(scores, 10, 0f));
+        assertEquals(3, selector.size());
+        assertEquals(1, selector.indexAt(0));
+        assertEquals(3, selector.indexAt(1));
+        assertEquals(2, selector.indexAt(2));
+
+        assertEquals(0, selector.select(scores, 0, 0f));
+        assertEquals(0, selector.size());
+    }
+
+    private static void assertSelection(String message, TopKSelector selector, float[] scores,
+                                        int offset, int length, int k, float minScore) {
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < length; i++) {
+            if (scores[offset + i] >= minScore) expected.add(i);
+        }
+        final float[] values = scores;
+        final int base = offset;
+        Collections.sort(expected, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int byScore = Float.compare(values[base + b], values[base + a]);
+                return byScore != 0 ? byScore : a - b;
+            }
+        });
+        int count = Math.min(k, expected.size());
+
+        assertEquals(message, count, selector.select(scores, offset, length, k, minScore));
+        assertEquals(message, count, selector.size());
+        for (int rank = 0; rank < count; rank++) {
+            int index = expected.get(rank);
+            assertEquals(message + " rank " + rank, index, selector.indexAt(rank));
+            assertEquals(message + " rank " + rank, scores[offset + index], selector.scoreAt(rank), 0f);
+        }
+    }
+}
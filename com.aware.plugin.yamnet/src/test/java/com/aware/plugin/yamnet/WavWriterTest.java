@@ -0,0 +1,216 @@
+package com.aware.plugin.yamnet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the header WavWriter writes up front and the sizes it patches on close, for new and
+ * appended files
+ */
+public class WavWriterTest {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sizesArePatchedOnClose() throws Exception {
+        File file = folder.newFile("clip.wav");
+        short[] pcm = ramp(0, 5000);
+        WavWriter writer = new WavWriter(file, SAMPLE_RATE);
+        writer.write(pcm, 0, 1000);
+        writer.write(pcm, 1000, 3000);
+        writer.write(pcm, 4000, 1000);
+        assertEquals(10000, writer.getDataSize());
+        writer.close();
+
+        byte[] wav = read(file);
+        assertEquals(WavWriter.HEADER_SIZE + 10000, wav.length);
+        assertHeader(wav, SAMPLE_RATE, 10000);
+        assertSamples(wav, pcm);
+    }
+
+    @Test
+    public void unfinishedFileHasTheFirstWriteSizes() throws Exception {
+        File file = folder.newFile("clip.wav");
+        short[] pcm = ramp(0, 3000);
+        WavWriter writer = new WavWriter(file, SAMPLE_RATE);
+        writer.write(pcm, 0, 1000);
+        writer.write(pcm, 1000, 2000);
+        // Header and first samples went out in one write; later sizes are only known on close
+        assertHeader(read(file), SAMPLE_RATE, 2000);
+        writer.close();
+        assertHeader(read(file), SAMPLE_RATE, 6000);
+    }
+
+    @Test
+    public void emptyFileHasAHeaderOnly() throws Exception {
+        File file = folder.newFile("empty.wav");
+        new WavWriter(file, SAMPLE_RATE).close();
+        byte[] wav = read(file);
+        assertEquals(WavWriter.HEADER_SIZE, wav.length);
+        assertHeader(wav, SAMPLE_RATE, 0);
+    }
+
+    @Test
+    public void newFileReplacesAnExistingOne() throws Exception {
+        File file = folder.newFile("clip.wav");
+        WavWriter.write(file, SAMPLE_RATE, bytes(ramp(0, 4000)));
+        short[] pcm = ramp(100, 10);
+        WavWriter.write(file, 8000, bytes(pcm));
+
+        byte[] wav = read(file);
+        assertEquals(WavWriter.HEADER_SIZE + 20, wav.length);
+        assertHeader(wav, 8000, 20);
+        assertSamples(wav, pcm);
+    }
+
+    @Test
+    public void appendPatchesTheTotalSize() throws Exception {
+        File file = folder.newFile("clip.wav");
+        short[] pcm = ramp(0, 3000);
+        WavWriter.write(file, SAMPLE_RATE, ByteBuffer.wrap(bytes(pcm), 0, 2000));
+
+        WavWriter writer = new WavWriter(file, SAMPLE_RATE, true);
+        assertEquals(2000, writer.getDataSize());
+        writer.write(pcm, 1000, 2000);
+        writer.close();
+
+        byte[] wav = read(file);
+        assertHeader(wav, SAMPLE_RATE, 6000);
+        assertSamples(wav, pcm);
+    }
+
+    @Test
+    public void appendTrustsTheFileLengthOverAStaleHeader() throws Exception {
+        File file = folder.newFile("clip.wav");
+        short[] pcm = ramp(0, 1500);
+        // A writer that died after its first write leaves that write's sizes in the header
+        WavWriter first = new WavWriter(file, SAMPLE_RATE);
+        first.write(pcm, 0, 500);
+        first.write(pcm, 500, 500);
+        RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        try {
+            assertEquals(WavWriter.HEADER_SIZE + 2000, raw.length());
+            // Plus half a sample that was cut off
+            raw.setLength(raw.length() + 1);
+        } finally {
+            raw.close();
+        }
+
+        WavWriter writer = new WavWriter(file, SAMPLE_RATE, true);
+        assertEquals(2000, writer.getDataSize());
+        writer.write(pcm, 1000, 500);
+        writer.close();
+
+        byte[] wav = read(file);
+        assertEquals(WavWriter.HEADER_SIZE + 3000, wav.length);
+        assertHeader(wav, SAMPLE_RATE, 3000);
+        assertSamples(wav, pcm);
+    }
+
+    @Test
+    public void appendToAnotherFormatStartsOver() throws Exception {
+        File file = folder.newFile("clip.wav");
+        WavWriter.write(file, 8000, bytes(ramp(0, 100)));
+
+        short[] pcm = ramp(7, 50);
+        WavWriter writer = new WavWriter(file, SAMPLE_RATE, true);
+        assertEquals(0, writer.getDataSize());
+        writer.write(pcm, 0, pcm.length);
+        writer.close();
+
+        byte[] wav = read(file);
+        assertEquals(WavWriter.HEADER_SIZE + 100, wav.length);
+        assertHeader(wav, SAMPLE_RATE, 100);
+        assertSamples(wav, pcm);
+    }
+
+    @Test
+    public void appendToAMissingFileStartsOver() throws Exception {
+        File file = new File(folder.getRoot(), "new.wav");
+        short[] pcm = ramp(-20, 40);
+        WavWriter writer = new WavWriter(file, SAMPLE_RATE, true);
+        writer.write(pcm, 0, pcm.length);
+        writer.close();
+
+        byte[] wav = read(file);
+        assertHeader(wav, SAMPLE_RATE, 80);
+        assertSamples(wav, pcm);
+    }
+
+    @Test
+    public void headerFields() {
+        ByteBuffer header = ByteBuffer.allocate(WavWriter.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        WavWriter.fillHeader(header, 44100, 0xFFFFFFFFL - 36);
+        assertEquals(0, header.position());
+        assertEquals(WavWriter.HEADER_SIZE, header.remaining());
+        byte[] bytes = new byte[WavWriter.HEADER_SIZE];
+        header.get(bytes);
+        assertHeader(bytes, 44100, 0xFFFFFFFFL - 36);
+    }
+
+    private static void assertHeader(byte[] wav, int sampleRate, long dataSize) {
+        ByteBuffer header = ByteBuffer.wrap(wav).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals("RIFF", ascii(wav, 0));
+        assertEquals("RIFF size", dataSize + 36, header.getInt(4) & 0xFFFFFFFFL);
+        assertEquals("WAVE", ascii(wav, 8));
+        assertEquals("fmt ", ascii(wav, 12));
+        assertEquals("fmt size", 16, header.getInt(16));
+        assertEquals("PCM", 1, header.getShort(20));
+        assertEquals("channels", 1, header.getShort(22));
+        assertEquals("sample rate", sampleRate, header.getInt(24));
+        assertEquals("byte rate", sampleRate * 2, header.getInt(28));
+        assertEquals("block align", 2, header.getShort(32));
+        assertEquals("bits per sample", 16, header.getShort(34));
+        assertEquals("data", ascii(wav, 36));
+        assertEquals("data size", dataSize, header.getInt(40) & 0xFFFFFFFFL);
+    }
+
+    private static void assertSamples(byte[] wav, short[] pcm) {
+        short[] samples = new short[(wav.length - WavWriter.HEADER_SIZE) / 2];
+        ByteBuffer.wrap(wav, WavWriter.HEADER_SIZE, samples.length * 2).order(ByteOrder.LITTLE_ENDIAN)
+                .asShortBuffer().get(samples);
+        assertArrayEquals(pcm, samples);
+    }
+
+    private static String ascii(byte[] bytes, int offset) {
+        return new String(new char[]{(char) bytes[offset], (char) bytes[offset + 1], (char) bytes[offset + 2], (char) bytes[offset + 3]});
+    }
+
+    private static short[] ramp(int start, int length) {
+        short[] pcm = new short[length];
+        for (int i = 0; i < length; i++) {
+            pcm[i] = (short) ((start + i) * 37);
+        }
+        return pcm;
+    }
+
+    private static byte[] bytes(short[] pcm) {
+        ByteBuffer buffer = ByteBuffer.allocate(pcm.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asShortBuffer().put(pcm);
+        return buffer.array();
+    }
+
+    private static byte[] read(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+}